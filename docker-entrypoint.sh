@@ -37,9 +37,30 @@ fi
 if [ -n "$MY_SQL_USER_PW" ]; then
     sed -i "s|mysqlPassword = changeme|mysqlPassword = ${MY_SQL_USER_PW}|" "${SERVICE_PROPERTY_FILE}"
 fi
+if [ -n "$MY_SQL_POOL_SIZE" ]; then
+    sed -i "s|mysqlPoolSize = 10|mysqlPoolSize = ${MY_SQL_POOL_SIZE}|" "${SERVICE_PROPERTY_FILE}"
+fi
 if [ -n "$ML_LIB_URL" ]; then
     sed -i "s|mlLibUrl = http://localhost:8000/|mlLibUrl = ${ML_LIB_URL}|" "${SERVICE_PROPERTY_FILE}"
 fi
+if [ -n "$ML_LIB_COMPRESSION" ]; then
+    sed -i "s|mlLibCompression = false|mlLibCompression = ${ML_LIB_COMPRESSION}|" "${SERVICE_PROPERTY_FILE}"
+fi
+if [ -n "$MF_ENGINE" ]; then
+    sed -i "s|mfEngine = mllib|mfEngine = ${MF_ENGINE}|" "${SERVICE_PROPERTY_FILE}"
+fi
+if [ -n "$W2V_EMBEDDING_FILE" ]; then
+    sed -i "s|^w2vEmbeddingFile =.*|w2vEmbeddingFile = ${W2V_EMBEDDING_FILE}|" "${SERVICE_PROPERTY_FILE}"
+fi
+if [ -n "$W2V_VECTOR_CACHE_SIZE" ]; then
+    sed -i "s|w2vVectorCacheSize = 100000|w2vVectorCacheSize = ${W2V_VECTOR_CACHE_SIZE}|" "${SERVICE_PROPERTY_FILE}"
+fi
+if [ -n "$MODEL_SINGLE_PRECISION" ]; then
+    sed -i "s|modelSinglePrecision = true|modelSinglePrecision = ${MODEL_SINGLE_PRECISION}|" "${SERVICE_PROPERTY_FILE}"
+fi
+if [ -n "$MODEL_COMPRESSION" ]; then
+    sed -i "s|modelCompression = false|modelCompression = ${MODEL_COMPRESSION}|" "${SERVICE_PROPERTY_FILE}"
+fi
 if [ -n "$MODEL_NAME" ]; then
     sed -i "s|modelName = HyE-MatrixFactorization|modelName = ${MODEL_NAME}|" "${SERVICE_PROPERTY_FILE}"
 fi
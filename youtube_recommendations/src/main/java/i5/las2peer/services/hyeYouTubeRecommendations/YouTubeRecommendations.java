@@ -1,12 +1,15 @@
 package i5.las2peer.services.hyeYouTubeRecommendations;
 
 // import java.io.FileReader;
+import java.io.File;
 import java.io.Serializable;
 import java.lang.reflect.Array;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
 import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
@@ -29,10 +32,33 @@ import i5.las2peer.api.security.UserAgent;
 import i5.las2peer.restMapper.RESTService;
 import i5.las2peer.restMapper.annotations.ServicePath;
 
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.AlsEngine;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.MappedEmbeddings;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.MatchScorer;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.MfEngine;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.MfModel;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.ModelCodec;
 import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.MlLibWrapper;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.ModelManifest;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.ModelShards;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.ModelStore;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.ShardedVectors;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.TrainingJob;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.TrainingJobManager;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.UserMatch;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.VectorIndex;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.VectorIndexBenchmark;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.VectorModel;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.VideoCenterPipeline;
 import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.Word2VecWrapper;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.WordEmbeddings;
+import i5.las2peer.services.hyeYouTubeRecommendations.recommendations.WordVectorCache;
+import i5.las2peer.services.hyeYouTubeRecommendations.util.AlphaCache;
 import i5.las2peer.services.hyeYouTubeRecommendations.util.DataBaseConnection;
 import i5.las2peer.services.hyeYouTubeRecommendations.util.TokenWrapper;
+import i5.las2peer.services.hyeYouTubeRecommendations.util.Tokenizer;
+import i5.las2peer.services.hyeYouTubeRecommendations.util.UserCenter;
+import i5.las2peer.services.hyeYouTubeRecommendations.util.UserRatings;
 import i5.las2peer.services.hyeYouTubeRecommendations.youTubeData.YouTubeApiWrapper;
 import i5.las2peer.services.hyeYouTubeRecommendations.youTubeData.YouTubeComment;
 import i5.las2peer.services.hyeYouTubeRecommendations.youTubeData.YouTubeVideo;
@@ -85,7 +111,14 @@ public class YouTubeRecommendations extends RESTService {
 	private String mysqlDatabase;
 	private String mysqlUser;
 	private String mysqlPassword;
+	private int mysqlPoolSize = 10;
 	private String mlLibUrl;
+	private String w2vEmbeddingFile;
+	private int w2vVectorCacheSize = 100000;
+	private boolean mlLibCompression = false;
+	private String mfEngine = "mllib";
+	private boolean modelSinglePrecision = true;
+	private boolean modelCompression = false;
 	private String modelName;
 	private String serviceAgentName;
 	private String serviceAgentPw;
@@ -95,18 +128,54 @@ public class YouTubeRecommendations extends RESTService {
 	private String AUTH_URI;
 	private final String MF_MODEL_SUFFIX = "_MF-Model";
 	private final String W2V_MODEL_SUFFIX = "_W2V-Model";
+	private final String MANIFEST_SUFFIX = "_Manifest";
+	private final String SHARD_SUFFIX = "_Shard-";
+	private final String REVISION_SUFFIX = "_R";
+	private final String ITEMS_SUFFIX = "_Items";
+	private final String INDEX_SUFFIX = "_Index";
 	private final String ALPHA_SUFFIX = "_Alpha";
+	private final String MF_JOB_TYPE = "matrix-factorization";
+	private final String LOCAL_MF_ENGINE = "als";
 	private static final L2pLogger log = L2pLogger.getInstance(YouTubeRecommendations.class.getName());
 	private final long ONE_DAY_IN_MILLISECONDS = 1000 * 60 * 60 * 24;
 	private final long TWO_WEEKS_IN_MILLISECONDS = ONE_DAY_IN_MILLISECONDS * 14;
+	private final int ALPHA_CACHE_SIZE = 10000;
+	private final long ALPHA_CACHE_TTL_IN_MILLISECONDS = 1000 * 60 * 10;
+	// Manifests are loaded again after this time, so that models stored by other nodes are picked up
+	private final long MANIFEST_TTL_IN_MILLISECONDS = 1000 * 30;
+	// Cached in place of the manifest of models stored in a single envelope, so that the missing manifest is only
+	// requested again once the cached entry expires
+	private static final Object NO_MANIFEST = new Object();
+	// Number of concurrent requests sent to the remote word2vec implementation
+	private final int W2V_REQUEST_CONCURRENCY = 4;
+	// Number of revisions tried when storing an updated shard or index, whose next revision may be taken by another node
+	private final int MAX_REVISION_PROBES = 3;
+	// Number of attempts to update a sharded model, which are repeated if another node updated the model in between
+	private final int MAX_MANIFEST_ATTEMPTS = 3;
 
 	private final AuthorizationCodeFlow flow;
 	private final HttpTransport transport;
 	private final GsonFactory json;
 	private URL mlUrl;
+	private String serviceAgentId;
 	// Store access token in frontend instead
 	private static HashMap<String, YouTubeApiWrapper> ytConnections;
 	private static DataBaseConnection db;
+	// Node-local copies of the machine learning models used for matching
+	private static ModelStore models;
+	private static AlphaCache alphas;
+	// Model training runs in the background, so that request threads are not blocked
+	private static TrainingJobManager trainingJobs;
+	// Word2vec model mapped from a local file, used instead of the remote implementation if configured
+	private static MappedEmbeddings embeddings;
+	// Vectors of words requested from the remote word2vec implementation, shared by all center computations
+	private static WordVectorCache wordVectors;
+	// Splits the textual data of videos into the words whose word2vec vectors are averaged
+	private static final Tokenizer tokenizer = new Tokenizer();
+	// Serializes updates of the stored Matrix Factorization model (training and fold-in of single users)
+	private static final Object mfModelLock = new Object();
+	// Serializes updates of the stored word2vec model (full computation and publishing of changed users)
+	private static final Object w2vModelLock = new Object();
 
 	/**
 	 * Class constructor, initializes member variables
@@ -116,7 +185,11 @@ public class YouTubeRecommendations extends RESTService {
 		setFieldValues();
 		log.info("Using API key " + apiKey + " with client id " + clientId + " and secret " + clientSecret +
 				" and connecting to jdbc:mysql://" + mysqlHost + '/' + mysqlDatabase + " as " + mysqlUser +
+				" with up to " + mysqlPoolSize + " connections" +
 				" and obtaining model " + modelName + " from server running at " + mlLibUrl +
+				(w2vEmbeddingFile == null || w2vEmbeddingFile.isEmpty() ? "" :
+						" (word embeddings mapped from " + w2vEmbeddingFile + ")") +
+				" (matrix factorization engine " + mfEngine + ")" +
 				" using service agent " + serviceAgentName + " with password " + serviceAgentPw +
 				" and running at " + rootUri);
 		LOGIN_URI = rootUri + "login";
@@ -128,8 +201,14 @@ public class YouTubeRecommendations extends RESTService {
 		if (ytConnections == null)
 			ytConnections = new HashMap<String, YouTubeApiWrapper>();
 		YouTubeApiWrapper.setApiKey(apiKey);
+		if (models == null)
+			models = new ModelStore();
+		if (alphas == null)
+			alphas = new AlphaCache(ALPHA_CACHE_SIZE, ALPHA_CACHE_TTL_IN_MILLISECONDS);
+		if (trainingJobs == null)
+			trainingJobs = new TrainingJobManager();
 		if (db == null) {
-			db = new DataBaseConnection(mysqlHost, mysqlDatabase, mysqlUser, mysqlPassword);
+			db = new DataBaseConnection(mysqlHost, mysqlDatabase, mysqlUser, mysqlPassword, mysqlPoolSize);
 			if (db.isHealthy())
 				db.init();
 			else
@@ -141,6 +220,13 @@ public class YouTubeRecommendations extends RESTService {
 			log.severe("!!! Provided mlLibUrl is invalid. The functionality of the service is severely limited !!!");
 			mlUrl = null;
 		}
+		if (embeddings == null && w2vEmbeddingFile != null && !w2vEmbeddingFile.isEmpty()) {
+			embeddings = new MappedEmbeddings(new File(w2vEmbeddingFile));
+			if (!embeddings.loadModel())
+				log.severe("!!! Could not map word embeddings from " + w2vEmbeddingFile + " !!!");
+		}
+		if (wordVectors == null && w2vVectorCacheSize > 0)
+			wordVectors = new WordVectorCache(w2vVectorCacheSize);
 		// Try to unlock provided user (not working correctly)
 //		try {
 //			Context context = Context.getCurrent();
@@ -253,28 +339,25 @@ public class YouTubeRecommendations extends RESTService {
 
 		// TODO add check that update was correct, otherwise people would be pretty pissed about unsuccessful synchs
 		HashMap<String, ArrayList<YouTubeVideo>> videoData = ytConnection.getYouTubeWatchData();
-		int dbInsertions = 0;
-		for (String rating : videoData.keySet()) {
-			if (videoData.get(rating) == null)
-				continue;
-			ArrayList<YouTubeVideo> videoRatings = videoData.get(rating);
-			for (YouTubeVideo video : videoRatings) {
-				db.addVideo(video);
-				db.addRating(video.getVideoId(), userId, rating);
-				dbInsertions++;
-			}
-		}
+		// All videos and ratings are stored in one transaction, so a failed sync does not leave partial data
+		int dbInsertions = db.addWatchData(userId, videoData);
 		// Update database to signify that user synchronized DB
 		if (updateId != -1)
-			db.updateDbUpdate(updateId, "success");
+			db.updateDbUpdate(updateId, dbInsertions == -1 ? "fail" : "success");
+		Context context = Context.getCurrent();
+		// Make user matchable without waiting for the next training, independent of whether the alpha value exists
+		if (dbInsertions > 0)
+			context.getExecutor().execute(() -> foldInUser(context, userId));
 		// Lastly store alpha value
 		try {
-			Context context = Context.getCurrent();
 			Envelope env = context.createEnvelope(getAlphaHandle(userId));
 			env.setContent(0.5);
 			context.storeEnvelope(env);
+			alphas.put(userId, 0.5);
 		} catch(Exception e) {
 			log.printStackTrace(e);
+			// Envelope might have been stored by another node in the meantime, its value is loaded again
+			alphas.invalidate(userId);
 		}
 		return dbInsertions;
 	}
@@ -302,17 +385,30 @@ public class YouTubeRecommendations extends RESTService {
 	}
 
 	/**
-	 * Helper function to retrieve handle used to store matrix-factorization user features
+	 * Helper function to retrieve the agent ID of the service agent (only looked up once)
+	 *
+	 * @return las2peer Agent ID of service agent
+	 */
+	private String getServiceAgentId() {
+		if (serviceAgentId == null) {
+			try {
+				serviceAgentId = Context.getCurrent().getUserAgentIdentifierByLoginName(serviceAgentName);
+			} catch (Exception e) {
+				log.printStackTrace(e);
+				return null;
+			}
+		}
+		return serviceAgentId;
+	}
+
+	/**
+	 * Helper function to retrieve handle used to store the matrix-factorization model
 	 *
 	 * @return Handle for envelope
 	 */
 	private String getMatrixHandle() {
-		try {
-			return Context.getCurrent().getUserAgentIdentifierByLoginName(serviceAgentName) + MF_MODEL_SUFFIX;
-		} catch (Exception e) {
-			log.printStackTrace(e);
-			return null;
-		}
+		String agentId = getServiceAgentId();
+		return agentId == null ? null : agentId + MF_MODEL_SUFFIX;
 	}
 
 	/**
@@ -321,12 +417,91 @@ public class YouTubeRecommendations extends RESTService {
 	 * @return Handle for envelope
 	 */
 	private String getVectorHandle() {
-		try {
-			return Context.getCurrent().getUserAgentIdentifierByLoginName(serviceAgentName) + W2V_MODEL_SUFFIX;
-		} catch (Exception e) {
-			log.printStackTrace(e);
-			return null;
-		}
+		String agentId = getServiceAgentId();
+		return agentId == null ? null : agentId + W2V_MODEL_SUFFIX;
+	}
+
+	/**
+	 * Helper function to retrieve handle used to store the manifest of a sharded model
+	 *
+	 * @param modelHandle Handle of the model (as returned by getMatrixHandle() or getVectorHandle())
+	 * @return Handle for envelope
+	 */
+	private String getManifestHandle(String modelHandle) { return modelHandle + MANIFEST_SUFFIX; }
+
+	/**
+	 * Helper function to retrieve the common prefix of the handles of all parts of the given model version
+	 *
+	 * @param modelHandle Handle of the model (as returned by getMatrixHandle() or getVectorHandle())
+	 * @param version Model version as given in the manifest
+	 * @return Handle prefix
+	 */
+	private String getVersionPrefix(String modelHandle, long version) { return modelHandle + "_V" + version; }
+
+	/**
+	 * Helper function to retrieve handle used to store one shard of the user vectors of a model. Updated shards are
+	 * stored under a new handle per revision, so that nodes holding the previous revision load them once they load
+	 * the new manifest.
+	 *
+	 * @param modelHandle Handle of the model (as returned by getMatrixHandle() or getVectorHandle())
+	 * @param manifest Manifest of the model version
+	 * @param shard Shard index
+	 * @return Handle for envelope
+	 */
+	private String getShardHandle(String modelHandle, ModelManifest manifest, int shard) {
+		return getShardHandle(modelHandle, manifest, shard, manifest.getShardRevision(shard));
+	}
+
+	/**
+	 * Helper function to retrieve handle used to store the given revision of one shard of the user vectors of a model
+	 *
+	 * @param modelHandle Handle of the model (as returned by getMatrixHandle() or getVectorHandle())
+	 * @param manifest Manifest of the model version
+	 * @param shard Shard index
+	 * @param revision Revision of the shard
+	 * @return Handle for envelope
+	 */
+	private String getShardHandle(String modelHandle, ModelManifest manifest, int shard, int revision) {
+		String shardHandle = getVersionPrefix(modelHandle, manifest.getVersion()) + SHARD_SUFFIX + shard;
+		return revision == 0 ? shardHandle : shardHandle + REVISION_SUFFIX + revision;
+	}
+
+	/**
+	 * Helper function to retrieve handle used to store the index built over the user vectors of a model. Like
+	 * shards, the index is stored under a new handle per version and revision.
+	 *
+	 * @param modelHandle Handle of the model (as returned by getVectorHandle())
+	 * @param manifest Manifest of the model version
+	 * @return Handle for envelope
+	 */
+	private String getIndexHandle(String modelHandle, ModelManifest manifest) {
+		return getIndexHandle(modelHandle, manifest, manifest.getIndexRevision());
+	}
+
+	/**
+	 * Helper function to retrieve handle used to store the given revision of the index built over the user vectors
+	 * of a model
+	 *
+	 * @param modelHandle Handle of the model (as returned by getVectorHandle())
+	 * @param manifest Manifest of the model version
+	 * @param revision Revision of the index
+	 * @return Handle for envelope
+	 */
+	private String getIndexHandle(String modelHandle, ModelManifest manifest, int revision) {
+		String indexHandle = getVersionPrefix(modelHandle, manifest.getVersion()) + INDEX_SUFFIX;
+		return revision == 0 ? indexHandle : indexHandle + REVISION_SUFFIX + revision;
+	}
+
+	/**
+	 * Helper function to retrieve handle used to store the item features and training parameters of the given
+	 * matrix-factorization model version
+	 *
+	 * @param version Model version as given in the manifest
+	 * @return Handle for envelope
+	 */
+	private String getItemsHandle(long version) {
+		String matrixHandle = getMatrixHandle();
+		return matrixHandle == null ? null : getVersionPrefix(matrixHandle, version) + ITEMS_SUFFIX;
 	}
 
 	/**
@@ -337,6 +512,24 @@ public class YouTubeRecommendations extends RESTService {
 	 */
 	private String getAlphaHandle(String userId) { return userId + ALPHA_SUFFIX; }
 
+	/**
+	 * Helper function to retrieve the alpha value of the given user from the cache or the network storage
+	 *
+	 * @param context Current execution context from which function is called
+	 * @param userId las2peer Agent ID of storing user
+	 * @return Alpha value stored for user or null if none is stored
+	 * @throws Exception If the network storage could not be accessed
+	 */
+	private Double getStoredAlpha(Context context, String userId) throws Exception {
+		return alphas.get(userId, () -> {
+			try {
+				return (Double) context.requestEnvelope(getAlphaHandle(userId)).getContent();
+			} catch (EnvelopeNotFoundException e) {
+				return null;
+			}
+		});
+	}
+
 	/**
 	 * Helper function to store user feature or word2vec vectors in las2peer network
 	 *
@@ -346,6 +539,22 @@ public class YouTubeRecommendations extends RESTService {
 	 * @return True if storing succeeded, False otherwise
 	 */
 	private boolean storeEnvelope(Context context, String envHandle, Serializable content) {
+		return storeEnvelope(context, envHandle, content, current -> true);
+	}
+
+	/**
+	 * Helper function to store content in las2peer network only if the content stored so far meets the given
+	 * condition. The envelope is stored as the next version of the checked one, so if another node stores the same
+	 * version concurrently, the network storage rejects one of them.
+	 *
+	 * @param context Current execution context from which function is called
+	 * @param envHandle Handle used to store envelope
+	 * @param content Content to store
+	 * @param condition Condition on the stored content, which is null if no envelope is stored under the handle yet
+	 * @return True if storing succeeded, False if it failed or the condition was not met
+	 */
+	private boolean storeEnvelope(Context context, String envHandle, Serializable content,
+								  Predicate<Serializable> condition) {
 		Envelope env;
 		UserAgent serviceAgent;
 		try {
@@ -368,6 +577,16 @@ public class YouTubeRecommendations extends RESTService {
 			return false;
 		}
 
+		try {
+			if (!condition.test(env == null ? null : env.getContent())) {
+				log.info("Envelope " + envHandle + " was changed by another node");
+				return false;
+			}
+		} catch (Exception e) {
+			log.printStackTrace(e);
+			return false;
+		}
+
 		// Else create envelope
 		if (env == null) {
 			try {
@@ -408,6 +627,9 @@ public class YouTubeRecommendations extends RESTService {
 		}
 		try {
 			return context.requestEnvelope(envHandle, serviceAgent).getContent();
+		} catch (EnvelopeNotFoundException e) {
+			log.info("No envelope stored under " + envHandle);
+			return null;
 		} catch(Exception e) {
 			log.printStackTrace(e);
 			return null;
@@ -415,67 +637,518 @@ public class YouTubeRecommendations extends RESTService {
 	}
 
 	/**
-	 * Remove punctuation and split string by whitespace
+	 * Returns the user vectors stored under the given handle from memory or loads them from the network storage
 	 *
-	 * @param string The String of which we want to extract the words
-	 * @return Set of words contained in given string as HashSet
+	 * @param context Current execution context from which function is called
+	 * @param envHandle Handle under which envelope is stored in network
+	 * @return The model or null if none is stored
 	 */
-	private HashSet<String> getWordsFromString(String string) {
-		// Remove punctuation
-		String cleanedDescription = string.replaceAll("\\p{Punct}", "");
-		// Split by whitespace
-		String[] wordArray = cleanedDescription.split("\\s+");
-		// Return as HashSet
-		HashSet wordSet = new HashSet<String>();
-		wordSet.addAll(Arrays.asList(wordArray));
-		return wordSet;
+	private VectorModel getModel(Context context, String envHandle) {
+		return models.get(envHandle, () -> {
+			Serializable content = getEnvelopeContent(context, envHandle);
+			try {
+				if (content instanceof byte[]) {
+					VectorModel model = ModelCodec.decode((byte[]) content);
+					log.info("Loaded model " + envHandle + " with " + model.size() + " user vectors");
+					return model;
+				}
+				// Models stored before the binary format was introduced
+				if (content instanceof HashMap) {
+					HashMap<String, ArrayList<Double>> vectorMap = (HashMap<String, ArrayList<Double>>) content;
+					log.info("Loaded model " + envHandle + " with " + vectorMap.size() + " user vectors");
+					return VectorModel.fromMap(vectorMap);
+				}
+			} catch (Exception e) {
+				log.printStackTrace(e);
+			}
+			return null;
+		});
 	}
 
 	/**
-	 * Gets all words from string associated with the YouTube video
+	 * Stores the given user vectors in their binary form and makes them available on this node
 	 *
-	 * @param detail Might be title or description of YouTube Video given as String
-	 * @return Set of words contained in given detail as HashSet
+	 * @param context Current execution context from which function is called
+	 * @param envHandle Handle used to store envelope
+	 * @param model User vectors
+	 * @return True if storing succeeded, False otherwise
 	 */
-	private HashSet<String> parseVideoDetail(String detail) {
+	private boolean storeModel(Context context, String envHandle, VectorModel model) {
 		try {
-			return getWordsFromString(detail);
+			if (!storeEnvelope(context, envHandle, ModelCodec.encode(model, modelSinglePrecision, modelCompression)))
+				return false;
 		} catch (Exception e) {
 			log.printStackTrace(e);
+			return false;
+		}
+		models.publish(envHandle, model);
+		return true;
+	}
+
+	/**
+	 * Returns the manifest of the given sharded model from memory or loads it from the network storage. Cached parts
+	 * of other versions of the model are dropped. That no manifest is stored is cached as well, storing a manifest on
+	 * this node replaces the cached entry.
+	 *
+	 * @param context Current execution context from which function is called
+	 * @param modelHandle Handle of the model (as returned by getMatrixHandle() or getVectorHandle())
+	 * @return The manifest or null if the model is not stored in shards
+	 */
+	private ModelManifest getManifest(Context context, String modelHandle) {
+		if (modelHandle == null)
 			return null;
+		String manifestHandle = getManifestHandle(modelHandle);
+		Object cached = models.get(manifestHandle, MANIFEST_TTL_IN_MILLISECONDS, () -> {
+			Serializable content = getEnvelopeContent(context, manifestHandle);
+			return content instanceof ModelManifest ? content : NO_MANIFEST;
+		});
+		ModelManifest manifest = cached instanceof ModelManifest ? (ModelManifest) cached : null;
+		if (manifest != null) {
+			String versionPrefix = getVersionPrefix(modelHandle, manifest.getVersion()) + '_';
+			String shardPrefix = getVersionPrefix(modelHandle, manifest.getVersion()) + SHARD_SUFFIX;
+			String indexPrefix = getVersionPrefix(modelHandle, manifest.getVersion()) + INDEX_SUFFIX;
+			HashSet<String> currentHandles = new HashSet<String>();
+			for (int shard = 0; shard < manifest.getNoShards(); shard++)
+				currentHandles.add(getShardHandle(modelHandle, manifest, shard));
+			currentHandles.add(getIndexHandle(modelHandle, manifest));
+			// Drops other versions and previous revisions of updated shards and indices
+			models.invalidateIf(handle -> handle.startsWith(modelHandle + "_V") && (!handle.startsWith(versionPrefix) ||
+					(handle.startsWith(shardPrefix) || handle.startsWith(indexPrefix)) &&
+							!currentHandles.contains(handle)));
 		}
+		return manifest;
 	}
 
 	/**
-	 * Gets all words from the video tags
+	 * Stores the given manifest, which makes the model parts it refers to visible to all nodes once their cached
+	 * manifest expires
 	 *
-	 * @param videoTags Strings tagged to video as ArrayList
-	 * @return Strings tagged to video as HashSet
+	 * @param context Current execution context from which function is called
+	 * @param modelHandle Handle of the model (as returned by getMatrixHandle() or getVectorHandle())
+	 * @param manifest The manifest
+	 * @return True if storing succeeded, False otherwise
+	 */
+	private boolean storeManifest(Context context, String modelHandle, ModelManifest manifest) {
+		if (!storeEnvelope(context, getManifestHandle(modelHandle), manifest))
+			return false;
+		models.publish(getManifestHandle(modelHandle), manifest);
+		return true;
+	}
+
+	/**
+	 * Stores the given manifest of an updated model, unless another node stored a different manifest since the
+	 * given previous one was loaded
+	 *
+	 * @param context Current execution context from which function is called
+	 * @param modelHandle Handle of the model (as returned by getMatrixHandle() or getVectorHandle())
+	 * @param manifest The manifest
+	 * @param previous Manifest of the model the update is based on
+	 * @return True if storing succeeded, False if it failed or the model was updated by another node
 	 */
-	private HashSet<String> parseTags(String[] videoTags) {
+	private boolean storeManifest(Context context, String modelHandle, ModelManifest manifest,
+								  ModelManifest previous) {
+		if (!storeEnvelope(context, getManifestHandle(modelHandle), manifest,
+				current -> current instanceof ModelManifest && ((ModelManifest) current).hasSameParts(previous)))
+			return false;
+		models.publish(getManifestHandle(modelHandle), manifest);
+		return true;
+	}
+
+	/**
+	 * Stores the given updated shard under a revision after its current one, which no other envelope is stored
+	 * under, so that shards stored concurrently by other nodes are not overwritten
+	 *
+	 * @param context Current execution context from which function is called
+	 * @param modelHandle Handle of the model (as returned by getMatrixHandle() or getVectorHandle())
+	 * @param manifest Manifest of the model the update is based on
+	 * @param shard Shard index
+	 * @param model User vectors of the shard
+	 * @return The revision under which the shard was stored or -1 if storing failed
+	 */
+	private int storeShardRevision(Context context, String modelHandle, ModelManifest manifest, int shard,
+								   VectorModel model) {
+		byte[] content;
 		try {
-			HashSet<String> tagSet = new HashSet<String>();
-			tagSet.addAll(Arrays.asList(videoTags));
-			return tagSet;
+			content = ModelCodec.encode(model, modelSinglePrecision, modelCompression);
 		} catch (Exception e) {
 			log.printStackTrace(e);
+			return -1;
+		}
+		for (int revision = manifest.getShardRevision(shard) + 1;
+			 revision <= manifest.getShardRevision(shard) + MAX_REVISION_PROBES; revision++) {
+			String shardHandle = getShardHandle(modelHandle, manifest, shard, revision);
+			if (storeEnvelope(context, shardHandle, content, current -> current == null)) {
+				models.publish(shardHandle, model);
+				return revision;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Stores the given updated index under a revision after its current one, which no other envelope is stored
+	 * under, so that indices stored concurrently by other nodes are not overwritten
+	 *
+	 * @param context Current execution context from which function is called
+	 * @param modelHandle Handle of the model (as returned by getVectorHandle())
+	 * @param manifest Manifest of the model the update is based on
+	 * @param index The index
+	 * @return The revision under which the index was stored or -1 if storing failed
+	 */
+	private int storeIndexRevision(Context context, String modelHandle, ModelManifest manifest, VectorIndex index) {
+		for (int revision = manifest.getIndexRevision() + 1;
+			 revision <= manifest.getIndexRevision() + MAX_REVISION_PROBES; revision++) {
+			String indexHandle = getIndexHandle(modelHandle, manifest, revision);
+			if (storeEnvelope(context, indexHandle, index, current -> current == null)) {
+				models.publish(indexHandle, index);
+				return revision;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the vectors of the given users (and possibly further users stored in the same shards) from memory or
+	 * loads them from the network storage. Only the shards containing the users are loaded, in parallel, and they are
+	 * not copied into a new model.
+	 *
+	 * @param context Current execution context from which function is called
+	 * @param modelHandle Handle of the model (as returned by getMatrixHandle() or getVectorHandle())
+	 * @param userIds las2peer User Agent IDs of the users in question, null to load all users
+	 * @param legacyLoader Loads the model if it was stored in a single envelope before models were sharded
+	 * @return User vectors or null if the model is not stored or could not be loaded
+	 */
+	private ShardedVectors getUserVectors(Context context, String modelHandle, Collection<String> userIds,
+										  Supplier<VectorModel> legacyLoader) {
+		ModelManifest manifest = getManifest(context, modelHandle);
+		if (manifest == null) {
+			VectorModel model = legacyLoader.get();
+			return model == null ? null : ShardedVectors.of(model);
+		}
+		return ModelShards.fetch(manifest, userIds,
+				shard -> getModel(context, getShardHandle(modelHandle, manifest, shard)));
+	}
+
+	/**
+	 * Stores the given user vectors split into shards and the index built over them, followed by the manifest
+	 * describing them. As the version is part of the shard and index handles, nodes keep using the previous version
+	 * until they load the new manifest.
+	 *
+	 * @param context Current execution context from which function is called
+	 * @param modelHandle Handle of the model (as returned by getMatrixHandle() or getVectorHandle())
+	 * @param model User vectors
+	 * @param version Version of the model, has to differ from the one of the currently stored model
+	 * @param index Index over the user vectors, null if the model is not indexed
+	 * @return True if storing succeeded, False otherwise
+	 */
+	private boolean storeShardedModel(Context context, String modelHandle, VectorModel model, long version,
+									  VectorIndex index) {
+		if (modelHandle == null)
+			return false;
+		ModelManifest manifest = new ModelManifest(version, ModelShards.noShards(model.size()), model.getDimension(),
+				model.size());
+		VectorModel[] shards = ModelShards.split(model, manifest.getNoShards());
+		for (int shard = 0; shard < shards.length; shard++) {
+			if (!storeModel(context, getShardHandle(modelHandle, manifest, shard), shards[shard]))
+				return false;
+		}
+		if (index != null) {
+			String indexHandle = getIndexHandle(modelHandle, manifest);
+			if (storeEnvelope(context, indexHandle, index))
+				models.publish(indexHandle, index);
+			else
+				log.warning("Could not store index of model " + modelHandle + "!");
+		}
+		if (!storeManifest(context, modelHandle, manifest))
+			return false;
+		log.info("Stored model " + modelHandle + " version " + version + " with " + model.size() +
+				" user vectors in " + shards.length + " shards");
+		return true;
+	}
+
+	/**
+	 * Returns the matrix-factorization model stored in a single envelope before models were sharded from memory or
+	 * loads it from the network storage. Models stored before item features were kept are loaded without them.
+	 *
+	 * @param context Current execution context from which function is called
+	 * @return The model or null if none is stored
+	 */
+	private MfModel loadMfModel(Context context) {
+		return models.get(getMatrixHandle(), () -> {
+			Serializable content = getEnvelopeContent(context, getMatrixHandle());
+			try {
+				if (content instanceof byte[]) {
+					MfModel mfModel = MfModel.fromBytes((byte[]) content);
+					log.info("Loaded Matrix Factorization model with " + mfModel.getUserFeatures().size() +
+							" user vectors trained at " + mfModel.getTrainedAt());
+					return mfModel;
+				}
+				if (content instanceof HashMap) {
+					HashMap<String, ArrayList<Double>> vectorMap = (HashMap<String, ArrayList<Double>>) content;
+					log.info("Loaded Matrix Factorization model with " + vectorMap.size() + " user vectors");
+					return MfModel.fromUserFeatures(VectorModel.fromMap(vectorMap));
+				}
+			} catch (Exception e) {
+				log.printStackTrace(e);
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * Returns the item features and training parameters of the given matrix-factorization model version from memory
+	 * or loads them from the network storage
+	 *
+	 * @param context Current execution context from which function is called
+	 * @param version Model version as given in the manifest
+	 * @return The model without user features or null if none is stored
+	 */
+	private MfModel loadMfItems(Context context, long version) {
+		String itemsHandle = getItemsHandle(version);
+		return models.get(itemsHandle, () -> {
+			Serializable content = getEnvelopeContent(context, itemsHandle);
+			try {
+				if (content instanceof byte[])
+					return MfModel.fromBytes((byte[]) content);
+			} catch (Exception e) {
+				log.printStackTrace(e);
+			}
 			return null;
+		});
+	}
+
+	/**
+	 * Returns the matrix-factorization vectors of the given users
+	 *
+	 * @param context Current execution context from which function is called
+	 * @param userIds las2peer User Agent IDs of the users in question, null to load all users
+	 * @return User features or null if no model is stored
+	 */
+	private ShardedVectors getMfVectors(Context context, Collection<String> userIds) {
+		return getUserVectors(context, getMatrixHandle(), userIds, () -> {
+			MfModel mfModel = loadMfModel(context);
+			return mfModel == null ? null : mfModel.getUserFeatures();
+		});
+	}
+
+	/**
+	 * Returns the word2vec vectors of the given users
+	 *
+	 * @param context Current execution context from which function is called
+	 * @param userIds las2peer User Agent IDs of the users in question, null to load all users
+	 * @return User vectors or null if no model is stored
+	 */
+	private ShardedVectors getW2VVectors(Context context, Collection<String> userIds) {
+		return getUserVectors(context, getVectorHandle(), userIds, () -> getModel(context, getVectorHandle()));
+	}
+
+	/**
+	 * Stores the given matrix-factorization model, i.e. its item features and training parameters followed by the
+	 * sharded user features, using the training time as version
+	 *
+	 * @param context Current execution context from which function is called
+	 * @param mfModel The model
+	 * @return True if storing succeeded, False otherwise
+	 */
+	private boolean storeMfModel(Context context, MfModel mfModel) {
+		long version = mfModel.getTrainedAt();
+		String itemsHandle = getItemsHandle(version);
+		MfModel mfItems = mfModel.withoutUserFeatures();
+		try {
+			if (itemsHandle == null ||
+					!storeEnvelope(context, itemsHandle, mfItems.toBytes(modelSinglePrecision, modelCompression)))
+				return false;
+		} catch (Exception e) {
+			log.printStackTrace(e);
+			return false;
 		}
+		models.publish(itemsHandle, mfItems);
+		return storeShardedModel(context, getMatrixHandle(), mfModel.getUserFeatures(), version, null);
+	}
+
+	/**
+	 * Computes the matrix-factorization features of the given user from their stored ratings and the item features
+	 * of the current model, and stores only the shard holding this user's vector again, under a new revision. If
+	 * another node updated the model in between, the update is repeated based on the model stored by that node.
+	 *
+	 * @param context Current execution context from which function is called
+	 * @param userId las2peer User Agent ID
+	 * @return True if the user's vector was updated, False otherwise
+	 */
+	private boolean foldInUser(Context context, String userId) {
+		UserRatings ratings = db.getUserRatings(userId);
+		if (ratings == null)
+			return false;
+		synchronized (mfModelLock) {
+			// Repeated with the model stored by another node if it updated the model in between
+			for (int attempt = 1; ; attempt++) {
+				// Models stored in a single envelope are not updated, the user is added on next training. The
+				// manifest is loaded again, so that revisions stored by other nodes are not overwritten.
+				models.invalidate(getManifestHandle(getMatrixHandle()));
+				ModelManifest manifest = getManifest(context, getMatrixHandle());
+				MfModel mfItems = manifest == null ? null : loadMfItems(context, manifest.getVersion());
+				// Item features identified by outdated integer IDs cannot be combined with the stored ratings
+				if (mfItems == null || mfItems.getItemFeatures() == null ||
+						mfItems.getIdMappingVersion() != DataBaseConnection.ID_MAPPING_VERSION) {
+					log.info("No item features stored, user " + userId + " is added to the model on next training");
+					return false;
+				}
+				double[] userFeatures = mfItems.foldIn(ratings, getRatingMappings());
+				if (userFeatures == null)
+					return false;
+				int shardIndex = manifest.shardOf(userId);
+				VectorModel shard = getModel(context, getShardHandle(getMatrixHandle(), manifest, shardIndex));
+				int revision = shard == null ? -1 : storeShardRevision(context, getMatrixHandle(), manifest,
+						shardIndex, shard.withVector(userId, userFeatures));
+				if (revision < 0) {
+					log.warning("Could not store matrix!");
+					return false;
+				}
+				ModelManifest updated = manifest.withRevisions(Collections.singletonMap(shardIndex, revision),
+						manifest.getIndexRevision());
+				if (storeManifest(context, getMatrixHandle(), updated, manifest))
+					break;
+				if (attempt == MAX_MANIFEST_ATTEMPTS) {
+					log.warning("Could not store matrix!");
+					return false;
+				}
+			}
+		}
+		log.info("Folded user " + userId + " into Matrix Factorization model");
+		return true;
+	}
+
+	/**
+	 * Helper function returning the weights of the different ratings used for Matrix Factorization
+	 *
+	 * @return A map of ratings given as strings mapping to doubles
+	 */
+	private HashMap<String, Double> getRatingMappings() {
+		HashMap<String, Double> ratingMappings = new HashMap<String, Double>();
+		ratingMappings.put("dislike", -1.0);
+		ratingMappings.put("subscribe", 1.0);
+		ratingMappings.put("watch", 2.0);
+		ratingMappings.put("playlist", 2.0);
+		ratingMappings.put("like", 3.0);
+		return ratingMappings;
+	}
+
+	/**
+	 * Returns the index built over the current version of the word2vec user vectors from memory or loads it from the
+	 * network storage
+	 *
+	 * @param context Current execution context from which function is called
+	 * @return The index or null if none is stored
+	 */
+	private VectorIndex getIndex(Context context) {
+		return getIndex(context, getManifest(context, getVectorHandle()));
+	}
+
+	/**
+	 * Returns the index belonging to the given manifest of the word2vec model from memory or loads it from the
+	 * network storage
+	 *
+	 * @param context Current execution context from which function is called
+	 * @param manifest Manifest of the word2vec model, might be null
+	 * @return The index or null if none is stored
+	 */
+	private VectorIndex getIndex(Context context, ModelManifest manifest) {
+		if (manifest == null)
+			return null;
+		String indexHandle = getIndexHandle(getVectorHandle(), manifest);
+		return models.get(indexHandle, () -> {
+			Serializable content = getEnvelopeContent(context, indexHandle);
+			return content instanceof VectorIndex ? (VectorIndex) content : null;
+		});
+	}
+
+	/**
+	 * Helper function to turn the given model into a Json object
+	 *
+	 * @param model User vectors
+	 * @return The vectors as Json {user_u: [feature_i, ...], ...}
+	 */
+	private JsonObject modelToJson(VectorModel model) {
+		JsonObject modelJson = new JsonObject();
+		double[] vectors = model.getVectors();
+		for (int row = 0; row < model.size(); row++) {
+			JsonArray vector = new JsonArray();
+			int offset = model.offset(row);
+			for (int i = 0; i < model.getDimension(); i++)
+				vector.add(vectors[offset + i]);
+			modelJson.add(model.getUserId(row), vector);
+		}
+		return modelJson;
+	}
+
+	/**
+	 * Gets all words from string associated with the YouTube video
+	 *
+	 * @param detail Might be title or description of YouTube Video given as String
+	 * @param wordSet Set to which the words contained in given detail are added
+	 * @return The given set
+	 */
+	private HashSet<String> parseVideoDetail(String detail, HashSet<String> wordSet) {
+		return tokenizer.tokenize(detail, wordSet);
+	}
+
+	/**
+	 * Gets all video tags, which are kept as a whole (like in the video centers computed before)
+	 *
+	 * @param videoTags Strings tagged to video as ArrayList
+	 * @param wordSet Set to which the tags are added
+	 * @return The given set
+	 */
+	private HashSet<String> parseTags(String[] videoTags, HashSet<String> wordSet) {
+		if (videoTags == null)
+			return wordSet;
+		for (String tag : videoTags)
+			if (tag != null && !tag.isEmpty())
+				wordSet.add(tag);
+		return wordSet;
+	}
+
+	/**
+	 * Gets all words from the textual data of the YouTube video used to compute its word2vec center
+	 *
+	 * @param videoData The YouTube video
+	 * @return Words of title, description, and tags as HashSet
+	 */
+	private HashSet<String> getBagOfWords(YouTubeVideo videoData) {
+		HashSet<String> bagOfWords = new HashSet<String>();
+		parseVideoDetail(videoData.getTitle(), bagOfWords);
+		parseVideoDetail(videoData.getDescription(), bagOfWords);
+		parseTags(videoData.getTags(), bagOfWords);
+		// Including comments seems to make result worse
+		// parseComments(db.getCommentsByVideoId(videoData.getVideoId()), bagOfWords);
+		return bagOfWords;
+	}
+
+	/**
+	 * Returns the word2vec model used to compute video centers
+	 *
+	 * @return The local memory-mapped model if configured, the remote word2vec implementation (answering from the
+	 * shared word vector cache where possible) otherwise
+	 */
+	private WordEmbeddings getWordEmbeddings() {
+		if (embeddings != null && embeddings.isModelLoaded())
+			return embeddings;
+		return new Word2VecWrapper(mlUrl).setVectorCache(wordVectors);
 	}
 
 	/**
 	 * Gets all words from the video comments
 	 *
 	 * @param videoComments Comments associated with YouTube Video as ArrayList
-	 * @return All words from given list of YouTube Comments as HashSet
+	 * @param wordSet Set to which the words from given list of YouTube Comments are added
+	 * @return The given set or null if no comments are given
 	 */
-	private HashSet<String> parseComments(ArrayList<YouTubeComment> videoComments) {
+	private HashSet<String> parseComments(ArrayList<YouTubeComment> videoComments, HashSet<String> wordSet) {
 		if (videoComments == null)
 			return null;
-		HashSet<String> wordSet = new HashSet<String>();
 		for (YouTubeComment comment : videoComments) {
 			try {
-				wordSet.addAll(getWordsFromString(comment.getContent()));
+				tokenizer.tokenize(comment.getContent(), wordSet);
 			} catch (Exception e) {
 				log.printStackTrace(e);
 				continue;
@@ -509,101 +1182,85 @@ public class YouTubeRecommendations extends RESTService {
 	 * @return The las2peer Agent ID which optimizes both inverted collaborative filtering and semantic closeness
 	 */
 	public String findMatch(HashSet<String> userIds, String request) {
+		ArrayList<UserMatch> matches = findTopUserMatches(userIds, request, 1);
+		if (matches == null || matches.isEmpty())
+			return null;
+		return matches.get(0).getUserId();
+	}
+
+	/**
+	 * Finds the k best matches out of the given users for the requesting user based on the previously computed
+	 * machine-learning models. Only JDK types are returned, so that the result can be read by services invoking this
+	 * function remotely without having the classes of this service.
+	 *
+	 * @param userIds HashSet of las2peer User Agent IDs who should be considered as possbile matches
+	 * @param request The YouTube request for which the users are matched (e.g., specific video, or search query)
+	 *                (CURRENTLY: One time code used to match request to matching computation parameters and observations)
+	 * @param k Maximum number of matches returned
+	 * @return The best matches ordered from best to worst, each given as map of "userId" to the las2peer Agent ID and
+	 * of "cf", "w2v" and "matchValue" to the collaborative filtering, word2vec and combined values
+	 */
+	public ArrayList<HashMap<String, Serializable>> findTopMatches(HashSet<String> userIds, String request, int k) {
+		ArrayList<UserMatch> matches = findTopUserMatches(userIds, request, k);
+		if (matches == null)
+			return null;
+		ArrayList<HashMap<String, Serializable>> result = new ArrayList<HashMap<String, Serializable>>(matches.size());
+		for (UserMatch match : matches)
+			result.add(match.toMap());
+		return result;
+	}
+
+	/**
+	 * Finds the k best matches out of the given users for the requesting user based on the previously computed
+	 * machine-learning models
+	 *
+	 * @param userIds HashSet of las2peer User Agent IDs who should be considered as possbile matches
+	 * @param request The YouTube request for which the users are matched (e.g., specific video, or search query)
+	 *                (CURRENTLY: One time code used to match request to matching computation parameters and observations)
+	 * @param k Maximum number of matches returned
+	 * @return The best matches including their collaborative filtering and word2vec values ordered from best to worst
+	 */
+	private ArrayList<UserMatch> findTopUserMatches(HashSet<String> userIds, String request, int k) {
 		// TODO include request data
+		if (userIds == null || k < 1)
+			return null;
 		Context context = Context.getCurrent();
-		HashMap<String, ArrayList<Double>> mfModel =
-				(HashMap<String, ArrayList<Double>>) getEnvelopeContent(context, getMatrixHandle());
-		HashMap<String, ArrayList<Double>> w2vModel =
-				(HashMap<String, ArrayList<Double>>) getEnvelopeContent(context, getVectorHandle());
-		if (mfModel == null || w2vModel == null) {
+		String userId = getUserId((UserAgent) context.getMainAgent());
+		// Only the shards holding the requesting user and the candidates are loaded
+		HashSet<String> requiredIds = new HashSet<String>(userIds);
+		requiredIds.add(userId);
+		ShardedVectors mfVectors = getMfVectors(context, requiredIds);
+		ShardedVectors w2vVectors = getW2VVectors(context, requiredIds);
+		if (mfVectors == null || w2vVectors == null) {
 			log.severe("Cannot compute match without models!");
 			return null;
 		}
 
-		String userId = getUserId((UserAgent) context.getMainAgent());
-		ArrayList<Double> userMfVec = mfModel.get(userId);
-		ArrayList<Double> userW2vVec = w2vModel.get(userId);
-		if (userMfVec == null || w2vModel == null) {
+		MatchScorer scorer = new MatchScorer(mfVectors, w2vVectors, getIndex(context));
+		if (!scorer.hasUser(userId)) {
 			log.severe("Missing machine-learning model for user!");
 			return null;
 		}
 
-		// Compute collaborative filtering and word2vec similarity
-		HashMap<String, Tuple<Double, Double>> matchVals = new HashMap<String, Tuple<Double, Double>>();
-		double maxCfVal = 0;
-		double maxW2vVal = 0;
-		for (String matchId : userIds) {
-			if (userId.equals(matchId))
-				continue;
-			// Compute similarity based on collaborative filtering
-			double cfVal = 0;
-			ArrayList<Double> matchMfVec = mfModel.get(matchId);
-			if (matchMfVec == null) {
-			    log.info("No MF-model stored for user " + matchId);
-			    continue;
-			}
-			if (userMfVec.size() != matchMfVec.size()) {
-			    log.severe("MF-Vector size mismatch!\n" + userMfVec.toString() + '\n' +
-			    		matchMfVec.toString());
-			    continue;
-			}
-			for (int i = 0; i < userMfVec.size(); i++)
-				cfVal += Math.pow(userMfVec.get(i) - matchMfVec.get(i), 2);
-			cfVal = Math.sqrt(cfVal);
-			if (cfVal > maxCfVal)
-				maxCfVal = cfVal;
-			// Compute similarity based on word2vec vectors
-			double w2vVal = 0;
-			ArrayList<Double> matchW2vVec = w2vModel.get(matchId);
-			if (matchW2vVec == null) {
-			    log.info("No W2V-model stored for user " + matchId);
-			    continue;
-			}
-			if (userW2vVec.size() != matchW2vVec.size()) {
-			    log.severe("W2V-Vector size mismatch!\n" + userW2vVec.toString() + '\n' +
-			    		matchW2vVec.toString());
-			    continue;
-			}
-			for (int i = 0; i < userW2vVec.size(); i++)
-				w2vVal += Math.pow(userW2vVec.get(i) - matchW2vVec.get(i), 2);
-			w2vVal = Math.sqrt(w2vVal);
-			if (w2vVal > maxW2vVal)
-				maxW2vVal = w2vVal;
-			matchVals.put(matchId, new Tuple<Double, Double>(cfVal, w2vVal));
-			
-		}
 		// Get alpha value for user (if non was ever set, set to neutral)
 		double alpha = 0.5;
 		try {
-			alpha = (Double) context.requestEnvelope(getAlphaHandle(userId)).getContent();
+			Double storedAlpha = getStoredAlpha(context, userId);
+			if (storedAlpha != null)
+				alpha = storedAlpha;
+			else
+				log.info("No alpha value stored for user " + userId + " using 0.5");
 		} catch (Exception e) {
-			log.printStackTrace(e);
-			log.info("No alpha value stored for user " + userId + " using 0.5");
-		}
-		// Since we later divide by these values, they should not be zero
-		if (maxCfVal == 0)
-			maxCfVal = 1;
-		if (maxW2vVal == 0)
-			maxW2vVal = 1;
-		// Compute best matching value (cfVal should be as high as possible, w2vVal as low as possible)
-		String bestMatchId = null;
-		double bestMatchVal = -9999.0;
-		for (String matchId : matchVals.keySet()) {
-			if (userId.equals(matchId))
-				continue;
-			// Note, that cfVal and w2vVal are normalized, due to (likely) differences in dimensionality
-			Tuple<Double, Double> matchT = matchVals.get(matchId);
-			double matchVal = (alpha * (matchT.a()/maxCfVal)) - ((1 - alpha) * (matchT.b()/maxW2vVal));
-			// debug info
-			log.info("Computed match value " + String.valueOf(matchVal) + " for user pair " + userId + ", " + matchId);
-			if (matchVal > bestMatchVal) {
-				bestMatchVal = matchVal;
-				bestMatchId = matchId;
-			}
+			log.warning("Could not get alpha value of user " + userId + " using 0.5: " + e.getMessage());
+		}
+		ArrayList<UserMatch> matches = scorer.findTopMatches(userId, userIds, alpha, k);
+		if (matches.isEmpty()) {
+			log.info("No valid match candidates for user " + userId);
+			return matches;
 		}
 		// Add request to database (not the original intended function of request String)
-		insertOneTimeCode(request, alpha, matchVals.get(bestMatchId).a(), matchVals.get(bestMatchId).b());
-		return bestMatchId;
+		insertOneTimeCode(request, alpha, matches.get(0).getCf(), matches.get(0).getW2v());
+		return matches;
 	}
 
 	/**
@@ -755,13 +1412,13 @@ public class YouTubeRecommendations extends RESTService {
 		// Get alpha value and return it
 		Double alpha;
 		try {
-			alpha = (Double) context.requestEnvelope(getAlphaHandle(userId)).getContent();
-		} catch (EnvelopeNotFoundException e) {
-			return Response.status(404).entity("No alpha value stored for you.").build();
+			alpha = getStoredAlpha(context, userId);
 		} catch (Exception e) {
 			log.printStackTrace(e);
 			return Response.serverError().entity("Unspecified server error.").build();
 		}
+		if (alpha == null)
+			return Response.status(404).entity("No alpha value stored for you.").build();
 		return Response.ok().entity(alpha).build();
 	}
 
@@ -820,8 +1477,11 @@ public class YouTubeRecommendations extends RESTService {
 		try {
 			env.setContent(alpha);
 			context.storeEnvelope(env);
+			alphas.put(userId, alpha);
 		} catch(Exception e) {
 			log.printStackTrace(e);
+			// Stored value is unknown, e.g. if another node changed it in the meantime, so it is loaded again
+			alphas.invalidate(userId);
 			return Response.serverError().entity("Unable to store value.").build();
 		}
 			
@@ -904,7 +1564,6 @@ public class YouTubeRecommendations extends RESTService {
 					message = "OK") })
 	public Response getMfModel() {
 		Context context;
-		Gson gson = new Gson();
 		// Only node/service admins are allowed to call this function
 		try {
 			context = Context.getCurrent();
@@ -915,12 +1574,8 @@ public class YouTubeRecommendations extends RESTService {
 			return buildResponse(401, "Could not get execution context. Are you logged in?");
 		}
 		try {
-			HashMap<String, ArrayList<Double>> featureVectors = (HashMap<String, ArrayList<Double>>)
-					getEnvelopeContent(context, getMatrixHandle());
-			JsonObject mfJson = new JsonObject();
-			for (String userId : featureVectors.keySet())
-				mfJson.add(userId, gson.fromJson(gson.toJson(featureVectors.get(userId)), JsonArray.class));
-			return buildResponse(200, mfJson.toString());
+			VectorModel mfVectors = getMfVectors(context, null).toModel();
+			return buildResponse(200, modelToJson(mfVectors).toString());
 		} catch (Exception e) {
 			log.printStackTrace(e);
 			return buildResponse(500, "Error getting Matrix Factorization model!");
@@ -928,51 +1583,40 @@ public class YouTubeRecommendations extends RESTService {
 	}
 
 	/**
-	 * Computes a Matrix Factorization model from the rating data stored in the linked database
+	 * Starts computing a Matrix Factorization model from the rating data stored in the linked database in the
+	 * background. If a computation is already running, no new one is started.
 	 *
-	 * @return The user's feature vectors computed based on the given rating data
+	 * @return The training job computing the model, whose state can be retrieved from the jobs endpoint
 	 */
 	@POST
 	@Path("/matrix-factorization")
 	@Produces(MediaType.APPLICATION_JSON)
 	@ApiOperation(
 			value = "Create MF model",
-			notes = "Creates a Matrix Factorization model based on stored data and returns user features")
+			notes = "Starts a job creating a Matrix Factorization model based on stored data and returns the job")
 	@ApiResponses(
 			value = { @ApiResponse(
-					code = HttpURLConnection.HTTP_OK,
-					message = "OK") })
+					code = HttpURLConnection.HTTP_ACCEPTED,
+					message = "Accepted") })
 	public Response createMfModel(@DefaultValue("") @QueryParam("rank") String rankParam,
 								  @DefaultValue("") @QueryParam("iterations") String iterationsParam,
 								  @DefaultValue("") @QueryParam("lambda") String lambdaParam) {
 		// Check if service is set up correctly
 		if (!db.isHealthy() && !db.refreshConnection())
 			return buildResponse(500, "No database connection!");
-		if (mlUrl == null)
+		if (mlUrl == null && !LOCAL_MF_ENGINE.equals(mfEngine))
 			return buildResponse(500, "No connection to remote machine learning implementation!");
 		// Only node/service admins are allowed to call this function
+		Context context;
 		try {
-			Context context = Context.getCurrent();
+			context = Context.getCurrent();
 			if (!context.getMainAgent().getIdentifier().equals(
 					context.getUserAgentIdentifierByLoginName(serviceAgentName)))
 				return buildResponse(403, "This function can only be called by service agent!");
 		} catch (Exception e) {
 			return buildResponse(401, "Could not get execution context. Are you logged in?");
 		}
-		// Retrieve rating data from MySQL database
-		HashMap<String, HashMap<String, String>> ratingData = db.getAllRatings();
-		if (ratingData == null)
-			return buildResponse(500, "There was an error retrieving watch data from the database.");
-		if (ratingData.isEmpty())
-			return buildResponse(400, "There is currently no YouTube watch data stored in the database.");
-
-		// TODO outsource this somewhere
-		HashMap<String, Double> ratingMappings = new HashMap<String, Double>();
-		ratingMappings.put("dislike", -1.0);
-		ratingMappings.put("subscribe", 1.0);
-		ratingMappings.put("watch", 2.0);
-		ratingMappings.put("playlist", 2.0);
-		ratingMappings.put("like", 3.0);
+		HashMap<String, Double> ratingMappings = getRatingMappings();
 
 		int rank = 0;
 		int iterations = 0;
@@ -999,25 +1643,113 @@ public class YouTubeRecommendations extends RESTService {
 			}
 		}
 
-		MlLibWrapper mlLib = new MlLibWrapper(mlUrl, ratingMappings);
+		MfEngine engine;
+		if (LOCAL_MF_ENGINE.equals(mfEngine))
+			engine = new AlsEngine(ratingMappings);
+		else
+			engine = new MlLibWrapper(mlUrl, ratingMappings).setCompression(mlLibCompression);
 		if (rank > 0)
-			mlLib.setRank(rank);
+			engine.setRank(rank);
 		if (iterations > 0)
-			mlLib.setIterations(iterations);
+			engine.setIterations(iterations);
 		if (lambda > 0 && lambda < 1)
-			mlLib.setLambda(lambda);
-		JsonObject remoteServiceResponse = mlLib.trainModel(
-				modelName, ratingData);
-		if (remoteServiceResponse == null)
-			return buildResponse(500, "Internal server error while trying to train model.");
-		if (remoteServiceResponse.get("status").getAsInt() != 200)
-			return buildResponse(remoteServiceResponse.get("status").getAsInt(),
-					remoteServiceResponse.get("msg").getAsString());
-		if (!storeEnvelope(Context.getCurrent(),
-				getMatrixHandle(),  mlLib.parseFeatureVectors(remoteServiceResponse.get("msg").getAsString()))) {
-			log.warning("Could not store matrix!");
+			engine.setLambda(lambda);
+		TrainingJob job = trainingJobs.submit(MF_JOB_TYPE, context.getExecutor(),
+				trainingJob -> trainMfModel(context, engine, trainingJob));
+		return buildResponse(202, job.toJson());
+	}
+
+	/**
+	 * Helper function computing and storing a Matrix Factorization model, executed as training job
+	 *
+	 * @param context Execution context of the service agent which started the job
+	 * @param engine Matrix Factorization engine set up with the training parameters
+	 * @param job The training job to which phases and result are reported
+	 */
+	private void trainMfModel(Context context, MfEngine engine, TrainingJob job) {
+		engine.setTrainingJob(job);
+		// Rating data is streamed from MySQL database into the engine
+		VectorModel featureVectors = engine.trainModel(modelName, db);
+		if (featureVectors == null) {
+			job.finish(engine.getResponseStatus(), engine.getResponseMessage());
+			return;
+		}
+		job.enterPhase("store");
+		MfModel mfModel = new MfModel(featureVectors, engine.getItemFeatures(), engine.getLambda(),
+				engine.getIterations(), System.currentTimeMillis(), DataBaseConnection.ID_MAPPING_VERSION);
+		synchronized (mfModelLock) {
+			if (!storeMfModel(context, mfModel)) {
+				log.warning("Could not store matrix!");
+				job.finish(500, "Could not store matrix!");
+				return;
+			}
 		}
-		return buildResponse(200, remoteServiceResponse.get("msg").getAsString());
+		job.finish(200, engine.getResponseMessage());
+	}
+
+	/**
+	 * Retrieves the state of the recent model training jobs
+	 *
+	 * @return The training jobs from oldest to newest
+	 */
+	@GET
+	@Path("/jobs")
+	@Produces(MediaType.APPLICATION_JSON)
+	@ApiOperation(
+			value = "Retrieves training jobs",
+			notes = "Returns state, phase timings, and result of recent model training jobs")
+	@ApiResponses(
+			value = { @ApiResponse(
+					code = HttpURLConnection.HTTP_OK,
+					message = "OK") })
+	public Response getTrainingJobs() {
+		// Only node/service admins are allowed to call this function
+		try {
+			Context context = Context.getCurrent();
+			if (!context.getMainAgent().getIdentifier().equals(
+					context.getUserAgentIdentifierByLoginName(serviceAgentName)))
+				return buildResponse(403, "This function can only be called by service agent!");
+		} catch (Exception e) {
+			return buildResponse(401, "Could not get execution context. Are you logged in?");
+		}
+		JsonArray jobs = new JsonArray();
+		for (TrainingJob job : trainingJobs.list())
+			jobs.add(job.toJson());
+		JsonObject response = new JsonObject();
+		response.add("jobs", jobs);
+		return buildResponse(200, response);
+	}
+
+	/**
+	 * Retrieves the state of the given model training job
+	 *
+	 * @param jobId ID of the training job
+	 * @return State, phase timings, and result of the training job
+	 */
+	@GET
+	@Path("/jobs/{jobId}")
+	@Produces(MediaType.APPLICATION_JSON)
+	@ApiOperation(
+			value = "Retrieves training job",
+			notes = "Returns state, phase timings, and result of the given model training job")
+	@ApiResponses(
+			value = { @ApiResponse(
+					code = HttpURLConnection.HTTP_OK,
+					message = "OK") })
+	public Response getTrainingJob(@PathParam("jobId") String jobId) {
+		// Only node/service admins are allowed to call this function
+		try {
+			Context context = Context.getCurrent();
+			if (!context.getMainAgent().getIdentifier().equals(
+					context.getUserAgentIdentifierByLoginName(serviceAgentName)))
+				return buildResponse(403, "This function can only be called by service agent!");
+		} catch (Exception e) {
+			return buildResponse(401, "Could not get execution context. Are you logged in?");
+		}
+		TrainingJob job = trainingJobs.get(jobId);
+		if (job == null)
+			return buildResponse(404, "No training job " + jobId + " found.");
+		return buildResponse(200, job.toJson());
 	}
 
 	/**
@@ -1037,7 +1769,6 @@ public class YouTubeRecommendations extends RESTService {
 					message = "OK") })
 	public Response getW2V() {
 		Context context;
-		Gson gson = new Gson();
 		// Only node/service admins are allowed to call this function
 		try {
 			context = Context.getCurrent();
@@ -1048,12 +1779,8 @@ public class YouTubeRecommendations extends RESTService {
 			return buildResponse(401, "Could not get execution context. Are you logged in?");
 		}
 		try {
-			HashMap<String, ArrayList<Double>> w2vVectors = (HashMap<String, ArrayList<Double>>)
-					getEnvelopeContent(context, getVectorHandle());
-			JsonObject w2vJson = new JsonObject();
-			for (String userId : w2vVectors.keySet())
-				w2vJson.add(userId, gson.fromJson(gson.toJson(w2vVectors.get(userId)), JsonArray.class));
-			return buildResponse(200, w2vJson.toString());
+			VectorModel w2vVectors = getW2VVectors(context, null).toModel();
+			return buildResponse(200, modelToJson(w2vVectors).toString());
 		} catch (Exception e) {
 			log.printStackTrace(e);
 			return buildResponse(500, "Error getting Word2Vec model!");
@@ -1065,6 +1792,8 @@ public class YouTubeRecommendations extends RESTService {
 	 * the database for the requesting user
 	 * TODO restrict access, normal users should not be able to trigger this function (due to computational overhead)
 	 *
+	 * @param incrementalParam Whether only the centers of users whose ratings changed since the last computation are
+	 *                         published instead of computing all centers from scratch
 	 * @return The user's word vector computed based on the given video text data
 	 */
 	@POST
@@ -1078,11 +1807,11 @@ public class YouTubeRecommendations extends RESTService {
 			value = { @ApiResponse(
 					code = HttpURLConnection.HTTP_OK,
 					message = "OK") })
-	public Response computeW2V() {
+	public Response computeW2V(@DefaultValue("false") @QueryParam("incremental") String incrementalParam) {
 		// Check if service is set up correctly
 		if (!db.isHealthy() && !db.refreshConnection())
 			return buildResponse(500, "No database connection!");
-		if (mlUrl == null)
+		if (mlUrl == null && (embeddings == null || !embeddings.isModelLoaded()))
 			return buildResponse(500, "No connection to remote machine learning implementation!");
 		// Only node/service admins are allowed to call this function
 		try {
@@ -1093,88 +1822,268 @@ public class YouTubeRecommendations extends RESTService {
 		} catch (Exception e) {
 			return buildResponse(401, "Could not get execution context. Are you logged in?");
 		}
+		if (Boolean.parseBoolean(incrementalParam)) {
+			Response response = publishChangedW2VCenters(Context.getCurrent());
+			if (response != null)
+				return response;
+			log.info("No word2vec model stored, computing all user centers");
+		}
 
-		// Get ratings data from database
-		HashMap<String, HashMap<String, String>> ratingData = db.getAllRatings();
-		if (ratingData == null) {
+		// Running sums are read before the ratings, so that sums changed while the centers are computed are detected
+		HashMap<String, UserCenter> storedCenters = db.getUserCenters(false);
+		if (storedCenters == null)
+			return buildResponse(500, "Unable to get user centers from database.");
+
+		// Collect the videos rated by each user, so that videos rated by many users are only processed once
+		LinkedHashMap<String, String[]> ratedVideos = new LinkedHashMap<String, String[]>();
+		LinkedHashSet<String> distinctVideos = new LinkedHashSet<String>();
+		int noUsers = db.streamRatings(userRatings -> {
+			String[] videoIds = new String[userRatings.size()];
+			for (int j = 0; j < userRatings.size(); j++) {
+				videoIds[j] = userRatings.getVideoId(j);
+				distinctVideos.add(videoIds[j]);
+			}
+			ratedVideos.put(userRatings.getUserId(), videoIds);
+			return true;
+		});
+		if (noUsers < 0)
 			return buildResponse(500, "Unable to get video data from database.");
-		}
+
+		// Look up or compute the center of each video
+		WordEmbeddings w2v = getWordEmbeddings();
+		Map<String, double[]> videoVectors = new VideoCenterPipeline(db, w2v, this::getBagOfWords, mysqlPoolSize,
+				W2V_REQUEST_CONCURRENCY).run(distinctVideos);
+		if (w2v.isModelLoaded() && !w2v.freeModel())
+			log.warning("Could not free model!");
+		if (videoVectors == null)
+			return buildResponse(500, "Could not load word2vec model");
+
+		// Compute user centers from the centers of their rated videos
 		HashMap<String, ArrayList<Double>> w2vVectors = new HashMap<String, ArrayList<Double>>();
+		ArrayList<UserCenter> userCenters = new ArrayList<UserCenter>(ratedVideos.size());
 		int vectorSize = 0;
-		// Set up word2vec implementation for usage
-		Word2VecWrapper w2v = new Word2VecWrapper(mlUrl);
-		for (String userId : ratingData.keySet()) {
-			// Initialize user vector
-			ArrayList<Double> userVector = new ArrayList<Double>();
-			// Add up semantic centers computed for videos rated by user
+		for (Map.Entry<String, String[]> user : ratedVideos.entrySet()) {
+			double[] sum = null;
 			int noVideos = 0;
-			HashMap<String, String> userRatings = ratingData.get(userId);
-			for (String videoId : userRatings.keySet()) {
-				// Check database for video center
-				ArrayList<Double> videoVector = db.getVideoCenter(videoId);
-				if (videoVector == null || videoVector.isEmpty()) {
-					// Else compute
-					HashSet<String> bagOfWords = new HashSet<String>();
-					// Load model
-					if (!(w2v.isModelLoaded() || w2v.loadModel()))
-						return buildResponse(500, "Could not load word2vec model");
-					log.info("Computing center of video " + videoId);
-					YouTubeVideo videoData = db.getVideoById(videoId);
-					if (videoData == null)
-						continue;
-					try {
-						bagOfWords.addAll(parseVideoDetail(videoData.getTitle()));
-						bagOfWords.addAll(parseVideoDetail(videoData.getDescription()));
-						bagOfWords.addAll(parseTags(videoData.getTags()));
-					} catch (Exception e) {
-						log.printStackTrace(e);
-						continue;
-					}
-					// Including comments seems to make result worse
-					// bagOfWords.addAll(parseComments(db.getCommentsByVideoId(videoId)));
-					log.info(bagOfWords.toString());
-					videoVector = w2v.computeWordCenter(bagOfWords);
-					if (videoVector == null)
-						continue;
-					db.addVideoCenter(videoId, videoVector);
-				}
-
+			for (String videoId : user.getValue()) {
+				double[] videoVector = videoVectors.get(videoId);
+				if (videoVector == null)
+					continue;
 				// Use first result to determine size of vectors
-				if (vectorSize == 0)
-					vectorSize = videoVector.size();
-				else if (videoVector.size() != vectorSize) {
-					log.warning("Invalid vector size (" + videoVector.size() + ") for video " + videoId);
+				if (vectorSize == 0) {
+					vectorSize = videoVector.length;
+				} else if (videoVector.length != vectorSize) {
+					log.warning("Invalid vector size (" + videoVector.length + ") for video " + videoId);
 					continue;
 				}
-				for (int i = 0; i < vectorSize; i++) {
-					if (userVector.size() < vectorSize) {
-						userVector.add(videoVector.get(i));
-					} else {
-						try {
-							userVector.set(i, userVector.get(i) + videoVector.get(i));
-						} catch (Exception e) {
-							log.warning("Malformed word vector " + videoVector.toString());
-							noVideos--;
-							break;
-						}
-					}
-				}
+				if (sum == null)
+					sum = new double[vectorSize];
+				for (int i = 0; i < vectorSize; i++)
+					sum[i] += videoVector[i];
 				noVideos++;
 			}
-			// Compute average (center)
-			for (int i = 0; i < userVector.size(); i++)
-				userVector.set(i, userVector.get(i) / noVideos);
-			w2vVectors.put(userId, userVector);
+			ArrayList<Double> userVector = new ArrayList<Double>();
+			for (int i = 0; sum != null && i < sum.length; i++)
+				userVector.add(sum[i] / noVideos);
+			w2vVectors.put(user.getKey(), userVector);
+			UserCenter storedCenter = storedCenters.get(user.getKey());
+			userCenters.add(storedCenter == null ? new UserCenter(user.getKey(), sum, noVideos) :
+					storedCenter.withSum(sum, noVideos));
 		}
-		if (w2v.isModelLoaded() && !w2v.freeModel())
-			log.warning("Could not free model!");
 		// Store vectors
-		if (!storeEnvelope(Context.getCurrent(),
-				getVectorHandle(), w2vVectors))
-			log.warning("Could not store user vector!");
+		VectorModel w2vModel = VectorModel.fromMap(w2vVectors);
+		synchronized (w2vModelLock) {
+			// Build index used to pre-filter large candidate sets
+			long version = System.currentTimeMillis();
+			VectorIndex w2vIndex = VectorIndex.build(w2vModel, version);
+			if (storeShardedModel(Context.getCurrent(), getVectorHandle(), w2vModel, version, w2vIndex)) {
+				replaceUserCenters(userCenters, storedCenters);
+			} else {
+				log.warning("Could not store user vector!");
+			}
+		}
 		return buildResponse(200, new Gson().toJson(w2vVectors, HashMap.class));
 	}
 
+	/**
+	 * Replaces the running sums of the user centers kept in the database by the given ones computed from scratch,
+	 * reporting users whose running sums drifted. Running sums changed since they were read are kept.
+	 *
+	 * @param userCenters Running sums of all users
+	 * @param storedCenters Running sums read from the database before the computation started
+	 */
+	private void replaceUserCenters(Collection<UserCenter> userCenters, Map<String, UserCenter> storedCenters) {
+		if (!storedCenters.isEmpty()) {
+			int noDrifted = 0;
+			for (UserCenter userCenter : userCenters) {
+				UserCenter storedCenter = storedCenters.get(userCenter.getUserId());
+				if (storedCenter != null && !storedCenter.hasSameCenter(userCenter))
+					noDrifted++;
+			}
+			if (noDrifted > 0)
+				log.warning("Running sums of " + noDrifted + " user centers differed from the computed ones");
+		}
+		if (!db.replaceUserCenters(userCenters))
+			log.warning("Could not store running sums of user centers!");
+	}
+
+	/**
+	 * Updates the stored word2vec model with the centers of the users whose ratings changed since their center was
+	 * last published. Missing centers of the videos rated by these users are computed first. Only the shards
+	 * containing changed users are loaded and stored again, under their next revision, together with the index in
+	 * which the changed users are moved to the lists closest to their new centers, followed by the manifest
+	 * referring to them.
+	 *
+	 * @param context Current execution context from which function is called
+	 * @return Number of updated and removed users or null if no sharded word2vec model is stored yet
+	 */
+	private Response publishChangedW2VCenters(Context context) {
+		synchronized (w2vModelLock) {
+			if (getManifest(context, getVectorHandle()) == null)
+				return null;
+			// Running sums are updated when the missing centers are written back
+			HashSet<String> missingVideos = db.getChangedUsersVideosWithoutCenter();
+			if (missingVideos == null)
+				return buildResponse(500, "Unable to get video data from database.");
+			if (!missingVideos.isEmpty()) {
+				WordEmbeddings w2v = getWordEmbeddings();
+				Map<String, double[]> videoVectors = new VideoCenterPipeline(db, w2v, this::getBagOfWords,
+						mysqlPoolSize, W2V_REQUEST_CONCURRENCY).run(missingVideos);
+				if (w2v.isModelLoaded() && !w2v.freeModel())
+					log.warning("Could not free model!");
+				if (videoVectors == null)
+					return buildResponse(500, "Could not load word2vec model");
+			}
+			HashMap<String, UserCenter> changedCenters = db.getUserCenters(true);
+			if (changedCenters == null)
+				return buildResponse(500, "Unable to get user centers from database.");
+
+			ArrayList<UserCenter> published = new ArrayList<UserCenter>(changedCenters.size());
+			int noUpdated = 0;
+			int noRemoved = 0;
+			// Repeated with the model stored by another node if it updated the model in between
+			for (int attempt = 1; !changedCenters.isEmpty(); attempt++) {
+				// The manifest is loaded again, so that revisions stored by other nodes are not overwritten
+				models.invalidate(getManifestHandle(getVectorHandle()));
+				ModelManifest manifest = getManifest(context, getVectorHandle());
+				if (manifest == null)
+					return null;
+				HashMap<Integer, ArrayList<UserCenter>> shardUsers = new HashMap<Integer, ArrayList<UserCenter>>();
+				for (UserCenter userCenter : changedCenters.values())
+					shardUsers.computeIfAbsent(manifest.shardOf(userCenter.getUserId()),
+							shard -> new ArrayList<UserCenter>()).add(userCenter);
+				VectorIndex index = getIndex(context, manifest);
+				HashMap<Integer, Integer> revisions = new HashMap<Integer, Integer>();
+				HashMap<String, double[]> movedUsers = new HashMap<String, double[]>();
+				HashSet<String> removedUsers = new HashSet<String>();
+				published.clear();
+				noUpdated = 0;
+				noRemoved = 0;
+				for (Map.Entry<Integer, ArrayList<UserCenter>> users : shardUsers.entrySet()) {
+					VectorModel shard = getModel(context, getShardHandle(getVectorHandle(), manifest,
+							users.getKey()));
+					if (shard == null)
+						return buildResponse(500, "Could not load word2vec model shard " + users.getKey());
+					for (UserCenter userCenter : users.getValue()) {
+						double[] center = userCenter.getCenter();
+						if (center == null) {
+							shard = shard.withoutVector(userCenter.getUserId());
+							removedUsers.add(userCenter.getUserId());
+							noRemoved++;
+						} else if (center.length == manifest.getDimension()) {
+							shard = shard.withVector(userCenter.getUserId(), center);
+							movedUsers.put(userCenter.getUserId(), center);
+							noUpdated++;
+						} else {
+							log.warning("Invalid vector size (" + center.length + ") for user " +
+									userCenter.getUserId() + ", left for the next full computation");
+							continue;
+						}
+						published.add(userCenter);
+					}
+					int revision = storeShardRevision(context, getVectorHandle(), manifest, users.getKey(), shard);
+					if (revision < 0)
+						return buildResponse(500, "Could not store word2vec model shard " + users.getKey());
+					revisions.put(users.getKey(), revision);
+				}
+				int indexRevision = manifest.getIndexRevision();
+				if (index != null) {
+					indexRevision = storeIndexRevision(context, getVectorHandle(), manifest,
+							index.withAssignments(movedUsers, removedUsers));
+					if (indexRevision < 0)
+						return buildResponse(500, "Could not store word2vec index");
+				}
+				// Users only count as published once the manifest refers to their new shards
+				if (storeManifest(context, getVectorHandle(), manifest.withRevisions(revisions, indexRevision),
+						manifest))
+					break;
+				if (attempt == MAX_MANIFEST_ATTEMPTS)
+					return buildResponse(500, "Could not store word2vec model manifest");
+			}
+			if (!db.markUserCentersPublished(published))
+				log.warning("Could not mark user centers as published!");
+			JsonObject result = new JsonObject();
+			result.addProperty("updatedUsers", noUpdated);
+			result.addProperty("removedUsers", noRemoved);
+			result.addProperty("computedVideos", missingVideos.size());
+			return buildResponse(200, result.toString());
+		}
+	}
+
+	/**
+	 * Compares the nearest neighbours found with the word2vec index to the ones found by an exhaustive scan
+	 *
+	 * @param queriesParam Number of randomly chosen users whose neighbours are searched
+	 * @param kParam Number of neighbours searched per user
+	 * @return Recall and latency of the exhaustive scan and of the index for increasing numbers of searched lists
+	 */
+	@GET
+	@Path("/word2vec/index")
+	@Produces(MediaType.APPLICATION_JSON)
+	@ApiOperation(
+			value = "Benchmark W2V index",
+			notes = "Returns recall and latency of the W2V index and of the matches found with it compared to an " +
+					"exhaustive scan")
+	@ApiResponses(
+			value = { @ApiResponse(
+					code = HttpURLConnection.HTTP_OK,
+					message = "OK") })
+	public Response benchmarkW2VIndex(@DefaultValue("100") @QueryParam("queries") String queriesParam,
+									  @DefaultValue("10") @QueryParam("k") String kParam) {
+		Context context;
+		// Only node/service admins are allowed to call this function
+		try {
+			context = Context.getCurrent();
+			if (!context.getMainAgent().getIdentifier().equals(
+					context.getUserAgentIdentifierByLoginName(serviceAgentName)))
+				return buildResponse(403, "This function can only be called by service agent!");
+		} catch (Exception e) {
+			return buildResponse(401, "Could not get execution context. Are you logged in?");
+		}
+		int queries;
+		int k;
+		try {
+			queries = Integer.parseInt(queriesParam);
+			k = Integer.parseInt(kParam);
+		} catch (Exception e) {
+			return buildResponse(400, "Parameters queries and k have to be numbers.");
+		}
+		ShardedVectors w2vVectors = getW2VVectors(context, null);
+		VectorIndex w2vIndex = getIndex(context);
+		ShardedVectors mfVectors = getMfVectors(context, null);
+		if (w2vVectors == null || w2vIndex == null)
+			return buildResponse(404, "No Word2Vec model or index stored.");
+		try {
+			// Without matrix factorization model only the nearest neighbours are compared
+			VectorModel mfModel = mfVectors == null ? null : mfVectors.toModel();
+			return buildResponse(200, new VectorIndexBenchmark(w2vVectors.toModel(), w2vIndex, mfModel).run(queries,
+					k, System.currentTimeMillis()));
+		} catch (Exception e) {
+			log.printStackTrace(e);
+			return buildResponse(500, "Error benchmarking Word2Vec index!");
+		}
+	}
+
 	/**
 	 * Gets video information of YouTube video associated with given ID from database or via YouTube Data API
 	 *
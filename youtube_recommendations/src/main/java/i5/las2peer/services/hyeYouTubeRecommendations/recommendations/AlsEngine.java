@@ -0,0 +1,321 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import i5.las2peer.logging.L2pLogger;
+import i5.las2peer.services.hyeYouTubeRecommendations.YouTubeRecommendations;
+import i5.las2peer.services.hyeYouTubeRecommendations.util.DataBaseConnection;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * AlsEngine
+ *
+ * This Class performs the Matrix Factorization in process using alternating least squares on explicit ratings. Like
+ * Spark's MlLib, the regularization of each user and item is scaled by its number of ratings, so the features are
+ * comparable to those computed by the Python microservice. Users and items are solved in blocks in parallel.
+ *
+ */
+
+public class AlsEngine implements MfEngine {
+
+    // Number of users or items solved per task
+    private static final int BLOCK_SIZE = 256;
+    // Fixed, so that training the same ratings twice yields the same features
+    private static final long SEED = 42;
+    // Shared by all trainings, so that they cannot start more threads than there are cores
+    private static final ForkJoinPool trainingPool = new ForkJoinPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors()));
+
+    private int rank;
+    private int iterations;
+    private double lambda;
+    private int responseStatus;
+    private String responseMessage;
+    private ItemFeatures itemFeatures;
+    // Receives the phases of the training, may be null
+    private TrainingJob job;
+    private HashMap<String, Double> ratingMappings;
+
+    private static final L2pLogger log = L2pLogger.getInstance(YouTubeRecommendations.class.getName());
+
+    /**
+     * Constructor - Sets the weights of the different ratings
+     *
+     * @param ratingMappings A map of ratings given as strings mapping to doubles
+     */
+    public AlsEngine(HashMap<String, Double> ratingMappings) {
+        this.ratingMappings = ratingMappings;
+
+        // Default values for required Matrix Factorization parameters
+        this.rank = 10;
+        this.iterations = 10;
+        this.lambda = 0.01;
+    }
+
+    @Override
+    public AlsEngine setRank(int rank) {
+        this.rank = rank;
+        return this;
+    }
+
+    @Override
+    public AlsEngine setIterations(int iterations) {
+        this.iterations = iterations;
+        return this;
+    }
+
+    @Override
+    public AlsEngine setLambda(double lambda) {
+        this.lambda = lambda;
+        return this;
+    }
+
+    @Override
+    public int getIterations() { return iterations; }
+
+    @Override
+    public double getLambda() { return lambda; }
+
+    @Override
+    public AlsEngine setTrainingJob(TrainingJob job) {
+        this.job = job;
+        return this;
+    }
+
+    @Override
+    public ItemFeatures getItemFeatures() { return itemFeatures; }
+
+    @Override
+    public int getResponseStatus() { return responseStatus; }
+
+    @Override
+    public String getResponseMessage() { return responseMessage; }
+
+    /**
+     * Helper function to report the start of a phase to the training job, if there is one
+     *
+     * @param phase Name of the phase
+     */
+    private void enterPhase(String phase) {
+        if (job != null)
+            job.enterPhase(phase);
+    }
+
+    /**
+     * Computes the latent user features from the ratings stored in the database
+     *
+     * @param modelName Name of the model, not used since the model is not stored anywhere but in the returned features
+     * @param db Database containing the ratings
+     * @return Latent user features or null on failure, in which case the response status and message describe the
+     * error
+     */
+    @Override
+    public VectorModel trainModel(String modelName, DataBaseConnection db) {
+        responseStatus = 500;
+        responseMessage = "Internal server error while trying to train model.";
+        itemFeatures = null;
+        if (rank < 1 || iterations < 1 || lambda < 0) {
+            responseStatus = 400;
+            responseMessage = "Invalid matrix factorization parameters.";
+            return null;
+        }
+
+        enterPhase("dbRead");
+        SparseRatings ratings = SparseRatings.read(db, ratingMappings);
+        if (ratings == null) {
+            responseMessage = "There was an error retrieving watch data from the database.";
+            return null;
+        }
+        if (ratings.getNoUsers() == 0) {
+            responseStatus = 400;
+            responseMessage = "There is currently no YouTube watch data stored in the database.";
+            return null;
+        }
+        return train(ratings);
+    }
+
+    /**
+     * Computes the latent user and item features of the given rating matrix
+     *
+     * @param ratings Rating matrix containing at least one user
+     * @return Latent user features or null on failure, in which case the response status and message describe the
+     * error
+     */
+    VectorModel train(SparseRatings ratings) {
+        enterPhase("localTraining");
+        double[] userFeatures = new double[ratings.getNoUsers() * rank];
+        double[] itemVectors = initialFeatures(ratings.getNoItems());
+        for (int i = 0; i < iterations; i++) {
+            if (!solveAll(ratings.getNoUsers(), ratings.getUserPtr(), ratings.getUserItems(), ratings.getUserValues(),
+                    itemVectors, userFeatures))
+                return null;
+            if (!solveAll(ratings.getNoItems(), ratings.getItemPtr(), ratings.getItemUsers(), ratings.getItemValues(),
+                    userFeatures, itemVectors))
+                return null;
+        }
+        itemFeatures = new ItemFeatures(ratings.getItemIntIds(), rank, lambda, itemVectors);
+
+        VectorModel featureVectors = new VectorModel(ratings.getUserIds(), rank, userFeatures);
+        responseStatus = 200;
+        responseMessage = "Computed features of " + featureVectors.size() + " users.";
+        return featureVectors;
+    }
+
+    /**
+     * Creates random features of unit length
+     *
+     * @param noRows Number of items
+     * @return Row-major features
+     */
+    private double[] initialFeatures(int noRows) {
+        Random random = new Random(SEED);
+        double[] features = new double[noRows * rank];
+        for (int row = 0; row < noRows; row++) {
+            int offset = row * rank;
+            double norm = 0;
+            for (int k = 0; k < rank; k++) {
+                features[offset + k] = random.nextGaussian();
+                norm += features[offset + k] * features[offset + k];
+            }
+            norm = Math.sqrt(norm);
+            for (int k = 0; k < rank; k++)
+                features[offset + k] /= norm;
+        }
+        return features;
+    }
+
+    /**
+     * Solves the features of all rows (users or items) while the features of the other side are fixed
+     *
+     * @param noRows Number of rows solved
+     * @param ptr Ratings of row r are at positions ptr[r] to ptr[r + 1]
+     * @param idx Rated columns (indices into the fixed features)
+     * @param values Rating values
+     * @param fixed Row-major features of the other side
+     * @param out Row-major features written for the solved rows
+     * @return Whether all blocks were solved successfully
+     */
+    private boolean solveAll(int noRows, int[] ptr, int[] idx, float[] values, double[] fixed, double[] out) {
+        int noBlocks = (noRows + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>(noBlocks);
+        for (int b = 0; b < noBlocks; b++) {
+            int from = b * BLOCK_SIZE;
+            int to = Math.min(noRows, from + BLOCK_SIZE);
+            tasks.add(() -> {
+                double[] a = new double[rank * rank];
+                double[] rhs = new double[rank];
+                for (int row = from; row < to; row++)
+                    solveRow(fixed, rank, idx, values, ptr[row], ptr[row + 1], lambda, a, rhs, out, row * rank);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> result : trainingPool.invokeAll(tasks))
+                result.get();
+            return true;
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            responseMessage = "Internal server error while computing features.";
+            return false;
+        }
+    }
+
+    /**
+     * Solves the regularized least squares problem of one row, i.e. finds x minimizing
+     * sum((r_j - x * y_j)^2) + lambda * n * |x|^2 over the n ratings r_j of the row and the fixed features y_j
+     *
+     * @param fixed Row-major features of the other side
+     * @param rank Number of features
+     * @param idx Rated columns (indices into the fixed features)
+     * @param values Rating values
+     * @param from First position of the row's ratings
+     * @param to Position after the row's last rating
+     * @param lambda Regularization term
+     * @param a Scratch space of size rank * rank
+     * @param rhs Scratch space of size rank
+     * @param out Array the features are written to
+     * @param outOffset Position of the row's features in out
+     */
+    static void solveRow(double[] fixed, int rank, int[] idx, float[] values, int from, int to, double lambda,
+                         double[] a, double[] rhs, double[] out, int outOffset) {
+        if (from == to) {
+            for (int k = 0; k < rank; k++)
+                out[outOffset + k] = 0;
+            return;
+        }
+        for (int k = 0; k < rank * rank; k++)
+            a[k] = 0;
+        for (int k = 0; k < rank; k++)
+            rhs[k] = 0;
+        // Accumulate the lower triangle of Y^T * Y and Y^T * r
+        for (int j = from; j < to; j++) {
+            int offset = idx[j] * rank;
+            double value = values[j];
+            for (int k = 0; k < rank; k++) {
+                double y = fixed[offset + k];
+                rhs[k] += value * y;
+                int rowOffset = k * rank;
+                for (int l = 0; l <= k; l++)
+                    a[rowOffset + l] += y * fixed[offset + l];
+            }
+        }
+        double reg = lambda * (to - from);
+        for (int k = 0; k < rank; k++)
+            a[k * rank + k] += reg;
+        if (!choleskySolve(a, rhs, rank)) {
+            // Only happens without regularization, fall back to no information about the row
+            for (int k = 0; k < rank; k++)
+                out[outOffset + k] = 0;
+            return;
+        }
+        System.arraycopy(rhs, 0, out, outOffset, rank);
+    }
+
+    /**
+     * Solves a * x = b in place for a symmetric positive definite matrix a, of which only the lower triangle is used
+     *
+     * @param a Row-major matrix of size n * n, overwritten with its Cholesky factor
+     * @param b Right hand side, overwritten with the solution
+     * @param n Matrix dimension
+     * @return Whether the matrix was positive definite
+     */
+    static boolean choleskySolve(double[] a, double[] b, int n) {
+        for (int j = 0; j < n; j++) {
+            int rowJ = j * n;
+            double d = a[rowJ + j];
+            for (int k = 0; k < j; k++)
+                d -= a[rowJ + k] * a[rowJ + k];
+            if (d <= 0)
+                return false;
+            d = Math.sqrt(d);
+            a[rowJ + j] = d;
+            for (int i = j + 1; i < n; i++) {
+                int rowI = i * n;
+                double s = a[rowI + j];
+                for (int k = 0; k < j; k++)
+                    s -= a[rowI + k] * a[rowJ + k];
+                a[rowI + j] = s / d;
+            }
+        }
+        // Forward substitution L * y = b
+        for (int i = 0; i < n; i++) {
+            int rowI = i * n;
+            double s = b[i];
+            for (int k = 0; k < i; k++)
+                s -= a[rowI + k] * b[k];
+            b[i] = s / a[rowI + i];
+        }
+        // Backward substitution L^T * x = y
+        for (int i = n - 1; i >= 0; i--) {
+            double s = b[i];
+            for (int k = i + 1; k < n; k++)
+                s -= a[k * n + i] * b[k];
+            b[i] = s / a[i * n + i];
+        }
+        return true;
+    }
+}
@@ -0,0 +1,157 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * EmbeddingConverter
+ *
+ * This Class converts word2vec models from the original binary or text format into the file format read by
+ * MappedEmbeddings. The vectors are streamed to a temporary file, so only the vocabulary is held in memory.
+ *
+ * Usage: java EmbeddingConverter [--text] <word2vec model> <output file>
+ *
+ */
+
+public class EmbeddingConverter {
+
+    public static void main(String[] args) throws IOException {
+        boolean text = args.length == 3 && args[0].equals("--text");
+        if (args.length != (text ? 3 : 2)) {
+            System.err.println("Usage: EmbeddingConverter [--text] <word2vec model> <output file>");
+            System.exit(1);
+        }
+        int offset = text ? 1 : 0;
+        int noWords = convert(new File(args[offset]), new File(args[offset + 1]), text);
+        System.out.println("Converted " + noWords + " word vectors");
+    }
+
+    /**
+     * Converts the given word2vec model. Words occurring more than once keep their first vector.
+     *
+     * @param source Model in the word2vec format, starting with a line holding the number of words and the dimension
+     * @param target File to write to
+     * @param text Whether the vectors are stored as text instead of float32 values
+     * @return Number of converted words
+     * @throws IOException If the model could not be read or the file could not be written
+     */
+    public static int convert(File source, File target, boolean text) throws IOException {
+        File matrix = File.createTempFile("embeddings", ".matrix", target.getAbsoluteFile().getParentFile());
+        try {
+            ArrayList<byte[]> words = new ArrayList<byte[]>();
+            int dimension;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(source)));
+                 OutputStream out = new BufferedOutputStream(new FileOutputStream(matrix))) {
+                String[] header = readToken(in, true).trim().split(" ");
+                int declaredWords = Integer.parseInt(header[0]);
+                dimension = Integer.parseInt(header[1]);
+                HashSet<String> seen = new HashSet<String>();
+                ByteBuffer row = ByteBuffer.allocate(dimension * 4).order(ByteOrder.LITTLE_ENDIAN);
+                byte[] raw = new byte[dimension * 4];
+                for (int i = 0; i < declaredWords; i++) {
+                    String word = readToken(in, false);
+                    if (word.isEmpty())
+                        break;
+                    row.clear();
+                    if (text) {
+                        String[] values = readToken(in, true).trim().split(" ");
+                        if (values.length != dimension)
+                            throw new IOException("Vector of " + word + " has " + values.length + " values");
+                        for (String value : values)
+                            row.putFloat(Float.parseFloat(value));
+                    } else {
+                        in.readFully(raw);
+                        // word2vec writes floats in the byte order of the machine, which is little-endian in practice
+                        row.put(raw);
+                    }
+                    if (!seen.add(word))
+                        continue;
+                    words.add(word.getBytes(StandardCharsets.UTF_8));
+                    out.write(row.array());
+                }
+            }
+            write(target, words, dimension, matrix);
+            return words.size();
+        } finally {
+            matrix.delete();
+        }
+    }
+
+    /**
+     * Reads the next word, separated by a space or line break, or the rest of the current line
+     */
+    private static String readToken(InputStream in, boolean line) throws IOException {
+        ByteArrayOutputStream token = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n' || !line && b == ' ') {
+                if (token.size() > 0 || line)
+                    break;
+                continue;
+            }
+            token.write(b);
+        }
+        if (b == -1 && line && token.size() == 0)
+            throw new EOFException();
+        return token.toString(StandardCharsets.UTF_8);
+    }
+
+    private static void write(File target, ArrayList<byte[]> words, int dimension, File matrix) throws IOException {
+        int noWords = words.size();
+        int tableSize = Integer.highestOneBit(Math.max(1, noWords * 2 - 1)) << 1;
+        int[] table = new int[tableSize];
+        Arrays.fill(table, -1);
+        int[] wordEnds = new int[noWords + 1];
+        for (int i = 0; i < noWords; i++) {
+            byte[] word = words.get(i);
+            wordEnds[i + 1] = wordEnds[i] + word.length;
+            int slot = MappedEmbeddings.hash(ByteBuffer.wrap(word), 0, word.length) & (tableSize - 1);
+            while (table[slot] >= 0)
+                slot = (slot + 1) & (tableSize - 1);
+            table[slot] = i;
+        }
+        long indexSize = MappedEmbeddings.HEADER_SIZE + tableSize * 4L + (noWords + 1) * 4L + wordEnds[noWords];
+        // The matrix starts at a multiple of 4096, so that each row is aligned and pages do not straddle the index
+        long matrixOffset = (indexSize + 4095) / 4096 * 4096;
+        if (matrixOffset > Integer.MAX_VALUE)
+            throw new IOException("Vocabulary too large");
+
+        ByteBuffer index = ByteBuffer.allocate((int) matrixOffset).order(ByteOrder.LITTLE_ENDIAN);
+        index.put(MappedEmbeddings.MAGIC).put(MappedEmbeddings.VERSION).put(new byte[3]);
+        index.putInt(noWords).putInt(dimension).putInt(tableSize).putInt(0).putLong(matrixOffset);
+        for (int slot : table)
+            index.putInt(slot);
+        for (int end : wordEnds)
+            index.putInt(end);
+        for (byte[] word : words)
+            index.put(word);
+        index.clear();
+
+        try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             FileChannel in = FileChannel.open(matrix.toPath(), StandardOpenOption.READ)) {
+            while (index.hasRemaining())
+                out.write(index);
+            long size = in.size();
+            for (long position = 0; position < size; )
+                position += in.transferTo(position, size - position, out);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import java.util.Arrays;
+
+/**
+ * IntIndexMap
+ *
+ * This Class maps integer keys (such as the integer IDs assigned by the database) to dense indices using open
+ * addressing, so that its size depends on the number of keys only and not on their largest value.
+ *
+ */
+
+final class IntIndexMap {
+
+    private static final int EMPTY = -1;
+
+    private int[] keys;
+    // Index stored for the key in the same slot, EMPTY for unused slots
+    private int[] values;
+    private int size;
+
+    /**
+     * Constructor - Creates an empty map
+     *
+     * @param expectedSize Number of keys the map holds without being resized
+     */
+    IntIndexMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        Arrays.fill(values, EMPTY);
+        this.size = 0;
+    }
+
+    private static int slot(int key, int mask) {
+        // Spread consecutive IDs over the table
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * @param key Integer key
+     * @return Index stored for the key or -1 if the key is not contained
+     */
+    int get(int key) {
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); values[slot] != EMPTY; slot = (slot + 1) & mask)
+            if (keys[slot] == key)
+                return values[slot];
+        return EMPTY;
+    }
+
+    /**
+     * Stores the given index for the given key, replacing a previously stored one
+     *
+     * @param key Integer key
+     * @param index Non-negative index
+     */
+    void put(int key, int index) {
+        if ((size + 1) * 2 > keys.length)
+            resize(keys.length * 2);
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (values[slot] != EMPTY && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        if (values[slot] == EMPTY)
+            size++;
+        keys[slot] = key;
+        values[slot] = index;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, EMPTY);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] == EMPTY)
+                continue;
+            int slot = slot(oldKeys[i], mask);
+            while (values[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    /**
+     * @return Number of stored keys
+     */
+    int size() { return size; }
+}
@@ -0,0 +1,116 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import i5.las2peer.logging.L2pLogger;
+import i5.las2peer.services.hyeYouTubeRecommendations.YouTubeRecommendations;
+import i5.las2peer.services.hyeYouTubeRecommendations.util.UserRatings;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * ItemFeatures
+ *
+ * This Class holds the latent video features of a matrix factorization model, ordered by the integer IDs the database
+ * assigned to the videos. With the item features fixed, the features of a single user can be computed from their
+ * ratings (fold-in), so that new users can be matched without training the whole model again.
+ *
+ */
+
+public class ItemFeatures {
+
+    private final int rank;
+    private final double lambda;
+    // Sorted ascending, row i of features belongs to the video with integer ID itemIntIds[i]
+    private final int[] itemIntIds;
+    private final double[] features;
+
+    private static final L2pLogger log = L2pLogger.getInstance(YouTubeRecommendations.class.getName());
+
+    /**
+     * Constructor - Wraps the given row-major features
+     *
+     * @param itemIntIds Integer video IDs assigned by the database, one per row
+     * @param rank Number of features per video
+     * @param lambda Regularization term the features were trained with
+     * @param features Row-major feature data of length itemIntIds.length * rank
+     */
+    public ItemFeatures(int[] itemIntIds, int rank, double lambda, double[] features) {
+        if (features.length != itemIntIds.length * rank)
+            throw new IllegalArgumentException("Expected " + itemIntIds.length * rank + " values, got " +
+                    features.length);
+        this.rank = rank;
+        this.lambda = lambda;
+        // Sort rows by video ID, so that they can be found with binary search
+        Integer[] order = new Integer[itemIntIds.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> Integer.compare(itemIntIds[a], itemIntIds[b]));
+        this.itemIntIds = new int[itemIntIds.length];
+        this.features = new double[features.length];
+        for (int i = 0; i < order.length; i++) {
+            this.itemIntIds[i] = itemIntIds[order[i]];
+            System.arraycopy(features, order[i] * rank, this.features, i * rank, rank);
+        }
+    }
+
+    /**
+     * Returns the row of the given video
+     *
+     * @param videoIntId Integer video ID assigned by the database
+     * @return Row index of the video's features or -1 if the video was not part of the training data
+     */
+    public int indexOf(int videoIntId) {
+        int index = Arrays.binarySearch(itemIntIds, videoIntId);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * Computes the features of a user from their ratings, solving the same regularized least squares problem as the
+     * training does for each user. Videos unknown to the model are left out.
+     *
+     * @param ratings The user's ratings
+     * @param ratingMappings Weights of the different ratings, ratings without weight are left out
+     * @return User features or null if none of the rated videos is known to the model
+     */
+    public double[] foldIn(UserRatings ratings, Map<String, Double> ratingMappings) {
+        int[] rows = new int[ratings.size()];
+        float[] values = new float[ratings.size()];
+        int n = 0;
+        for (int i = 0; i < ratings.size(); i++) {
+            int row = indexOf(ratings.getVideoIntId(i));
+            Double value = ratingMappings.get(ratings.getRating(i));
+            if (row < 0 || value == null)
+                continue;
+            rows[n] = row;
+            values[n++] = value.floatValue();
+        }
+        if (n == 0) {
+            log.info("No rated video of user " + ratings.getUserId() + " is known to the model");
+            return null;
+        }
+        double[] userFeatures = new double[rank];
+        AlsEngine.solveRow(features, rank, rows, values, 0, n, lambda, new double[rank * rank], new double[rank],
+                userFeatures, 0);
+        return userFeatures;
+    }
+
+    public int getRank() { return rank; }
+
+    public double getLambda() { return lambda; }
+
+    public int size() { return itemIntIds.length; }
+
+    /**
+     * Returns the video IDs, which must not be modified
+     *
+     * @return Integer video IDs in ascending order, one per row
+     */
+    public int[] getItemIntIds() { return itemIntIds; }
+
+    /**
+     * Returns the backing array, which must not be modified
+     *
+     * @return Row-major feature data
+     */
+    public double[] getFeatures() { return features; }
+}
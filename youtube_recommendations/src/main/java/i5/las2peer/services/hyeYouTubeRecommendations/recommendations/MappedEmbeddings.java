@@ -0,0 +1,217 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import i5.las2peer.logging.L2pLogger;
+import i5.las2peer.services.hyeYouTubeRecommendations.YouTubeRecommendations;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * MappedEmbeddings
+ *
+ * This Class provides a word2vec model stored in a memory-mapped file, so that video centers are computed inside the
+ * service instead of by the remote Python implementation. Mapping the file is near-instant and its pages are shared
+ * through the page cache of the operating system, so the model stays mapped for the lifetime of the node.
+ *
+ * Layout (little-endian): magic (4 bytes), version (1), reserved (3), number of words (4), dimension (4), number of
+ * hash table slots (4), reserved (4), offset of the matrix (8), hash table holding the row of each word (open
+ * addressing, -1 marks empty slots), end offsets of the words (starting with 0), the concatenated UTF-8 encoded
+ * words, and the float32 vectors of all words as one contiguous row-major matrix. Files are created from word2vec
+ * models with EmbeddingConverter.
+ *
+ */
+
+public class MappedEmbeddings implements WordEmbeddings {
+
+    static final byte[] MAGIC = { 'H', 'y', 'W', 'E' };
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    // A single mapping is limited to 2 GB, so the matrix is mapped in chunks of whole rows
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+    private final File file;
+    private volatile boolean modelLoaded;
+    private int noWords;
+    private int dimension;
+    private IntBuffer table;
+    private IntBuffer wordEnds;
+    private ByteBuffer words;
+    private FloatBuffer[] chunks;
+    private int rowsPerChunk;
+
+    private static final L2pLogger log = L2pLogger.getInstance(YouTubeRecommendations.class.getName());
+
+    /**
+     * Constructor - Sets the file holding the model, which is mapped on first use
+     *
+     * @param file Model file created with EmbeddingConverter
+     */
+    public MappedEmbeddings(File file) {
+        this.file = file;
+        this.modelLoaded = false;
+    }
+
+    /**
+     * Hash function used for the word index, which is part of the file format and must therefore not change
+     *
+     * @param bytes Buffer holding the UTF-8 encoded word
+     * @param offset Position of the word
+     * @param length Length of the word in bytes
+     * @return 32 bit FNV-1a hash of the word
+     */
+    static int hash(ByteBuffer bytes, int offset, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = offset; i < offset + length; i++) {
+            hash ^= bytes.get(i) & 0xff;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean isModelLoaded() { return modelLoaded; }
+
+    /**
+     * Maps the model file, which only has to be done once
+     *
+     * @return Whether the file could be mapped
+     */
+    @Override
+    public synchronized boolean loadModel() {
+        if (modelLoaded)
+            return true;
+        // Mappings stay valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            byte[] magic = new byte[MAGIC.length];
+            header.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || header.get() != VERSION)
+                throw new IOException("Unknown word embedding format");
+            header.position(8);
+            noWords = header.getInt();
+            dimension = header.getInt();
+            int tableSize = header.getInt();
+            header.getInt();
+            long matrixOffset = header.getLong();
+            if (matrixOffset > Integer.MAX_VALUE || channel.size() < matrixOffset + (long) noWords * dimension * 4)
+                throw new IOException("Truncated or corrupted word embeddings");
+
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, matrixOffset)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            index.position(HEADER_SIZE).limit(HEADER_SIZE + tableSize * 4);
+            table = index.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            index.limit(index.capacity()).position(HEADER_SIZE + tableSize * 4);
+            wordEnds = index.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            index.position(HEADER_SIZE + tableSize * 4 + (noWords + 1) * 4);
+            words = index.slice();
+
+            rowsPerChunk = (int) Math.max(1, MAX_CHUNK_SIZE / (dimension * 4L));
+            chunks = new FloatBuffer[(noWords + rowsPerChunk - 1) / rowsPerChunk];
+            for (int chunk = 0; chunk < chunks.length; chunk++) {
+                long rows = Math.min(rowsPerChunk, noWords - (long) chunk * rowsPerChunk);
+                chunks[chunk] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        matrixOffset + (long) chunk * rowsPerChunk * dimension * 4, rows * dimension * 4)
+                        .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            }
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            return false;
+        }
+        log.info("Mapped " + noWords + " word vectors of dimension " + dimension + " from " + file);
+        modelLoaded = true;
+        return true;
+    }
+
+    /**
+     * Keeps the model mapped, since mapping it again would only reuse the same pages
+     *
+     * @return Always true
+     */
+    @Override
+    public boolean freeModel() { return true; }
+
+    /**
+     * Returns the row of the given word
+     *
+     * @param word The word
+     * @return Row index of the word's vector or -1 if the word is not part of the model
+     */
+    public int indexOf(String word) {
+        ByteBuffer bytes = ByteBuffer.wrap(word.getBytes(StandardCharsets.UTF_8));
+        int length = bytes.capacity();
+        int mask = table.capacity() - 1;
+        for (int slot = hash(bytes, 0, length) & mask; ; slot = (slot + 1) & mask) {
+            int row = table.get(slot);
+            if (row < 0)
+                return -1;
+            int start = wordEnds.get(row);
+            if (wordEnds.get(row + 1) - start == length && matches(bytes, start, length))
+                return row;
+        }
+    }
+
+    private boolean matches(ByteBuffer bytes, int start, int length) {
+        for (int i = 0; i < length; i++)
+            if (words.get(start + i) != bytes.get(i))
+                return false;
+        return true;
+    }
+
+    /**
+     * Computes the average of the vectors of the given words, words not part of the model are left out
+     *
+     * @param wordList Set of words associated to a YouTube video
+     * @return Center of the words or null if the model is not loaded or none of the words is part of it
+     */
+    @Override
+    public ArrayList<Double> computeWordCenter(HashSet<String> wordList) {
+        if (!modelLoaded)
+            return null;
+        double[] sum = new double[dimension];
+        int noFound = 0;
+        for (String word : wordList) {
+            int row = word == null ? -1 : indexOf(word);
+            if (row < 0)
+                continue;
+            FloatBuffer chunk = chunks[row / rowsPerChunk];
+            int offset = (row % rowsPerChunk) * dimension;
+            for (int i = 0; i < dimension; i++)
+                sum[i] += chunk.get(offset + i);
+            noFound++;
+        }
+        if (noFound == 0)
+            return null;
+        ArrayList<Double> center = new ArrayList<Double>(dimension);
+        for (int i = 0; i < dimension; i++)
+            center.add(sum[i] / noFound);
+        return center;
+    }
+
+    @Override
+    public HashMap<String, ArrayList<Double>> computeWordCenters(Map<String, HashSet<String>> wordLists) {
+        HashMap<String, ArrayList<Double>> centers = new HashMap<String, ArrayList<Double>>();
+        for (Map.Entry<String, HashSet<String>> entry : wordLists.entrySet()) {
+            ArrayList<Double> center = computeWordCenter(entry.getValue());
+            if (center != null)
+                centers.put(entry.getKey(), center);
+        }
+        return centers;
+    }
+
+    public int getDimension() { return dimension; }
+
+    public int size() { return noWords; }
+}
@@ -0,0 +1,274 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import i5.las2peer.logging.L2pLogger;
+import i5.las2peer.services.hyeYouTubeRecommendations.YouTubeRecommendations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+
+/**
+ * MatchScorer
+ *
+ * This Class computes how well users match a requesting user based on the matrix factorization (collaborative
+ * filtering) and word2vec models. Users match well, if their collaborative filtering distance to the requesting user
+ * is high and their word2vec distance is low, weighted by the requesting user's alpha value.
+ *
+ * Large candidate sets are pre-filtered with the word2vec index, which only keeps candidates close to the requesting
+ * user in the word2vec model. This is only done if the word2vec distance weighs at least as much as the collaborative
+ * filtering distance (alpha up to 0.5), since otherwise the best matches may well be far away in the word2vec model.
+ * Both distances are then normalized by their maxima among the pre-filtered candidates, so the match values (and, in
+ * rare cases, the order of matches) differ from the ones of an exhaustive scan. The recall of the pre-filtered
+ * matches is reported by the index benchmark.
+ *
+ */
+
+public class MatchScorer {
+
+    // Candidate sets larger than this are scored in parallel, smaller ones on the calling thread
+    private static final int PARALLEL_THRESHOLD = 1024;
+    // Number of candidates taken from the index before exact scoring, above PARALLEL_THRESHOLD so that the candidates
+    // left after pre-filtering are still scored in parallel
+    private static final int MIN_INDEXED_CANDIDATES = 2 * PARALLEL_THRESHOLD;
+    // Candidate sets larger than this are pre-filtered with the word2vec index, only pays off if the index reduces the
+    // candidates considerably
+    private static final int INDEX_THRESHOLD = 4 * MIN_INDEXED_CANDIDATES;
+    // Candidate sets are only pre-filtered with the word2vec index if alpha does not exceed this value
+    static final double MAX_INDEXED_ALPHA = 0.5;
+    // Shared by all requests, so that concurrent matches cannot start more threads than there are cores
+    private static final ForkJoinPool scoringPool = new ForkJoinPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors()));
+
+    private final ShardedVectors mfVectors;
+    private final ShardedVectors w2vVectors;
+    private final VectorIndex w2vIndex;
+
+    private static final L2pLogger log = L2pLogger.getInstance(YouTubeRecommendations.class.getName());
+
+    /**
+     * Constructor - Sets the models used for scoring
+     *
+     * @param mfModel Matrix factorization user features
+     * @param w2vModel Word2vec user vectors
+     */
+    public MatchScorer(VectorModel mfModel, VectorModel w2vModel) {
+        this(mfModel, w2vModel, null);
+    }
+
+    /**
+     * Constructor - Sets the models used for scoring and an index used to pre-filter large candidate sets
+     *
+     * @param mfModel Matrix factorization user features
+     * @param w2vModel Word2vec user vectors
+     * @param w2vIndex Index built over the word2vec user vectors, may be null
+     */
+    public MatchScorer(VectorModel mfModel, VectorModel w2vModel, VectorIndex w2vIndex) {
+        this(ShardedVectors.of(mfModel), ShardedVectors.of(w2vModel), w2vIndex);
+    }
+
+    /**
+     * Constructor - Sets the shards of the models used for scoring and an index used to pre-filter large candidate
+     * sets. Candidates are scored directly against the vectors of the shards.
+     *
+     * @param mfVectors Loaded shards of the matrix factorization user features
+     * @param w2vVectors Loaded shards of the word2vec user vectors
+     * @param w2vIndex Index built over the word2vec user vectors, may be null
+     */
+    public MatchScorer(ShardedVectors mfVectors, ShardedVectors w2vVectors, VectorIndex w2vIndex) {
+        this.mfVectors = mfVectors;
+        this.w2vVectors = w2vVectors;
+        this.w2vIndex = w2vIndex != null && w2vIndex.getDimension() == w2vVectors.getDimension() ? w2vIndex : null;
+    }
+
+    /**
+     * Checks whether both models contain a vector for the given user
+     *
+     * @param userId las2peer User Agent ID
+     * @return True if the user can be matched, false otherwise
+     */
+    public boolean hasUser(String userId) {
+        return mfVectors.getShard(userId) != null && w2vVectors.getShard(userId) != null;
+    }
+
+    /**
+     * Finds the best matches out of the given candidates for the requesting user
+     *
+     * @param userId las2peer User Agent ID of requesting user
+     * @param userIds las2peer User Agent IDs of users who should be considered as possible matches
+     * @param alpha Balance between collaborative filtering (serendipity) and word2vec (topical similarity)
+     * @param k Maximum number of matches returned
+     * @return Up to k matches ordered from best to worst or null if the requesting user is not part of the models
+     */
+    public ArrayList<UserMatch> findTopMatches(String userId, Collection<String> userIds, double alpha, int k) {
+        return findTopMatches(userId, userIds, alpha, k,
+                w2vIndex != null && alpha <= MAX_INDEXED_ALPHA && userIds.size() > INDEX_THRESHOLD);
+    }
+
+    /**
+     * Finds the best matches out of the given candidates for the requesting user, pre-filtering the candidates with
+     * the word2vec index if requested
+     *
+     * @param userId las2peer User Agent ID of requesting user
+     * @param userIds las2peer User Agent IDs of users who should be considered as possible matches
+     * @param alpha Balance between collaborative filtering (serendipity) and word2vec (topical similarity)
+     * @param k Maximum number of matches returned
+     * @param useIndex Whether only candidates close to the requesting user in the word2vec model are scored
+     * @return Up to k matches ordered from best to worst or null if the requesting user is not part of the models
+     */
+    ArrayList<UserMatch> findTopMatches(String userId, Collection<String> userIds, double alpha, int k,
+                                        boolean useIndex) {
+        VectorModel userMfShard = mfVectors.getShard(userId);
+        VectorModel userW2vShard = w2vVectors.getShard(userId);
+        if (userMfShard == null || userW2vShard == null)
+            return null;
+        double[] userMf = userMfShard.getVectors();
+        int userMfOffset = userMfShard.offset(userMfShard.indexOf(userId));
+        double[] userW2v = userW2vShard.getVectors();
+        int userW2vOffset = userW2vShard.offset(userW2vShard.indexOf(userId));
+
+        // Only consider semantically close candidates out of large sets (word2vec distance is to be minimized)
+        if (useIndex && w2vIndex != null) {
+            Set<String> candidateSet = userIds instanceof Set ? (Set<String>) userIds : new HashSet<String>(userIds);
+            ArrayList<String> closeIds = w2vIndex.search(userW2v, userW2vOffset, candidateSet,
+                    Math.max(MIN_INDEXED_CANDIDATES, k));
+            // Users published after the index was built are not part of it and always considered
+            for (String candidateId : candidateSet)
+                if (!w2vIndex.contains(candidateId))
+                    closeIds.add(candidateId);
+            userIds = closeIds;
+        }
+
+        // Resolve candidates to their shards and rows in both models
+        String[] candidateIds = new String[userIds.size()];
+        double[][] mfRows = new double[userIds.size()][];
+        int[] mfOffsets = new int[userIds.size()];
+        double[][] w2vRows = new double[userIds.size()][];
+        int[] w2vOffsets = new int[userIds.size()];
+        int noCandidates = 0;
+        for (String matchId : userIds) {
+            if (userId.equals(matchId))
+                continue;
+            VectorModel mfShard = mfVectors.getShard(matchId);
+            if (mfShard == null) {
+                log.info("No MF-model stored for user " + matchId);
+                continue;
+            }
+            VectorModel w2vShard = w2vVectors.getShard(matchId);
+            if (w2vShard == null) {
+                log.info("No W2V-model stored for user " + matchId);
+                continue;
+            }
+            candidateIds[noCandidates] = matchId;
+            mfRows[noCandidates] = mfShard.getVectors();
+            mfOffsets[noCandidates] = mfShard.offset(mfShard.indexOf(matchId));
+            w2vRows[noCandidates] = w2vShard.getVectors();
+            w2vOffsets[noCandidates] = w2vShard.offset(w2vShard.indexOf(matchId));
+            noCandidates++;
+        }
+        ArrayList<UserMatch> matches = new ArrayList<UserMatch>();
+        if (noCandidates == 0)
+            return matches;
+
+        // Compute collaborative filtering and word2vec distances
+        double[] cfVals = new double[noCandidates];
+        double[] w2vVals = new double[noCandidates];
+        int noPartitions = noCandidates > PARALLEL_THRESHOLD ?
+                Math.min(scoringPool.getParallelism(), noCandidates / (PARALLEL_THRESHOLD / 2)) : 1;
+        int[] bounds = new int[noPartitions + 1];
+        for (int p = 0; p <= noPartitions; p++)
+            bounds[p] = (int) ((long) noCandidates * p / noPartitions);
+        double[] maxVals = new double[2 * noPartitions];
+        if (!runPartitions(noPartitions, p -> {
+            VectorDistance.scoreCandidates(userMf, userMfOffset, mfRows, mfOffsets, mfVectors.getDimension(),
+                    userW2v, userW2vOffset, w2vRows, w2vOffsets, w2vVectors.getDimension(),
+                    bounds[p], bounds[p + 1], cfVals, w2vVals, maxVals, 2 * p);
+        }))
+            return null;
+        double maxCfVal = 0;
+        double maxW2vVal = 0;
+        for (int p = 0; p < noPartitions; p++) {
+            maxCfVal = Math.max(maxCfVal, maxVals[2 * p]);
+            maxW2vVal = Math.max(maxW2vVal, maxVals[2 * p + 1]);
+        }
+        // Since we later divide by these values, they should not be zero
+        if (maxCfVal == 0)
+            maxCfVal = 1;
+        if (maxW2vVal == 0)
+            maxW2vVal = 1;
+
+        // The normalization needs the maxima of all candidates, so the heaps are filled from the computed distances
+        double normCf = maxCfVal;
+        double normW2v = maxW2vVal;
+        int heapSize = Math.min(k, noCandidates);
+        TopMatches[] partitionMatches = new TopMatches[noPartitions];
+        if (!runPartitions(noPartitions, p -> {
+            TopMatches topMatches = new TopMatches(heapSize);
+            for (int i = bounds[p]; i < bounds[p + 1]; i++) {
+                // Note, that cfVal and w2vVal are normalized, due to (likely) differences in dimensionality
+                double matchVal = matchValue(alpha, cfVals[i], normCf, w2vVals[i], normW2v);
+                if (log.isLoggable(Level.FINE))
+                    log.fine("Computed match value " + String.valueOf(matchVal) + " for user pair " + userId + ", " +
+                            candidateIds[i]);
+                topMatches.offer(i, matchVal);
+            }
+            partitionMatches[p] = topMatches;
+        }))
+            return null;
+        TopMatches topMatches = partitionMatches[0];
+        for (int p = 1; p < noPartitions; p++)
+            topMatches.merge(partitionMatches[p]);
+        for (int i : topMatches.drain())
+            matches.add(new UserMatch(candidateIds[i], cfVals[i], w2vVals[i],
+                    matchValue(alpha, cfVals[i], normCf, w2vVals[i], normW2v)));
+        return matches;
+    }
+
+    /**
+     * Function applied to one partition of the candidates
+     */
+    private interface PartitionTask {
+        void run(int partition);
+    }
+
+    /**
+     * Runs the given task for all partitions, using the scoring pool if there is more than one partition
+     *
+     * @param noPartitions Number of partitions
+     * @param task Task run once per partition
+     * @return Whether all partitions were processed successfully
+     */
+    private boolean runPartitions(int noPartitions, PartitionTask task) {
+        if (noPartitions == 1) {
+            task.run(0);
+            return true;
+        }
+        ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>(noPartitions);
+        for (int p = 0; p < noPartitions; p++) {
+            int partition = p;
+            tasks.add(() -> {
+                task.run(partition);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> result : scoringPool.invokeAll(tasks))
+                result.get();
+            return true;
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            return false;
+        }
+    }
+
+    /**
+     * Computes the match value (cfVal should be as high as possible, w2vVal as low as possible)
+     */
+    private static double matchValue(double alpha, double cfVal, double maxCfVal, double w2vVal, double maxW2vVal) {
+        return (alpha * (cfVal / maxCfVal)) - ((1 - alpha) * (w2vVal / maxW2vVal));
+    }
+}
@@ -0,0 +1,83 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import i5.las2peer.services.hyeYouTubeRecommendations.util.DataBaseConnection;
+
+/**
+ * MfEngine
+ *
+ * This Interface is implemented by the available Matrix Factorization implementations, which compute latent user
+ * features from the ratings stored in the database
+ *
+ */
+
+public interface MfEngine {
+
+    /**
+     * Sets the Matrix Factorization rank
+     *
+     * @param rank Number of features computed through Matrix Factorization
+     * @return Updated instance
+     */
+    MfEngine setRank(int rank);
+
+    /**
+     * Sets the Matrix Factorization number of iterations
+     *
+     * @param iterations Number of ALS (alternating least squares) iterations performed
+     * @return Updated instance
+     */
+    MfEngine setIterations(int iterations);
+
+    /**
+     * Sets the Matrix Factorization lambda value
+     *
+     * @param lambda New lambda regularization term
+     * @return Updated instance
+     */
+    MfEngine setLambda(double lambda);
+
+    /**
+     * @return Number of ALS iterations performed
+     */
+    int getIterations();
+
+    /**
+     * @return Lambda regularization term
+     */
+    double getLambda();
+
+    /**
+     * Sets the job to which the phases of the training are reported
+     *
+     * @param job Background job running the training
+     * @return Updated instance
+     */
+    MfEngine setTrainingJob(TrainingJob job);
+
+    /**
+     * Computes the latent user features from the ratings stored in the database
+     *
+     * @param modelName Name of the model
+     * @param db Database containing the ratings
+     * @return Latent user features or null on failure, in which case the response status and message describe the
+     * error
+     */
+    VectorModel trainModel(String modelName, DataBaseConnection db);
+
+    /**
+     * Returns the video features computed by the last training, which are used to fold in users afterwards
+     *
+     * @return Item features or null if the last training failed or the engine does not provide them
+     */
+    ItemFeatures getItemFeatures();
+
+    /**
+     * @return HTTP status describing the result of the last training
+     */
+    int getResponseStatus();
+
+    /**
+     * @return Message describing the result of the last training
+     */
+    String getResponseMessage();
+}
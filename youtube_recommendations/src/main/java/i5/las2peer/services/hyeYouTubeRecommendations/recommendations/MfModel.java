@@ -0,0 +1,217 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import i5.las2peer.services.hyeYouTubeRecommendations.util.UserRatings;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * MfModel
+ *
+ * This Class holds a complete matrix factorization model, i.e. the user and the item features together with the
+ * parameters they were trained with, and converts it to and from the compact binary form stored in the las2peer
+ * network storage.
+ *
+ */
+
+public class MfModel {
+
+    // Marks the binary form
+    private static final byte[] MAGIC = { 'H', 'y', 'M', 'F' };
+    private static final byte FORMAT_VERSION = 2;
+    // Version written before the user IDs and values were stored in columnar blocks
+    private static final byte LEGACY_FORMAT_VERSION = 1;
+    // Identifiers of item features are stored as 4 byte integers
+    private static final int ID_SIZE = 4;
+
+    private final VectorModel userFeatures;
+    private final ItemFeatures itemFeatures;
+    private final double lambda;
+    private final int iterations;
+    private final long trainedAt;
+    private final int idMappingVersion;
+
+    /**
+     * Constructor - Combines the results of a training
+     *
+     * @param userFeatures Latent user features
+     * @param itemFeatures Latent item features of the same rank, may be null if they are not available
+     * @param lambda Regularization term used for training
+     * @param iterations Number of ALS iterations used for training
+     * @param trainedAt Time of the training in milliseconds since epoch
+     * @param idMappingVersion Version of the database integer IDs by which the items are identified
+     */
+    public MfModel(VectorModel userFeatures, ItemFeatures itemFeatures, double lambda, int iterations,
+                   long trainedAt, int idMappingVersion) {
+        if (itemFeatures != null && itemFeatures.getRank() != userFeatures.getDimension())
+            throw new IllegalArgumentException("User features of rank " + userFeatures.getDimension() +
+                    " do not match item features of rank " + itemFeatures.getRank());
+        this.userFeatures = userFeatures;
+        this.itemFeatures = itemFeatures;
+        this.lambda = lambda;
+        this.iterations = iterations;
+        this.trainedAt = trainedAt;
+        this.idMappingVersion = idMappingVersion;
+    }
+
+    /**
+     * Creates a model from user features of which nothing else is known (as stored before item features were kept)
+     *
+     * @param userFeatures Latent user features
+     * @return Model without item features or training parameters
+     */
+    public static MfModel fromUserFeatures(VectorModel userFeatures) {
+        return new MfModel(userFeatures, null, 0, 0, 0, 0);
+    }
+
+    /**
+     * Computes the features of a user from their ratings and the item features of this model
+     *
+     * @param ratings The user's ratings
+     * @param ratingMappings Weights of the different ratings, ratings without weight are left out
+     * @return User features or null if the model has no item features or none of the rated videos is known to it
+     */
+    public double[] foldIn(UserRatings ratings, Map<String, Double> ratingMappings) {
+        return itemFeatures == null ? null : itemFeatures.foldIn(ratings, ratingMappings);
+    }
+
+    /**
+     * Creates a copy of the model without user features, holding only the item features and training parameters, for
+     * models whose user features are stored separately in shards
+     *
+     * @return The copy without users
+     */
+    public MfModel withoutUserFeatures() {
+        VectorModel noUsers = new VectorModel(new String[0], userFeatures.getDimension(), new double[0]);
+        return new MfModel(noUsers, itemFeatures, lambda, iterations, trainedAt, idMappingVersion);
+    }
+
+    /**
+     * Writes the model in the binary form described in ModelCodec. The header holds the training parameters and the
+     * number of users and items, the body the user ID table, the user features, the item IDs and the item features.
+     *
+     * @param singlePrecision Whether features are stored as float32 instead of float64
+     * @param compress Whether the body is gzip-compressed
+     * @return Binary form of the model
+     * @throws IOException If the body could not be compressed
+     */
+    public byte[] toBytes(boolean singlePrecision, boolean compress) throws IOException {
+        byte dtype = singlePrecision ? ModelCodec.FLOAT32 : ModelCodec.FLOAT64;
+        byte[][] userIds = ModelCodec.toUtf8(userFeatures);
+        int noItems = itemFeatures == null ? -1 : itemFeatures.size();
+        ByteBuffer header = ModelCodec.header(MAGIC, FORMAT_VERSION, dtype, compress, 36);
+        header.putInt(idMappingVersion);
+        header.putLong(trainedAt);
+        header.putInt(userFeatures.getDimension());
+        header.putDouble(lambda);
+        header.putInt(iterations);
+        header.putInt(userFeatures.size());
+        header.putInt(noItems);
+        int itemSize = itemFeatures == null ? 0 : noItems * ID_SIZE + itemFeatures.getFeatures().length * dtype;
+        ByteBuffer body = ModelCodec.buffer(ModelCodec.stringTableSize(userIds) +
+                userFeatures.getVectors().length * dtype + itemSize);
+        ModelCodec.putStrings(body, userIds);
+        ModelCodec.putValues(body, userFeatures.getVectors(), dtype);
+        if (itemFeatures != null) {
+            body.asIntBuffer().put(itemFeatures.getItemIntIds());
+            body.position(body.position() + noItems * ID_SIZE);
+            ModelCodec.putValues(body, itemFeatures.getFeatures(), dtype);
+        }
+        return ModelCodec.join(header, body, compress);
+    }
+
+    /**
+     * Reads a model from its binary form
+     *
+     * @param bytes Binary form as written by toBytes()
+     * @return The model
+     * @throws IOException If the data is not a model of a supported format version or is corrupted
+     */
+    public static MfModel fromBytes(byte[] bytes) throws IOException {
+        if (bytes.length > MAGIC.length && bytes[MAGIC.length] == LEGACY_FORMAT_VERSION)
+            return fromLegacyBytes(bytes);
+        try {
+            ByteBuffer header = ModelCodec.buffer(bytes);
+            ModelCodec.readPrefix(header, MAGIC, FORMAT_VERSION);
+            byte dtype = ModelCodec.readDtype(header);
+            byte flags = header.get();
+            int idMappingVersion = header.getInt();
+            long trainedAt = header.getLong();
+            int rank = header.getInt();
+            double lambda = header.getDouble();
+            int iterations = header.getInt();
+            int noUsers = header.getInt();
+            int noItems = header.getInt();
+            if (rank < 0 || noUsers < 0)
+                throw new IOException("Invalid model size");
+            ByteBuffer body = ModelCodec.body(header, flags);
+            String[] userIds = ModelCodec.getStrings(body, noUsers);
+            double[] userVectors = ModelCodec.getValues(body, noUsers * rank, dtype);
+            ItemFeatures itemFeatures = null;
+            if (noItems >= 0) {
+                int[] itemIntIds = new int[noItems];
+                body.asIntBuffer().get(itemIntIds);
+                body.position(body.position() + noItems * ID_SIZE);
+                itemFeatures = new ItemFeatures(itemIntIds, rank, lambda,
+                        ModelCodec.getValues(body, noItems * rank, dtype));
+            }
+            return new MfModel(new VectorModel(userIds, rank, userVectors), itemFeatures, lambda, iterations,
+                    trainedAt, idMappingVersion);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("Truncated or corrupted model", e);
+        }
+    }
+
+    /**
+     * Reads a model written with the first format version, which stored all values big-endian one by one
+     *
+     * @param bytes Binary form
+     * @return The model
+     * @throws IOException If the data is corrupted
+     */
+    private static MfModel fromLegacyBytes(byte[] bytes) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            in.skipBytes(MAGIC.length + 1);
+            int idMappingVersion = in.readInt();
+            long trainedAt = in.readLong();
+            int rank = in.readInt();
+            double lambda = in.readDouble();
+            int iterations = in.readInt();
+            String[] userIds = new String[in.readInt()];
+            for (int row = 0; row < userIds.length; row++)
+                userIds[row] = in.readUTF();
+            double[] userVectors = new double[userIds.length * rank];
+            for (int i = 0; i < userVectors.length; i++)
+                userVectors[i] = in.readDouble();
+            ItemFeatures itemFeatures = null;
+            int noItems = in.readInt();
+            if (noItems >= 0) {
+                int[] itemIntIds = new int[noItems];
+                for (int row = 0; row < noItems; row++)
+                    itemIntIds[row] = in.readInt();
+                double[] itemVectors = new double[noItems * rank];
+                for (int i = 0; i < itemVectors.length; i++)
+                    itemVectors[i] = in.readDouble();
+                itemFeatures = new ItemFeatures(itemIntIds, rank, lambda, itemVectors);
+            }
+            return new MfModel(new VectorModel(userIds, rank, userVectors), itemFeatures, lambda, iterations,
+                    trainedAt, idMappingVersion);
+        }
+    }
+
+    public VectorModel getUserFeatures() { return userFeatures; }
+
+    public ItemFeatures getItemFeatures() { return itemFeatures; }
+
+    public double getLambda() { return lambda; }
+
+    public int getIterations() { return iterations; }
+
+    public long getTrainedAt() { return trainedAt; }
+
+    public int getIdMappingVersion() { return idMappingVersion; }
+}
@@ -1,11 +1,12 @@
 package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import i5.las2peer.logging.L2pLogger;
 import i5.las2peer.services.hyeYouTubeRecommendations.YouTubeRecommendations;
+import i5.las2peer.services.hyeYouTubeRecommendations.util.DataBaseConnection;
 import rice.p2p.util.tuples.Tuple;
 
 import java.io.*;
@@ -13,8 +14,11 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * MlLibWrapper
@@ -24,16 +28,25 @@ import java.util.LinkedHashMap;
  *
  */
 
-public class MlLibWrapper {
+public class MlLibWrapper implements MfEngine {
+
+    // Size of the chunks in which the request payload is sent while it is generated
+    private static final int CHUNK_SIZE = 1 << 16;
 
     private URL mlLibUrl;
     private int rank;
     private int iterations;
     private double lambda;
-    // This is kind of a bad way to map String IDs to int IDs, but it's so stupid that I have to that I don't care...
-    // TODO probably this mapping should be resolved by adding a column to the MySQL data table (probably faster)
-    private HashMap<String, Integer> userIds;
-    private HashMap<String, Integer> itemIds;
+    private boolean compression;
+    private int responseStatus;
+    private String responseMessage;
+    // Item features returned by the last training, if the remote implementation sent them
+    private ItemFeatures itemFeatures;
+    // Receives the phases of the training request, may be null
+    private TrainingJob job;
+    // Integer IDs assigned to users by the database, collected while the payload is built (in both directions)
+    private HashMap<String, Integer> userIntIds;
+    private String[] userIds;
     private HashMap<String, Double> ratingMappings;
 
     private static final L2pLogger log = L2pLogger.getInstance(YouTubeRecommendations.class.getName());
@@ -46,14 +59,15 @@ public class MlLibWrapper {
      */
     public MlLibWrapper(URL mlLibUrl, HashMap<String, Double> ratingMappings) {
         this.mlLibUrl = mlLibUrl;
-        this.userIds = new LinkedHashMap<String, Integer>();
-        this.itemIds = new HashMap<String, Integer>();
+        this.userIntIds = new HashMap<String, Integer>();
+        this.userIds = new String[16];
         this.ratingMappings = ratingMappings;
 
         // Default values for required Matrix Factorization parameters
         this.rank = 10;
         this.iterations = 10;
         this.lambda = 0.01;
+        this.compression = false;
     }
 
     /**
@@ -100,55 +114,64 @@ public class MlLibWrapper {
         return this;
     }
 
+    public int getIterations() { return iterations; }
+
+    public double getLambda() { return lambda; }
+
     /**
-     * Sets the user ID map
+     * Sets whether the request payload is sent gzip-compressed. If the remote implementation rejects the compressed
+     * payload, the request is sent once more without compression.
      *
-     * @param userIds New user ID map
+     * @param compression Whether to compress the payload (the remote implementation has to support it)
      * @return Updated class instance
      */
-    public MlLibWrapper setUserIds(HashMap<String, Integer> userIds) {
-        this.userIds = userIds;
+    public MlLibWrapper setCompression(boolean compression) {
+        this.compression = compression;
         return this;
     }
 
     /**
-     * Sets the item ID map
+     * Sets the job to which the phases of the training request are reported
      *
-     * @param itemIds New item ID map
+     * @param job Background job running the training request
      * @return Updated class instance
      */
-    public MlLibWrapper setItemIds(HashMap<String, Integer> itemIds) {
-        this.itemIds = itemIds;
+    public MlLibWrapper setTrainingJob(TrainingJob job) {
+        this.job = job;
         return this;
     }
 
     /**
-     * Returns the value currently associated with the given user ID or creates it if it doesn't exist, yet
+     * Helper function to report the start of a phase to the training job, if there is one
      *
-     * @param userId las2peer User Agent ID
-     * @return Mapped int value
+     * @param phase Name of the phase
      */
-    private int userIdToInt(String userId) {
-        if (userIds.containsKey(userId))
-            return userIds.get(userId);
-        int mappedId = userIds.size();
-        userIds.put(userId, mappedId);
-        return mappedId;
+    private void enterPhase(String phase) {
+        if (job != null)
+            job.enterPhase(phase);
     }
 
     /**
-     * Returns the value currently associated with the given item ID or creates it if it doesn't exist, yet
+     * Returns the item features sent by the remote implementation with the last training response
      *
-     * @param itemId YouTube video ID
-     * @return Mapped int value
+     * @return Item features or null if the response did not contain (valid) item features
      */
-    private int itemIdToInt(String itemId) {
-        if (itemIds.containsKey(itemId))
-            return itemIds.get(itemId);
-        int mappedId = itemIds.size();
-        itemIds.put(itemId, mappedId);
-        return mappedId;
-    }
+    public ItemFeatures getItemFeatures() { return itemFeatures; }
+
+    /**
+     * Returns the HTTP status of the last training request (or the status which should be reported if the request
+     * could not be sent)
+     *
+     * @return HTTP status code
+     */
+    public int getResponseStatus() { return responseStatus; }
+
+    /**
+     * Returns the message describing the result of the last training request
+     *
+     * @return Response message
+     */
+    public String getResponseMessage() { return responseMessage; }
 
     /**
      * Returns the value currently associated with the given rating
@@ -165,20 +188,45 @@ public class MlLibWrapper {
     }
 
     /**
-     * Returns the user ID with which the given int is currently associated (lookup by value)
+     * Remembers the integer ID the database assigned to the given user
      *
-     * @param userAsInt Numeric string which should be stored as a value in the user ID map
-     * @return The user ID which maps to the given integer
+     * @param userIntId Integer ID sent in place of the user ID
+     * @param userId las2peer User Agent ID
+     */
+    private void addUserId(int userIntId, String userId) {
+        if (userIntId >= userIds.length)
+            userIds = Arrays.copyOf(userIds, Math.max(userIds.length * 2, userIntId + 1));
+        userIds[userIntId] = userId;
+        userIntIds.put(userId, userIntId);
+    }
+
+    /**
+     * Returns the user ID to which the database assigned the given int
+     *
+     * @param userAsInt Numeric string sent in place of the user ID
+     * @return The user ID which maps to the given integer or null if the integer is unknown
      */
     private String intToUserId(String userAsInt) {
         try {
-            return userIds.keySet().toArray()[Integer.parseInt(userAsInt)].toString();
+            int userIntId = Integer.parseInt(userAsInt);
+            return userIntId >= 0 && userIntId < userIds.length ? userIds[userIntId] : null;
         } catch (Exception e) {
             log.printStackTrace(e);
             return null;
         }
     }
 
+    /**
+     * Returns the int which the database assigned to the given user
+     *
+     * @param userId las2peer User Agent ID
+     * @return Integer ID sent in place of the user ID or -1 if the user was not part of the payload
+     */
+    public int userIdToInt(String userId) {
+        Integer userIntId = userIntIds.get(userId);
+        return userIntId == null ? -1 : userIntId;
+    }
+
     /**
      * Updates the current weights associated with the different rating relations
      *
@@ -204,109 +252,252 @@ public class MlLibWrapper {
     }
 
     /**
-     * Takes a json string and turns it into a map of Strings and ArrayLists of Doubles
+     * Takes a json string and decodes the user features it contains into a vector model
      *
      * @param jsonString Response string sent by remote MlLib implementation
-     * @return Vectors of latent user features as a map {user_u: [feature_i, ...], ...}
+     * @return Vectors of latent user features, or null if the response could not be parsed
      */
-    public HashMap<String, ArrayList<Double>> parseFeatureVectors(String jsonString) {
-        JsonObject userFeaturesJson = new JsonObject();
-        Gson gson = new Gson();
-        try {
-            JsonObject responseJson = gson.fromJson(jsonString, JsonObject.class);
-            userFeaturesJson = responseJson.get("userFeatures").getAsJsonObject();
+    public VectorModel parseFeatureVectors(String jsonString) {
+        try (JsonReader reader = new JsonReader(new StringReader(jsonString))) {
+            return readFeatureVectors(reader);
         } catch (Exception e) {
             log.printStackTrace(e);
             return null;
         }
-        HashMap<String, ArrayList<Double>> featureVectors = new HashMap<String, ArrayList<Double>>();
-        for (String user : userFeaturesJson.keySet()) {
-            try {
-                JsonArray userFeatures = userFeaturesJson.get(user).getAsJsonArray();
-                ArrayList<Double> features = gson.fromJson(userFeatures, ArrayList.class);
-                featureVectors.put(intToUserId(user), features);
-            } catch (Exception e) {
-                log.printStackTrace(e);
+    }
+
+    /**
+     * Reads the response sent by the remote MlLib implementation, which contains the user features and optionally
+     * the item features (the latter are made available through getItemFeatures())
+     *
+     * @param reader Reader positioned at the start of the response
+     * @return Vectors of latent user features, or null if the response does not contain any
+     * @throws IOException If the response is malformed
+     */
+    private VectorModel readFeatureVectors(JsonReader reader) throws IOException {
+        itemFeatures = null;
+        FeatureRows userRows = null;
+        FeatureRows itemRows = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("userFeatures"))
+                userRows = readFeatureRows(reader, this::intToUserId);
+            else if (name.equals("itemFeatures"))
+                itemRows = readFeatureRows(reader, item -> item.matches("\\d+") ? item : null);
+            else
+                reader.skipValue();
+        }
+        reader.endObject();
+        if (userRows == null) {
+            log.warning("Response does not contain user features");
+            return null;
+        }
+        if (itemRows != null && itemRows.keys.size() > 0 && itemRows.dimension == userRows.dimension) {
+            int[] itemIntIds = new int[itemRows.keys.size()];
+            for (int i = 0; i < itemIntIds.length; i++)
+                itemIntIds[i] = Integer.parseInt(itemRows.keys.get(i));
+            itemFeatures = new ItemFeatures(itemIntIds, itemRows.dimension, lambda, itemRows.vectors);
+        } else if (itemRows != null) {
+            log.warning("Leaving out item features which do not match user features");
+        }
+        return new VectorModel(userRows.keys.toArray(new String[userRows.keys.size()]), userRows.dimension,
+                userRows.vectors);
+    }
+
+    /**
+     * Features read from the response, stored as contiguous rows
+     */
+    private static class FeatureRows {
+        ArrayList<String> keys = new ArrayList<String>();
+        int dimension;
+        double[] vectors;
+    }
+
+    /**
+     * Reads features {key_k: [feature_i, ...], ...} directly into contiguous rows
+     *
+     * @param reader Reader positioned at the features object
+     * @param keyMapper Maps the keys sent by the remote implementation to the keys used by the model, null if unknown
+     * @return Features, rows of deviating size or with unknown keys are left out
+     * @throws IOException If the features are malformed
+     */
+    private FeatureRows readFeatureRows(JsonReader reader, Function<String, String> keyMapper) throws IOException {
+        FeatureRows rows = new FeatureRows();
+        double[] vectors = new double[0];
+        // Determined by the first row
+        int dimension = -1;
+        double[] row = new double[16];
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = keyMapper.apply(reader.nextName());
+            if (key == null || reader.peek() != JsonToken.BEGIN_ARRAY) {
+                log.warning("Skipping features of unknown user or item");
+                reader.skipValue();
+                continue;
+            }
+            int size = 0;
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (size == row.length)
+                    row = Arrays.copyOf(row, row.length * 2);
+                row[size++] = reader.nextDouble();
+            }
+            reader.endArray();
+            if (dimension == -1)
+                dimension = size;
+            if (size != dimension || size == 0) {
+                log.info("Leaving out vector of " + key + " due to invalid size");
                 continue;
             }
+            int offset = rows.keys.size() * dimension;
+            if (offset + dimension > vectors.length)
+                vectors = Arrays.copyOf(vectors, Math.max(vectors.length * 2, offset + dimension));
+            System.arraycopy(row, 0, vectors, offset, dimension);
+            rows.keys.add(key);
         }
-        return featureVectors;
+        reader.endObject();
+        rows.dimension = Math.max(dimension, 0);
+        rows.vectors = Arrays.copyOf(vectors, rows.keys.size() * rows.dimension);
+        return rows;
     }
 
     /**
-     * Takes the map of user rating tuples and turns them into a json object
+     * Streams the ratings stored in the database to the given writer as json object, using the integer IDs assigned
+     * to users and videos by the database
      *
-     * @param ratings Map of user IDs associated with ArrayLists of Tuples representing ratings
-     * @return Ratings as json {user_u: {item_i: rating_ui, ...}, ...}
+     * @param writer Writer to which the ratings {user_u: {item_i: rating_ui, ...}, ...} are written
+     * @param db Database containing the ratings
+     * @throws IOException If the ratings could not be read or written
      */
-    private JsonObject parseRatingData(HashMap<String, HashMap<String, String>> ratings) {
-        JsonObject result = new JsonObject();
-        if (ratings == null || ratings.isEmpty())
-            return null;
-        for (String user : ratings.keySet()) {
-            HashMap<String, String> userRatings = ratings.get(user);
-            JsonObject jsonRatings = new JsonObject();
-            if (userRatings == null || userRatings.isEmpty())
-                continue;
-            for (String videoId : userRatings.keySet())
-                jsonRatings.addProperty(String.valueOf(itemIdToInt(videoId)),
-                        String.valueOf(ratingToDouble(userRatings.get(videoId))));
-            result.add(String.valueOf(userIdToInt(user)), jsonRatings);
+    private void writeRatingData(JsonWriter writer, DataBaseConnection db) throws IOException {
+        IOException[] writeError = { null };
+        // Reading and writing are interleaved, so the time spent writing is measured to tell them apart
+        long[] writeNanos = { 0 };
+        long streamStart = System.nanoTime();
+        writer.beginObject();
+        int noUsers = db.streamRatings(userRatings -> {
+            long writeStart = System.nanoTime();
+            try {
+                writer.name(String.valueOf(userRatings.getUserIntId()));
+                writer.beginObject();
+                for (int i = 0; i < userRatings.size(); i++)
+                    writer.name(String.valueOf(userRatings.getVideoIntId(i)))
+                            .value(String.valueOf(ratingToDouble(userRatings.getRating(i))));
+                writer.endObject();
+                addUserId(userRatings.getUserIntId(), userRatings.getUserId());
+                return true;
+            } catch (IOException e) {
+                writeError[0] = e;
+                return false;
+            } finally {
+                writeNanos[0] += System.nanoTime() - writeStart;
+            }
+        });
+        if (job != null) {
+            job.addPhaseTime("dbRead", (System.nanoTime() - streamStart - writeNanos[0]) / 1000000);
+            job.addPhaseTime("payloadBuild", writeNanos[0] / 1000000);
         }
-        return result;
+        if (writeError[0] != null)
+            throw writeError[0];
+        if (noUsers < 0)
+            throw new IOException("There was an error retrieving watch data from the database.");
+        writer.endObject();
     }
 
     /**
-     * Sends the provided ratings as payload to the MlLib implementation and returns the computed user features
+     * Sends the ratings stored in the database as payload to the MlLib implementation and returns the computed user
+     * features. The payload is written to the request while the ratings are read and the response is parsed while
+     * it is received, so neither is kept in memory as a whole.
      *
      * @param modelName Name under which model is stored at remote location
-     * @param ratings Map of user IDs associated with ArrayLists of Tuples representing ratings
-     * @return Latent user features computed based on provided ratings indicating user similarities
+     * @param db Database containing the ratings
+     * @return Latent user features computed based on provided ratings indicating user similarities or null on failure,
+     * in which case the response status and message describe the error
      */
-    public JsonObject trainModel(String modelName, HashMap<String, HashMap<String, String>> ratings) {
+    public VectorModel trainModel(String modelName, DataBaseConnection db) {
+        itemFeatures = null;
+        responseStatus = 500;
+        responseMessage = "Internal server error while trying to train model.";
+        // Check before connecting, since the remote implementation cannot handle an empty payload
+        Boolean hasRatings = db.hasRatings();
+        if (hasRatings == null) {
+            responseMessage = "There was an error retrieving watch data from the database.";
+            return null;
+        }
+        if (!hasRatings) {
+            responseStatus = 400;
+            responseMessage = "There is currently no YouTube watch data stored in the database.";
+            return null;
+        }
+        HttpURLConnection con = null;
         try {
             // TODO handle case where modelName is empty
             // Send request to generate new model
-            HttpURLConnection con = (HttpURLConnection) new URL(mlLibUrl.toString() + "matrix-factorization/" +
+            con = (HttpURLConnection) new URL(mlLibUrl.toString() + "matrix-factorization/" +
                     modelName).openConnection();
             con.setRequestMethod("POST");
             // con.setRequestProperty("Content-Type", "application/json");
+            con.setRequestProperty("Accept-Encoding", "gzip");
+            if (compression)
+                con.setRequestProperty("Content-Encoding", "gzip");
+            // Otherwise the whole payload is buffered before it is sent
+            con.setChunkedStreamingMode(CHUNK_SIZE);
             con.setDoOutput(true);
             OutputStream os = con.getOutputStream();
-            OutputStreamWriter osw = new OutputStreamWriter(os, StandardCharsets.UTF_8);
-
-            // Generate payload
-            JsonObject requestBody = new JsonObject();
-            requestBody.add("ratings", parseRatingData(ratings));
-            requestBody.addProperty("rank", rank);
-            requestBody.addProperty("iterations", iterations);
-            requestBody.addProperty("lambda", lambda);
-
-            // Write payload to request body
-            osw.write(requestBody.toString());
-            osw.flush();
-            osw.close();
-            os.close();
-            con.connect();
-
-            // Read response
-            JsonObject response = new JsonObject();
-            response.addProperty("status", con.getResponseCode());
-            if (con.getResponseCode() == 200) {
-                // Read response body
-                BufferedReader br = new BufferedReader(new InputStreamReader((con.getInputStream())));
-                StringBuilder sb = new StringBuilder();
-                String payload;
-                while ((payload = br.readLine()) != null) {
-                    sb.append(payload);
+            if (compression)
+                os = new GZIPOutputStream(os, CHUNK_SIZE);
+
+            // Write payload to request body while it is generated
+            enterPhase("upload");
+            try (JsonWriter writer = new JsonWriter(new BufferedWriter(
+                    new OutputStreamWriter(os, StandardCharsets.UTF_8), CHUNK_SIZE))) {
+                writer.beginObject();
+                writer.name("ratings");
+                writeRatingData(writer, db);
+                writer.name("rank").value(rank);
+                writer.name("iterations").value(iterations);
+                writer.name("lambda").value(lambda);
+                writer.endObject();
+            }
+
+            // Read response, which is only sent once the remote training finished
+            enterPhase("remoteTraining");
+            responseStatus = con.getResponseCode();
+            if (compression && (responseStatus == HttpURLConnection.HTTP_BAD_REQUEST ||
+                    responseStatus == HttpURLConnection.HTTP_UNSUPPORTED_TYPE)) {
+                // Older MlLib instances do not accept compressed payloads
+                log.warning("MlLib rejected compressed payload (" + responseStatus + "), retrying uncompressed");
+                con.disconnect();
+                compression = false;
+                return trainModel(modelName, db);
+            }
+            if (responseStatus != 200) {
+                responseMessage = con.getResponseMessage();
+                return null;
+            }
+            enterPhase("parse");
+            InputStream is = con.getInputStream();
+            if ("gzip".equalsIgnoreCase(con.getContentEncoding()))
+                is = new GZIPInputStream(is);
+            try (JsonReader reader = new JsonReader(new BufferedReader(
+                    new InputStreamReader(is, StandardCharsets.UTF_8), CHUNK_SIZE))) {
+                VectorModel featureVectors = readFeatureVectors(reader);
+                if (featureVectors == null) {
+                    responseStatus = 500;
+                    responseMessage = "Remote machine learning implementation did not return user features.";
+                    return null;
                 }
-                response.addProperty("msg", sb.toString());
-            } else {
-                response.addProperty("msg", con.getResponseMessage());
+                responseMessage = "Computed features of " + featureVectors.size() + " users.";
+                return featureVectors;
             }
-            return response;
         } catch (Exception e) {
             log.printStackTrace(e);
+            responseStatus = 500;
+            if (e.getMessage() != null)
+                responseMessage = e.getMessage();
+            if (con != null)
+                con.disconnect();
             return null;
         }
     }
@@ -0,0 +1,278 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ModelCodec
+ *
+ * This Class converts user vectors to and from the binary form in which models are stored in the las2peer network
+ * storage. A model consists of a fixed header (format, value type, dimension, number of users) followed by a body
+ * holding a table of the user IDs and all vector values as one contiguous little-endian block, so that it can be
+ * loaded with bulk reads into primitive arrays. The body may be gzip-compressed.
+ *
+ * Layout: magic (4 bytes), version (1), value type (1, bytes per value), flags (1), format specific header fields,
+ * body. All numbers are little-endian.
+ *
+ */
+
+public class ModelCodec {
+
+    public static final byte FLOAT32 = 4;
+    public static final byte FLOAT64 = 8;
+    // Flag marking a gzip-compressed body
+    static final byte COMPRESSED = 1;
+
+    private static final byte[] MAGIC = { 'H', 'y', 'V', 'M' };
+    private static final byte VERSION = 1;
+    // Magic, version, value type, flags
+    static final int PREFIX_SIZE = 7;
+
+    /**
+     * Encodes the given user vectors
+     *
+     * @param model User vectors
+     * @param singlePrecision Whether values are stored as float32 instead of float64
+     * @param compress Whether the body is gzip-compressed
+     * @return Binary form of the model
+     * @throws IOException If the body could not be compressed
+     */
+    public static byte[] encode(VectorModel model, boolean singlePrecision, boolean compress) throws IOException {
+        byte dtype = singlePrecision ? FLOAT32 : FLOAT64;
+        byte[][] userIds = toUtf8(model);
+        ByteBuffer header = header(MAGIC, VERSION, dtype, compress, 8);
+        header.putInt(model.getDimension());
+        header.putInt(model.size());
+        ByteBuffer body = buffer(stringTableSize(userIds) + model.getVectors().length * dtype);
+        putStrings(body, userIds);
+        putValues(body, model.getVectors(), dtype);
+        return join(header, body, compress);
+    }
+
+    /**
+     * Decodes user vectors from their binary form
+     *
+     * @param bytes Binary form as written by encode()
+     * @return User vectors
+     * @throws IOException If the data is not a model of a supported format version or is truncated
+     */
+    public static VectorModel decode(byte[] bytes) throws IOException {
+        try {
+            ByteBuffer header = buffer(bytes);
+            readPrefix(header, MAGIC, VERSION);
+            byte dtype = readDtype(header);
+            byte flags = header.get();
+            int dimension = header.getInt();
+            int count = header.getInt();
+            if (dimension < 0 || count < 0)
+                throw new IOException("Invalid model size");
+            ByteBuffer body = body(header, flags);
+            String[] userIds = getStrings(body, count);
+            double[] vectors = getValues(body, count * dimension, dtype);
+            return new VectorModel(userIds, dimension, vectors);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IOException("Truncated or corrupted model", e);
+        }
+    }
+
+    /**
+     * Creates a header buffer starting with the common prefix
+     *
+     * @param magic Marker of the format
+     * @param version Format version
+     * @param dtype Value type (bytes per value)
+     * @param compress Whether the body is compressed
+     * @param fieldsSize Size of the format specific header fields following the prefix
+     * @return Buffer positioned after the prefix
+     */
+    static ByteBuffer header(byte[] magic, byte version, byte dtype, boolean compress, int fieldsSize) {
+        ByteBuffer header = buffer(PREFIX_SIZE + fieldsSize);
+        header.put(magic).put(version).put(dtype).put(compress ? COMPRESSED : 0);
+        return header;
+    }
+
+    /**
+     * Reads and checks magic and version of the common prefix
+     *
+     * @param header Buffer positioned at the start of the data
+     * @param magic Expected marker of the format
+     * @param version Expected format version
+     * @throws IOException If magic or version do not match
+     */
+    static void readPrefix(ByteBuffer header, byte[] magic, byte version) throws IOException {
+        byte[] actualMagic = new byte[magic.length];
+        header.get(actualMagic);
+        if (!Arrays.equals(actualMagic, magic))
+            throw new IOException("Unknown model format");
+        byte actualVersion = header.get();
+        if (actualVersion != version)
+            throw new IOException("Unsupported model format version " + actualVersion);
+    }
+
+    /**
+     * Reads and checks the value type of the common prefix
+     *
+     * @param header Buffer positioned at the value type
+     * @return Value type (bytes per value)
+     * @throws IOException If the value type is unknown
+     */
+    static byte readDtype(ByteBuffer header) throws IOException {
+        byte dtype = header.get();
+        if (dtype != FLOAT32 && dtype != FLOAT64)
+            throw new IOException("Unsupported value type " + dtype);
+        return dtype;
+    }
+
+    /**
+     * Returns the body following the header, decompressing it if necessary
+     *
+     * @param data Buffer positioned after the header
+     * @param flags Flags read from the prefix
+     * @return Little-endian buffer holding the body
+     * @throws IOException If the body could not be decompressed
+     */
+    static ByteBuffer body(ByteBuffer data, byte flags) throws IOException {
+        if ((flags & COMPRESSED) == 0)
+            return data.slice().order(ByteOrder.LITTLE_ENDIAN);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data.array(),
+                data.arrayOffset() + data.position(), data.remaining()))) {
+            return buffer(in.readAllBytes());
+        }
+    }
+
+    /**
+     * Concatenates header and body, compressing the body if requested
+     *
+     * @param header Filled header buffer
+     * @param body Filled body buffer
+     * @param compress Whether the body is compressed
+     * @return The binary data
+     * @throws IOException If the body could not be compressed
+     */
+    static byte[] join(ByteBuffer header, ByteBuffer body, boolean compress) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(header.position() + body.position());
+        out.write(header.array(), 0, header.position());
+        if (compress) {
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out, 1 << 16)) {
+                gzip.write(body.array(), 0, body.position());
+            }
+        } else {
+            out.write(body.array(), 0, body.position());
+        }
+        return out.toByteArray();
+    }
+
+    static ByteBuffer buffer(int size) { return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN); }
+
+    static ByteBuffer buffer(byte[] bytes) { return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN); }
+
+    /**
+     * @param model User vectors
+     * @return UTF-8 encoded user IDs of the model
+     */
+    static byte[][] toUtf8(VectorModel model) {
+        byte[][] strings = new byte[model.size()][];
+        for (int row = 0; row < strings.length; row++)
+            strings[row] = model.getUserId(row).getBytes(StandardCharsets.UTF_8);
+        return strings;
+    }
+
+    /**
+     * @param strings UTF-8 encoded strings
+     * @return Number of bytes taken by the string table
+     */
+    static int stringTableSize(byte[][] strings) {
+        int size = (strings.length + 1) * 4;
+        for (byte[] string : strings)
+            size += string.length;
+        return size;
+    }
+
+    /**
+     * Writes a string table: end offsets of all strings (starting with 0), followed by the concatenated strings
+     *
+     * @param buffer Buffer the table is written to
+     * @param strings UTF-8 encoded strings
+     */
+    static void putStrings(ByteBuffer buffer, byte[][] strings) {
+        int offset = 0;
+        buffer.putInt(offset);
+        for (byte[] string : strings) {
+            offset += string.length;
+            buffer.putInt(offset);
+        }
+        for (byte[] string : strings)
+            buffer.put(string);
+    }
+
+    /**
+     * Reads a string table
+     *
+     * @param buffer Buffer positioned at the table
+     * @param count Number of strings in the table
+     * @return The strings
+     */
+    static String[] getStrings(ByteBuffer buffer, int count) {
+        int[] offsets = new int[count + 1];
+        buffer.asIntBuffer().get(offsets);
+        buffer.position(buffer.position() + offsets.length * 4);
+        byte[] data = new byte[offsets[count]];
+        buffer.get(data);
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++)
+            strings[i] = new String(data, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+        return strings;
+    }
+
+    /**
+     * Writes values as contiguous block
+     *
+     * @param buffer Buffer the values are written to
+     * @param values Values
+     * @param dtype Value type (bytes per value)
+     */
+    static void putValues(ByteBuffer buffer, double[] values, byte dtype) {
+        if (dtype == FLOAT64) {
+            buffer.asDoubleBuffer().put(values);
+        } else {
+            float[] singleValues = new float[values.length];
+            for (int i = 0; i < values.length; i++)
+                singleValues[i] = (float) values[i];
+            buffer.asFloatBuffer().put(singleValues);
+        }
+        buffer.position(buffer.position() + values.length * dtype);
+    }
+
+    /**
+     * Reads a contiguous block of values
+     *
+     * @param buffer Buffer positioned at the block
+     * @param length Number of values
+     * @param dtype Value type (bytes per value)
+     * @return The values
+     */
+    static double[] getValues(ByteBuffer buffer, int length, byte dtype) {
+        if (buffer.remaining() < length * dtype)
+            throw new BufferUnderflowException();
+        double[] values = new double[length];
+        if (dtype == FLOAT64) {
+            buffer.asDoubleBuffer().get(values);
+        } else {
+            float[] singleValues = new float[length];
+            buffer.asFloatBuffer().get(singleValues);
+            for (int i = 0; i < length; i++)
+                values[i] = singleValues[i];
+        }
+        buffer.position(buffer.position() + length * dtype);
+        return values;
+    }
+}
@@ -0,0 +1,108 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * ModelManifest
+ *
+ * This Class describes a model whose user vectors are stored in multiple envelopes (shards). Each user is stored in
+ * the shard given by the hash of their ID, so that only the shards of the users in question have to be loaded.
+ * Shards and the index updated after the model was created are stored under new handles (copy-on-write), whose
+ * revisions are recorded here, so that other nodes pick up the changes once they load the new manifest.
+ *
+ */
+
+public class ModelManifest implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long version;
+    private final int noShards;
+    private final int dimension;
+    private final int noUsers;
+    // Null for manifests stored before shards could be updated, i.e. all revisions are 0
+    private final int[] shardRevisions;
+    private final int indexRevision;
+
+    /**
+     * Constructor - Describes a stored model
+     *
+     * @param version Version of the model, part of the shard handles so that shards of different versions are not mixed
+     * @param noShards Number of shards
+     * @param dimension Number of values per user vector
+     * @param noUsers Number of users stored at the time the model was created
+     */
+    public ModelManifest(long version, int noShards, int dimension, int noUsers) {
+        this(version, noShards, dimension, noUsers, new int[noShards], 0);
+    }
+
+    private ModelManifest(long version, int noShards, int dimension, int noUsers, int[] shardRevisions,
+                          int indexRevision) {
+        this.version = version;
+        this.noShards = noShards;
+        this.dimension = dimension;
+        this.noUsers = noUsers;
+        this.shardRevisions = shardRevisions;
+        this.indexRevision = indexRevision;
+    }
+
+    /**
+     * Describes the model after the given shards (and possibly the index) were stored again under new revisions
+     *
+     * @param revisions Revisions of the updated shards mapped to the shard indices
+     * @param indexRevision Revision of the index, the current one if the index was not updated
+     * @return Manifest with the given revisions
+     */
+    public ModelManifest withRevisions(Map<Integer, Integer> revisions, int indexRevision) {
+        int[] shardRevisions = this.shardRevisions == null ? new int[noShards] :
+                Arrays.copyOf(this.shardRevisions, noShards);
+        for (Map.Entry<Integer, Integer> revision : revisions.entrySet())
+            shardRevisions[revision.getKey()] = revision.getValue();
+        return new ModelManifest(version, noShards, dimension, noUsers, shardRevisions, indexRevision);
+    }
+
+    /**
+     * Checks whether the given manifest refers to the same shards and index as this one, i.e. whether the model was
+     * not changed in between
+     *
+     * @param other Another manifest
+     * @return True if both manifests refer to the same model parts, False otherwise
+     */
+    public boolean hasSameParts(ModelManifest other) {
+        if (other.version != version || other.noShards != noShards || other.indexRevision != indexRevision)
+            return false;
+        for (int shard = 0; shard < noShards; shard++)
+            if (other.getShardRevision(shard) != getShardRevision(shard))
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns the shard in which the vector of the given user is stored
+     *
+     * @param userId las2peer User Agent ID
+     * @return Shard index
+     */
+    public int shardOf(String userId) { return ModelShards.shardOf(userId, noShards); }
+
+    /**
+     * @param shard Shard index
+     * @return Revision of the given shard, 0 if it was not updated after the model was created
+     */
+    public int getShardRevision(int shard) { return shardRevisions == null ? 0 : shardRevisions[shard]; }
+
+    /**
+     * @return Revision of the index, 0 if it was not updated after the model was created
+     */
+    public int getIndexRevision() { return indexRevision; }
+
+    public long getVersion() { return version; }
+
+    public int getNoShards() { return noShards; }
+
+    public int getDimension() { return dimension; }
+
+    public int getNoUsers() { return noUsers; }
+}
@@ -0,0 +1,154 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import i5.las2peer.logging.L2pLogger;
+import i5.las2peer.services.hyeYouTubeRecommendations.YouTubeRecommendations;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
+/**
+ * ModelShards
+ *
+ * This Class splits user vectors into hash-sharded parts and combines loaded shards again. Shards are loaded in
+ * parallel, since loading a shard mostly means waiting for the las2peer network storage.
+ *
+ */
+
+public class ModelShards {
+
+    // Number of users stored per shard (on average)
+    private static final int USERS_PER_SHARD = 1000;
+    // Shared by all requests, threads mostly wait for envelopes
+    private static final ForkJoinPool fetchPool = new ForkJoinPool(8);
+
+    private static final L2pLogger log = L2pLogger.getInstance(YouTubeRecommendations.class.getName());
+
+    /**
+     * Returns the shard of the given user, which only depends on the user ID and the number of shards
+     *
+     * @param userId las2peer User Agent ID
+     * @param noShards Number of shards
+     * @return Shard index
+     */
+    public static int shardOf(String userId, int noShards) {
+        return Math.floorMod(userId.hashCode(), noShards);
+    }
+
+    /**
+     * Returns the number of shards used for the given number of users
+     *
+     * @param noUsers Number of users
+     * @return Number of shards
+     */
+    public static int noShards(int noUsers) {
+        return Math.max(1, (noUsers + USERS_PER_SHARD - 1) / USERS_PER_SHARD);
+    }
+
+    /**
+     * Splits the given model into shards
+     *
+     * @param model User vectors
+     * @param noShards Number of shards
+     * @return Vectors of the users of each shard
+     */
+    public static VectorModel[] split(VectorModel model, int noShards) {
+        int dimension = model.getDimension();
+        int[] shardOfRow = new int[model.size()];
+        int[] shardSizes = new int[noShards];
+        for (int row = 0; row < model.size(); row++) {
+            shardOfRow[row] = shardOf(model.getUserId(row), noShards);
+            shardSizes[shardOfRow[row]]++;
+        }
+        String[][] userIds = new String[noShards][];
+        double[][] vectors = new double[noShards][];
+        for (int shard = 0; shard < noShards; shard++) {
+            userIds[shard] = new String[shardSizes[shard]];
+            vectors[shard] = new double[shardSizes[shard] * dimension];
+            shardSizes[shard] = 0;
+        }
+        for (int row = 0; row < model.size(); row++) {
+            int shard = shardOfRow[row];
+            int shardRow = shardSizes[shard]++;
+            userIds[shard][shardRow] = model.getUserId(row);
+            System.arraycopy(model.getVectors(), model.offset(row), vectors[shard], shardRow * dimension, dimension);
+        }
+        VectorModel[] shards = new VectorModel[noShards];
+        for (int shard = 0; shard < noShards; shard++)
+            shards[shard] = new VectorModel(userIds[shard], dimension, vectors[shard]);
+        return shards;
+    }
+
+    /**
+     * Combines the given shards into one model
+     *
+     * @param shards User vectors of the same dimension
+     * @param dimension Number of values per user vector
+     * @return Vectors of all users of the shards
+     */
+    public static VectorModel merge(Collection<VectorModel> shards, int dimension) {
+        if (shards.size() == 1)
+            return shards.iterator().next();
+        int noUsers = 0;
+        for (VectorModel shard : shards)
+            noUsers += shard.size();
+        String[] userIds = new String[noUsers];
+        double[] vectors = new double[noUsers * dimension];
+        int rows = 0;
+        for (VectorModel shard : shards) {
+            for (int row = 0; row < shard.size(); row++)
+                userIds[rows + row] = shard.getUserId(row);
+            System.arraycopy(shard.getVectors(), 0, vectors, rows * dimension, shard.size() * dimension);
+            rows += shard.size();
+        }
+        return new VectorModel(userIds, dimension, vectors);
+    }
+
+    /**
+     * Loads the shards containing the given users in parallel. The loaded shards are not combined, so that the
+     * vectors of cached shards are used without copying them.
+     *
+     * @param manifest Description of the stored model
+     * @param userIds las2peer User Agent IDs of the users whose vectors are needed, null if all users are needed
+     * @param loader Loads the shard with the given index, returns null if the shard could not be loaded
+     * @return Vectors of (at least) the given users or null if a shard could not be loaded
+     */
+    public static ShardedVectors fetch(ModelManifest manifest, Collection<String> userIds,
+                                       IntFunction<VectorModel> loader) {
+        TreeSet<Integer> shardIndices = new TreeSet<Integer>();
+        if (userIds == null) {
+            for (int shard = 0; shard < manifest.getNoShards(); shard++)
+                shardIndices.add(shard);
+        } else {
+            for (String userId : userIds)
+                shardIndices.add(manifest.shardOf(userId));
+        }
+        VectorModel[] shards = new VectorModel[manifest.getNoShards()];
+        if (shardIndices.size() == 1) {
+            shards[shardIndices.first()] = loader.apply(shardIndices.first());
+        } else if (!shardIndices.isEmpty()) {
+            ArrayList<Callable<VectorModel>> tasks = new ArrayList<Callable<VectorModel>>(shardIndices.size());
+            for (int shard : shardIndices)
+                tasks.add(() -> loader.apply(shard));
+            try {
+                Iterator<Integer> indices = shardIndices.iterator();
+                for (Future<VectorModel> result : fetchPool.invokeAll(tasks))
+                    shards[indices.next()] = result.get();
+            } catch (Exception e) {
+                log.printStackTrace(e);
+                return null;
+            }
+        }
+        for (int shard : shardIndices) {
+            if (shards[shard] == null ||
+                    shards[shard].getDimension() != manifest.getDimension() && shards[shard].size() > 0)
+                return null;
+        }
+        return new ShardedVectors(shards, manifest.getDimension());
+    }
+}
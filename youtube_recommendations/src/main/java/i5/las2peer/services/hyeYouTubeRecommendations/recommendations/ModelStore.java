@@ -0,0 +1,139 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * ModelStore
+ *
+ * This Class keeps the machine learning models (and indices built over them) used for matching in memory, so that
+ * they only have to be loaded from the las2peer network storage once per node. Models are replaced whenever a new
+ * version is published on this node.
+ *
+ */
+
+public class ModelStore {
+
+    private final ConcurrentHashMap<String, Object> models;
+    // Time at which each model was loaded or published, in milliseconds since epoch
+    private final ConcurrentHashMap<String, Long> loadTimes;
+    // Models currently being loaded, so that concurrent requests for the same model wait for the first load
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> loading;
+
+    /**
+     * Constructor - Creates an empty store
+     */
+    public ModelStore() {
+        this.models = new ConcurrentHashMap<String, Object>();
+        this.loadTimes = new ConcurrentHashMap<String, Long>();
+        this.loading = new ConcurrentHashMap<String, CompletableFuture<Object>>();
+    }
+
+    /**
+     * Returns the model stored under the given handle, loading it with the given loader if it is not in memory, yet
+     *
+     * @param handle Envelope handle under which the model is stored in the network
+     * @param loader Function loading the model from the network storage, may return null
+     * @return The model or null if it could not be loaded
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String handle, Supplier<T> loader) {
+        if (handle == null)
+            return null;
+        Object model = models.get(handle);
+        if (model != null)
+            return (T) model;
+        // Concurrent requests for the same model wait for the first one to load it. The model is loaded outside of
+        // the maps, so that loading does not block access to other models.
+        CompletableFuture<Object> load = new CompletableFuture<Object>();
+        CompletableFuture<Object> running = loading.putIfAbsent(handle, load);
+        if (running != null)
+            return (T) running.join();
+        try {
+            model = models.get(handle);
+            if (model == null) {
+                Object loaded = loader.get();
+                // Only stored if the model was not published or invalidated while loading
+                if (loaded != null)
+                    loading.computeIfPresent(handle, (key, current) -> {
+                        if (current == load) {
+                            models.put(key, loaded);
+                            loadTimes.put(key, System.currentTimeMillis());
+                        }
+                        return current;
+                    });
+                model = loaded;
+            }
+            load.complete(model);
+            return (T) model;
+        } catch (RuntimeException e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(handle, load);
+        }
+    }
+
+    /**
+     * Returns the model stored under the given handle like get(), but loads it again if it was loaded longer ago than
+     * the given time, for data which may be changed by other nodes
+     *
+     * @param handle Envelope handle under which the model is stored in the network
+     * @param ttlMillis Time in milliseconds after which the model is loaded again
+     * @param loader Function loading the model from the network storage, may return null
+     * @return The model or null if it could not be loaded
+     */
+    public <T> T get(String handle, long ttlMillis, Supplier<T> loader) {
+        if (handle == null)
+            return null;
+        Long loadTime = loadTimes.get(handle);
+        if (loadTime != null && System.currentTimeMillis() - loadTime > ttlMillis)
+            invalidate(handle);
+        return get(handle, loader);
+    }
+
+    /**
+     * Replaces the model stored under the given handle with a newly published version
+     *
+     * @param handle Envelope handle under which the model is stored in the network
+     * @param model The new model
+     */
+    public void publish(String handle, Object model) {
+        if (handle == null)
+            return;
+        if (model == null) {
+            invalidate(handle);
+        } else {
+            // Removed first, so that a running load cannot replace the published model afterwards
+            loading.remove(handle);
+            models.put(handle, model);
+            loadTimes.put(handle, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Drops the model stored under the given handle, so that it is loaded again on next access
+     *
+     * @param handle Envelope handle under which the model is stored in the network
+     */
+    public void invalidate(String handle) {
+        if (handle == null)
+            return;
+        loading.remove(handle);
+        models.remove(handle);
+        loadTimes.remove(handle);
+    }
+
+    /**
+     * Drops all models whose handles match the given condition, e.g. the parts of an outdated model version
+     *
+     * @param condition Condition on the envelope handles
+     */
+    public void invalidateIf(Predicate<String> condition) {
+        loading.keySet().removeIf(condition);
+        models.keySet().removeIf(condition);
+        loadTimes.keySet().removeIf(condition);
+    }
+}
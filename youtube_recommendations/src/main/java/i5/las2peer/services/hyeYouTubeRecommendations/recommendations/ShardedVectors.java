@@ -0,0 +1,64 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import java.util.ArrayList;
+
+/**
+ * ShardedVectors
+ *
+ * This Class gives access to the user vectors of a sharded model by looking users up in the shard they are stored in.
+ * The shards are the instances cached on this node, so no vectors are copied when serving a request.
+ *
+ */
+
+public class ShardedVectors {
+
+    private final VectorModel[] shards;
+    private final int dimension;
+
+    /**
+     * Constructor - Wraps the given shards
+     *
+     * @param shards Shards indexed as given by ModelShards.shardOf(), null for shards which were not loaded
+     * @param dimension Number of values per user vector
+     */
+    public ShardedVectors(VectorModel[] shards, int dimension) {
+        this.shards = shards;
+        this.dimension = dimension;
+    }
+
+    /**
+     * Wraps a model which is not split into shards
+     *
+     * @param model User vectors
+     * @return The model as single shard
+     */
+    public static ShardedVectors of(VectorModel model) {
+        return new ShardedVectors(new VectorModel[] {model}, model.getDimension());
+    }
+
+    /**
+     * Returns the shard holding the vector of the given user
+     *
+     * @param userId las2peer User Agent ID
+     * @return The shard or null if the user's shard was not loaded or does not contain a vector for the user
+     */
+    public VectorModel getShard(String userId) {
+        VectorModel shard = shards[ModelShards.shardOf(userId, shards.length)];
+        return shard != null && shard.indexOf(userId) >= 0 ? shard : null;
+    }
+
+    /**
+     * Combines all loaded shards into one model, which copies their vectors
+     *
+     * @return Vectors of all users of the loaded shards
+     */
+    public VectorModel toModel() {
+        ArrayList<VectorModel> loaded = new ArrayList<VectorModel>(shards.length);
+        for (VectorModel shard : shards)
+            if (shard != null)
+                loaded.add(shard);
+        return ModelShards.merge(loaded, dimension);
+    }
+
+    public int getDimension() { return dimension; }
+}
@@ -0,0 +1,159 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import i5.las2peer.logging.L2pLogger;
+import i5.las2peer.services.hyeYouTubeRecommendations.YouTubeRecommendations;
+import i5.las2peer.services.hyeYouTubeRecommendations.util.DataBaseConnection;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * SparseRatings
+ *
+ * This Class holds the rating matrix as primitive sparse arrays, both by user (compressed rows) and by item
+ * (compressed columns). Users and items are numbered densely in the order they are read, the integer IDs assigned by
+ * the database are kept alongside.
+ *
+ */
+
+public class SparseRatings {
+
+    private final String[] userIds;
+    private final int[] userIntIds;
+    private final int[] itemIntIds;
+    // Ratings of user u are at positions userPtr[u] to userPtr[u + 1] of userItems and userValues
+    private final int[] userPtr;
+    private final int[] userItems;
+    private final float[] userValues;
+    // Ratings of item i are at positions itemPtr[i] to itemPtr[i + 1] of itemUsers and itemValues
+    private final int[] itemPtr;
+    private final int[] itemUsers;
+    private final float[] itemValues;
+
+    private static final L2pLogger log = L2pLogger.getInstance(YouTubeRecommendations.class.getName());
+
+    /**
+     * Constructor - Wraps the given ratings by user and computes the ratings by item
+     *
+     * @param userIds las2peer User Agent IDs, one per user
+     * @param userIntIds Integer user IDs assigned by the database, one per user
+     * @param itemIntIds Integer video IDs assigned by the database, one per item
+     * @param userPtr Ratings of user u are at positions userPtr[u] to userPtr[u + 1]
+     * @param userItems Item indices of the ratings
+     * @param userValues Rating values
+     */
+    SparseRatings(String[] userIds, int[] userIntIds, int[] itemIntIds, int[] userPtr, int[] userItems,
+                          float[] userValues) {
+        this.userIds = userIds;
+        this.userIntIds = userIntIds;
+        this.itemIntIds = itemIntIds;
+        this.userPtr = userPtr;
+        this.userItems = userItems;
+        this.userValues = userValues;
+
+        // Transpose by counting the ratings per item
+        int noItems = itemIntIds.length;
+        int noRatings = userPtr[userIds.length];
+        this.itemPtr = new int[noItems + 1];
+        for (int k = 0; k < noRatings; k++)
+            itemPtr[userItems[k] + 1]++;
+        for (int i = 0; i < noItems; i++)
+            itemPtr[i + 1] += itemPtr[i];
+        this.itemUsers = new int[noRatings];
+        this.itemValues = new float[noRatings];
+        int[] next = Arrays.copyOf(itemPtr, noItems);
+        for (int u = 0; u < userIds.length; u++) {
+            for (int k = userPtr[u]; k < userPtr[u + 1]; k++) {
+                int pos = next[userItems[k]]++;
+                itemUsers[pos] = u;
+                itemValues[pos] = userValues[k];
+            }
+        }
+    }
+
+    /**
+     * Streams the ratings stored in the database into a sparse matrix
+     *
+     * @param db Database containing the ratings
+     * @param ratingMappings Weights of the different ratings, ratings without weight are left out
+     * @return The rating matrix or null if the ratings could not be read
+     */
+    public static SparseRatings read(DataBaseConnection db, Map<String, Double> ratingMappings) {
+        String[][] userIds = { new String[1024] };
+        int[][] userIntIds = { new int[1024] };
+        int[][] userPtr = { new int[1025] };
+        int[][] items = { new int[4096] };
+        float[][] values = { new float[4096] };
+        // Maps integer video IDs assigned by the database to dense item indices (-1 if not seen, yet)
+        IntIndexMap itemIndex = new IntIndexMap(1024);
+        int[][] itemIntIds = { new int[1024] };
+        int[] counts = { 0, 0, 0 };
+        int noUsers = db.streamRatings(userRatings -> {
+            int u = counts[0];
+            if (u + 1 >= userIds[0].length) {
+                userIds[0] = Arrays.copyOf(userIds[0], userIds[0].length * 2);
+                userIntIds[0] = Arrays.copyOf(userIntIds[0], userIntIds[0].length * 2);
+                userPtr[0] = Arrays.copyOf(userPtr[0], userPtr[0].length * 2);
+            }
+            for (int i = 0; i < userRatings.size(); i++) {
+                Double value = ratingMappings.get(userRatings.getRating(i));
+                if (value == null) {
+                    log.info("Rating " + userRatings.getRating(i) + " not found in map " + ratingMappings);
+                    continue;
+                }
+                int videoIntId = userRatings.getVideoIntId(i);
+                int item = itemIndex.get(videoIntId);
+                if (item < 0) {
+                    if (counts[1] == itemIntIds[0].length)
+                        itemIntIds[0] = Arrays.copyOf(itemIntIds[0], itemIntIds[0].length * 2);
+                    itemIntIds[0][counts[1]] = videoIntId;
+                    item = counts[1]++;
+                    itemIndex.put(videoIntId, item);
+                }
+                if (counts[2] == items[0].length) {
+                    items[0] = Arrays.copyOf(items[0], items[0].length * 2);
+                    values[0] = Arrays.copyOf(values[0], values[0].length * 2);
+                }
+                items[0][counts[2]] = item;
+                values[0][counts[2]++] = value.floatValue();
+            }
+            // Users without usable ratings cannot be factorized
+            if (counts[2] == userPtr[0][u])
+                return true;
+            userIds[0][u] = userRatings.getUserId();
+            userIntIds[0][u] = userRatings.getUserIntId();
+            userPtr[0][u + 1] = counts[2];
+            counts[0]++;
+            return true;
+        });
+        if (noUsers < 0)
+            return null;
+        return new SparseRatings(Arrays.copyOf(userIds[0], counts[0]), Arrays.copyOf(userIntIds[0], counts[0]),
+                Arrays.copyOf(itemIntIds[0], counts[1]), Arrays.copyOf(userPtr[0], counts[0] + 1),
+                Arrays.copyOf(items[0], counts[2]), Arrays.copyOf(values[0], counts[2]));
+    }
+
+    public int getNoUsers() { return userIds.length; }
+
+    public int getNoItems() { return itemIntIds.length; }
+
+    public int getNoRatings() { return userItems.length; }
+
+    public String[] getUserIds() { return userIds; }
+
+    public int[] getUserIntIds() { return userIntIds; }
+
+    public int[] getItemIntIds() { return itemIntIds; }
+
+    public int[] getUserPtr() { return userPtr; }
+
+    public int[] getUserItems() { return userItems; }
+
+    public float[] getUserValues() { return userValues; }
+
+    public int[] getItemPtr() { return itemPtr; }
+
+    public int[] getItemUsers() { return itemUsers; }
+
+    public float[] getItemValues() { return itemValues; }
+}
@@ -0,0 +1,99 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+/**
+ * TopMatches
+ *
+ * This Class keeps the k best scored candidates seen so far in a fixed-size min-heap of primitive values, so that
+ * candidates can be scored one after another without storing all of their scores.
+ *
+ */
+
+public class TopMatches {
+
+    private final int[] candidates;
+    private final double[] values;
+    private int size;
+
+    /**
+     * Constructor - Creates an empty heap
+     *
+     * @param k Maximum number of candidates kept
+     */
+    public TopMatches(int k) {
+        if (k < 1)
+            throw new IllegalArgumentException("k must be positive, got " + k);
+        this.candidates = new int[k];
+        this.values = new double[k];
+        this.size = 0;
+    }
+
+    /**
+     * Offers a scored candidate, which is kept if it is among the k best seen so far
+     *
+     * @param candidate Index of the candidate
+     * @param value Match value of the candidate (higher is better)
+     */
+    public void offer(int candidate, double value) {
+        if (size < candidates.length) {
+            // Sift new candidate up
+            int pos = size++;
+            while (pos > 0) {
+                int parent = (pos - 1) >>> 1;
+                if (values[parent] <= value)
+                    break;
+                candidates[pos] = candidates[parent];
+                values[pos] = values[parent];
+                pos = parent;
+            }
+            candidates[pos] = candidate;
+            values[pos] = value;
+        } else if (value > values[0]) {
+            siftDown(candidate, value);
+        }
+    }
+
+    /**
+     * Adds all candidates kept by the given heap to this one
+     *
+     * @param other Heap filled with candidates of the same candidate list
+     */
+    public void merge(TopMatches other) {
+        for (int i = 0; i < other.size; i++)
+            offer(other.candidates[i], other.values[i]);
+    }
+
+    private void siftDown(int candidate, double value) {
+        int pos = 0;
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            if (child + 1 < size && values[child + 1] < values[child])
+                child++;
+            if (value <= values[child])
+                break;
+            candidates[pos] = candidates[child];
+            values[pos] = values[child];
+            pos = child;
+        }
+        candidates[pos] = candidate;
+        values[pos] = value;
+    }
+
+    /**
+     * Empties the heap and returns the kept candidates
+     *
+     * @return Candidate indices ordered from best to worst match value
+     */
+    public int[] drain() {
+        int[] result = new int[size];
+        while (size > 0) {
+            result[size - 1] = candidates[0];
+            size--;
+            if (size > 0)
+                siftDown(candidates[size], values[size]);
+        }
+        return result;
+    }
+
+    public int size() { return size; }
+}
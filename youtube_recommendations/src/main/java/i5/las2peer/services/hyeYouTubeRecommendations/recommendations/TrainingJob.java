@@ -0,0 +1,135 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import com.google.gson.JsonObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * TrainingJob
+ *
+ * This Class describes a model training run executed in the background. It keeps track of the phase currently
+ * executed, the time spent in each phase, and the result, so that it can be reported after the request which started
+ * the job has returned.
+ *
+ */
+
+public class TrainingJob {
+
+    public static final String QUEUED = "queued";
+    public static final String RUNNING = "running";
+    public static final String SUCCESS = "success";
+    public static final String FAIL = "fail";
+
+    private final String id;
+    private final String type;
+    private final long created;
+    private long started;
+    private long finished;
+    private String status;
+    private String phase;
+    private long phaseStarted;
+    // Milliseconds spent in each phase, in the order the phases were entered
+    private final LinkedHashMap<String, Long> phaseTimings;
+    private int resultStatus;
+    private String resultMessage;
+
+    /**
+     * Constructor - Creates a queued job
+     *
+     * @param id Unique job ID
+     * @param type Kind of model trained by the job
+     */
+    public TrainingJob(String id, String type) {
+        this.id = id;
+        this.type = type;
+        this.created = System.currentTimeMillis();
+        this.status = QUEUED;
+        this.phaseTimings = new LinkedHashMap<String, Long>();
+    }
+
+    public String getId() { return id; }
+
+    public String getType() { return type; }
+
+    public synchronized String getStatus() { return status; }
+
+    public synchronized boolean isFinished() { return status.equals(SUCCESS) || status.equals(FAIL); }
+
+    /**
+     * Marks the job as running
+     */
+    public synchronized void start() {
+        started = System.currentTimeMillis();
+        status = RUNNING;
+    }
+
+    /**
+     * Ends the current phase (recording its duration) and starts the given one
+     *
+     * @param nextPhase Name of the phase now executed
+     */
+    public synchronized void enterPhase(String nextPhase) {
+        long now = System.currentTimeMillis();
+        if (phase != null)
+            addPhaseTime(phase, now - phaseStarted);
+        phase = nextPhase;
+        phaseStarted = now;
+    }
+
+    /**
+     * Adds time to the given phase, used for phases which are interleaved with others
+     *
+     * @param phaseName Name of the phase
+     * @param millis Time spent in the phase in milliseconds
+     */
+    public synchronized void addPhaseTime(String phaseName, long millis) {
+        phaseTimings.merge(phaseName, millis, Long::sum);
+    }
+
+    /**
+     * Ends the job
+     *
+     * @param status HTTP status describing the result
+     * @param message Result message
+     */
+    public synchronized void finish(int status, String message) {
+        enterPhase(null);
+        finished = System.currentTimeMillis();
+        this.status = status >= 200 && status < 300 ? SUCCESS : FAIL;
+        resultStatus = status;
+        resultMessage = message;
+    }
+
+    /**
+     * Returns the current state of the job
+     *
+     * @return Job state as json object
+     */
+    public synchronized JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("id", id);
+        json.addProperty("type", type);
+        json.addProperty("status", status);
+        if (phase != null)
+            json.addProperty("phase", phase);
+        json.addProperty("created", created);
+        if (started > 0)
+            json.addProperty("started", started);
+        if (finished > 0) {
+            json.addProperty("finished", finished);
+            json.addProperty("durationMillis", finished - started);
+        }
+        JsonObject phases = new JsonObject();
+        for (Map.Entry<String, Long> timing : phaseTimings.entrySet())
+            phases.addProperty(timing.getKey(), timing.getValue());
+        json.add("phaseMillis", phases);
+        if (finished > 0) {
+            JsonObject result = new JsonObject();
+            result.addProperty("status", resultStatus);
+            result.addProperty("msg", resultMessage);
+            json.add("result", result);
+        }
+        return json;
+    }
+}
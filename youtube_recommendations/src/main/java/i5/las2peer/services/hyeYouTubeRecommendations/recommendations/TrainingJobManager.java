@@ -0,0 +1,118 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import i5.las2peer.logging.L2pLogger;
+import i5.las2peer.services.hyeYouTubeRecommendations.YouTubeRecommendations;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * TrainingJobManager
+ *
+ * This Class runs model training jobs in the background and remembers the most recent ones. Only one job per kind of
+ * model runs at a time, submitting another one while it runs returns the running job instead.
+ *
+ */
+
+public class TrainingJobManager {
+
+    // Number of finished jobs kept for status requests
+    private static final int MAX_FINISHED_JOBS = 20;
+
+    private final LinkedHashMap<String, TrainingJob> jobs;
+    private final HashMap<String, TrainingJob> activeJobs;
+
+    private static final L2pLogger log = L2pLogger.getInstance(YouTubeRecommendations.class.getName());
+
+    /**
+     * Work performed by a job, which should report its phases and result to the given job
+     */
+    public interface Task {
+        void run(TrainingJob job) throws Exception;
+    }
+
+    public TrainingJobManager() {
+        this.jobs = new LinkedHashMap<String, TrainingJob>();
+        this.activeJobs = new HashMap<String, TrainingJob>();
+    }
+
+    /**
+     * Starts a job of the given type, unless one is already queued or running
+     *
+     * @param type Kind of model trained by the job
+     * @param executor Executor running the job
+     * @param task Work performed by the job
+     * @return The new job or the job of the same type which is already active
+     */
+    public synchronized TrainingJob submit(String type, Executor executor, Task task) {
+        TrainingJob active = activeJobs.get(type);
+        if (active != null)
+            return active;
+        TrainingJob job = new TrainingJob(UUID.randomUUID().toString(), type);
+        jobs.put(job.getId(), job);
+        activeJobs.put(type, job);
+        evictFinishedJobs();
+        try {
+            executor.execute(() -> run(job, task));
+        } catch (RejectedExecutionException e) {
+            log.printStackTrace(e);
+            activeJobs.remove(type);
+            job.finish(503, "Could not start training job.");
+        }
+        return job;
+    }
+
+    private void run(TrainingJob job, Task task) {
+        job.start();
+        try {
+            task.run(job);
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            job.finish(500, "Internal server error while running training job.");
+        } finally {
+            if (!job.isFinished())
+                job.finish(500, "Training job ended without result.");
+            synchronized (this) {
+                activeJobs.remove(job.getType());
+            }
+        }
+    }
+
+    private void evictFinishedJobs() {
+        int noFinished = 0;
+        for (TrainingJob job : jobs.values())
+            if (job.isFinished())
+                noFinished++;
+        Iterator<TrainingJob> it = jobs.values().iterator();
+        while (noFinished > MAX_FINISHED_JOBS && it.hasNext()) {
+            if (it.next().isFinished()) {
+                it.remove();
+                noFinished--;
+            }
+        }
+    }
+
+    /**
+     * Returns the job with the given ID
+     *
+     * @param id Job ID
+     * @return The job or null if it is unknown or was already evicted
+     */
+    public synchronized TrainingJob get(String id) {
+        return jobs.get(id);
+    }
+
+    /**
+     * Returns the remembered jobs
+     *
+     * @return Jobs from oldest to newest
+     */
+    public synchronized ArrayList<TrainingJob> list() {
+        return new ArrayList<TrainingJob>(jobs.values());
+    }
+}
@@ -0,0 +1,67 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import java.io.Serializable;
+import java.util.HashMap;
+
+/**
+ * UserMatch
+ *
+ * This Class is used as a wrapper for a user matched to a requesting user together with the values the match was
+ * based on.
+ *
+ */
+
+public class UserMatch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private String userId;
+    private double cf;
+    private double w2v;
+    private double matchValue;
+
+    public UserMatch(String userId, double cf, double w2v, double matchValue) {
+        this.userId = userId;
+        this.cf = cf;
+        this.w2v = w2v;
+        this.matchValue = matchValue;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public double getCf() {
+        return cf;
+    }
+
+    public double getW2v() {
+        return w2v;
+    }
+
+    public double getMatchValue() {
+        return matchValue;
+    }
+
+    /**
+     * @return The match as map of "userId", "cf", "w2v" and "matchValue" to the respective values
+     */
+    public HashMap<String, Serializable> toMap() {
+        HashMap<String, Serializable> map = new HashMap<String, Serializable>();
+        map.put("userId", userId);
+        map.put("cf", cf);
+        map.put("w2v", w2v);
+        map.put("matchValue", matchValue);
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "UserMatch{" +
+                "userId='" + userId + '\'' +
+                ", cf=" + cf +
+                ", w2v=" + w2v +
+                ", matchValue=" + matchValue +
+                '}';
+    }
+}
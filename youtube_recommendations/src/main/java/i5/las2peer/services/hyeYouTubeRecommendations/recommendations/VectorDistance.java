@@ -0,0 +1,104 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+/**
+ * VectorDistance
+ *
+ * This Class contains the distance computations used to compare user vectors. All functions work on rows of the
+ * contiguous arrays held by a VectorModel and do not allocate any objects.
+ *
+ */
+
+public final class VectorDistance {
+
+    private VectorDistance() {}
+
+    /**
+     * Computes the squared Euclidean distance between two rows
+     *
+     * @param a Array containing the first vector
+     * @param aOffset Position of the first vector in a
+     * @param b Array containing the second vector
+     * @param bOffset Position of the second vector in b
+     * @param dimension Number of values per vector
+     * @return Sum of the squared differences
+     */
+    public static double squaredEuclidean(double[] a, int aOffset, double[] b, int bOffset, int dimension) {
+        // Four independent sums let the JIT keep the loop in vector registers
+        double sum0 = 0;
+        double sum1 = 0;
+        double sum2 = 0;
+        double sum3 = 0;
+        int i = 0;
+        for (int bound = dimension & ~3; i < bound; i += 4) {
+            double d0 = a[aOffset + i] - b[bOffset + i];
+            double d1 = a[aOffset + i + 1] - b[bOffset + i + 1];
+            double d2 = a[aOffset + i + 2] - b[bOffset + i + 2];
+            double d3 = a[aOffset + i + 3] - b[bOffset + i + 3];
+            sum0 += d0 * d0;
+            sum1 += d1 * d1;
+            sum2 += d2 * d2;
+            sum3 += d3 * d3;
+        }
+        for (; i < dimension; i++) {
+            double d = a[aOffset + i] - b[bOffset + i];
+            sum0 += d * d;
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    /**
+     * Computes the Euclidean distance between two rows
+     *
+     * @param a Array containing the first vector
+     * @param aOffset Position of the first vector in a
+     * @param b Array containing the second vector
+     * @param bOffset Position of the second vector in b
+     * @param dimension Number of values per vector
+     * @return Euclidean distance
+     */
+    public static double euclidean(double[] a, int aOffset, double[] b, int bOffset, int dimension) {
+        return Math.sqrt(squaredEuclidean(a, aOffset, b, bOffset, dimension));
+    }
+
+    /**
+     * Computes the collaborative filtering and word2vec distances between the requesting user and the given
+     * candidates in a single pass. Each candidate's vectors may lie in a different array, i.e. in different shards.
+     *
+     * @param userMf Array containing the requesting user's matrix factorization vector
+     * @param userMfOffset Position of the requesting user's matrix factorization vector
+     * @param mf Arrays containing the candidates' matrix factorization vectors
+     * @param mfOffsets Positions of the candidates' matrix factorization vectors
+     * @param mfDimension Size of matrix factorization vectors
+     * @param userW2v Array containing the requesting user's word2vec vector
+     * @param userW2vOffset Position of the requesting user's word2vec vector
+     * @param w2v Arrays containing the candidates' word2vec vectors
+     * @param w2vOffsets Positions of the candidates' word2vec vectors
+     * @param w2vDimension Size of word2vec vectors
+     * @param from First candidate to score (inclusive)
+     * @param to Last candidate to score (exclusive)
+     * @param cfOut Receives the collaborative filtering distance of each candidate
+     * @param w2vOut Receives the word2vec distance of each candidate
+     * @param maxOut Receives the largest collaborative filtering and word2vec distance of the scored candidates
+     * @param maxOffset Position in maxOut where the largest collaborative filtering distance is written, the largest
+     *                  word2vec distance is written to the position after it
+     */
+    public static void scoreCandidates(double[] userMf, int userMfOffset, double[][] mf, int[] mfOffsets,
+                                       int mfDimension, double[] userW2v, int userW2vOffset, double[][] w2v,
+                                       int[] w2vOffsets, int w2vDimension, int from, int to,
+                                       double[] cfOut, double[] w2vOut, double[] maxOut, int maxOffset) {
+        double maxCf = 0;
+        double maxW2v = 0;
+        for (int i = from; i < to; i++) {
+            double cf = euclidean(userMf, userMfOffset, mf[i], mfOffsets[i], mfDimension);
+            double w2vVal = euclidean(userW2v, userW2vOffset, w2v[i], w2vOffsets[i], w2vDimension);
+            cfOut[i] = cf;
+            w2vOut[i] = w2vVal;
+            if (cf > maxCf)
+                maxCf = cf;
+            if (w2vVal > maxW2v)
+                maxW2v = w2vVal;
+        }
+        maxOut[maxOffset] = maxCf;
+        maxOut[maxOffset + 1] = maxW2v;
+    }
+}
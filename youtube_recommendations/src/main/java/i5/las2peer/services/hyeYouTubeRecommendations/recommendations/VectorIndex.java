@@ -0,0 +1,263 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * VectorIndex
+ *
+ * This Class implements an inverted file index (IVF-flat) over user vectors. The vectors are clustered with k-means and
+ * each user is stored in the list of its closest centroid, so that users close to a given vector can be found by only
+ * looking at the lists of the centroids closest to that vector.
+ *
+ */
+
+public class VectorIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final int KMEANS_ITERATIONS = 8;
+    // Centroids are trained on a sample of this many vectors per list
+    private static final int SAMPLES_PER_LIST = 32;
+
+    private final int dimension;
+    private final int noLists;
+    private final double[] centroids;
+    // Members of list l are stored in members[listStarts[l]] to members[listStarts[l + 1] - 1]
+    private final int[] listStarts;
+    private final String[] members;
+    // Built on first use, since it is not stored with the index
+    private transient HashSet<String> memberSet;
+
+    private VectorIndex(int dimension, int noLists, double[] centroids, int[] listStarts, String[] members) {
+        this.dimension = dimension;
+        this.noLists = noLists;
+        this.centroids = centroids;
+        this.listStarts = listStarts;
+        this.members = members;
+    }
+
+    /**
+     * Builds an index over all vectors of the given model with about sqrt(n) lists
+     *
+     * @param model User vectors
+     * @param seed Seed used to choose the initial centroids
+     * @return Index over the model or null if the model is empty
+     */
+    public static VectorIndex build(VectorModel model, long seed) {
+        return build(model, (int) Math.max(1, Math.round(Math.sqrt(model.size()))), seed);
+    }
+
+    /**
+     * Builds an index over all vectors of the given model
+     *
+     * @param model User vectors
+     * @param noLists Number of clusters
+     * @param seed Seed used to choose the initial centroids
+     * @return Index over the model or null if the model is empty
+     */
+    public static VectorIndex build(VectorModel model, int noLists, long seed) {
+        int n = model.size();
+        int dim = model.getDimension();
+        if (n == 0 || dim == 0)
+            return null;
+        noLists = Math.min(noLists, n);
+        double[] vectors = model.getVectors();
+        Random random = new Random(seed);
+
+        // Choose training sample
+        int[] sample = new int[n];
+        for (int i = 0; i < n; i++)
+            sample[i] = i;
+        int noSamples = Math.min(n, noLists * SAMPLES_PER_LIST);
+        for (int i = 0; i < noSamples; i++) {
+            int j = i + random.nextInt(n - i);
+            int tmp = sample[i];
+            sample[i] = sample[j];
+            sample[j] = tmp;
+        }
+
+        // Initialize centroids with distinct sample vectors and run k-means on the sample
+        double[] centroids = new double[noLists * dim];
+        for (int l = 0; l < noLists; l++)
+            System.arraycopy(vectors, model.offset(sample[l]), centroids, l * dim, dim);
+        int[] assignment = new int[noSamples];
+        int[] counts = new int[noLists];
+        for (int iteration = 0; iteration < KMEANS_ITERATIONS; iteration++) {
+            for (int s = 0; s < noSamples; s++)
+                assignment[s] = nearestCentroid(centroids, noLists, dim, vectors, model.offset(sample[s]));
+            Arrays.fill(centroids, 0);
+            Arrays.fill(counts, 0);
+            for (int s = 0; s < noSamples; s++) {
+                int offset = model.offset(sample[s]);
+                int centroidOffset = assignment[s] * dim;
+                for (int i = 0; i < dim; i++)
+                    centroids[centroidOffset + i] += vectors[offset + i];
+                counts[assignment[s]]++;
+            }
+            for (int l = 0; l < noLists; l++) {
+                if (counts[l] == 0) {
+                    // Restart empty clusters at a random sample vector
+                    System.arraycopy(vectors, model.offset(sample[random.nextInt(noSamples)]), centroids, l * dim,
+                            dim);
+                    continue;
+                }
+                for (int i = 0; i < dim; i++)
+                    centroids[l * dim + i] /= counts[l];
+            }
+        }
+
+        // Assign all vectors to their lists
+        int[] rowLists = new int[n];
+        Arrays.fill(counts, 0);
+        for (int row = 0; row < n; row++) {
+            rowLists[row] = nearestCentroid(centroids, noLists, dim, vectors, model.offset(row));
+            counts[rowLists[row]]++;
+        }
+        int[] listStarts = new int[noLists + 1];
+        for (int l = 0; l < noLists; l++)
+            listStarts[l + 1] = listStarts[l] + counts[l];
+        int[] positions = Arrays.copyOf(listStarts, noLists);
+        String[] members = new String[n];
+        for (int row = 0; row < n; row++)
+            members[positions[rowLists[row]]++] = model.getUserId(row);
+        return new VectorIndex(dim, noLists, centroids, listStarts, members);
+    }
+
+    /**
+     * Creates an index with the same centroids, in which the given users are stored in the lists of the centroids
+     * closest to their new vectors (users not indexed before are added) and the removed users are left out
+     *
+     * @param changed New vectors of the changed users, vectors of a different dimension are ignored
+     * @param removed las2peer User Agent IDs of users whose vectors were removed
+     * @return Updated index
+     */
+    public VectorIndex withAssignments(Map<String, double[]> changed, Collection<String> removed) {
+        HashSet<String> removedUsers = new HashSet<String>(removed);
+        HashMap<String, Integer> changedLists = new HashMap<String, Integer>();
+        for (Map.Entry<String, double[]> entry : changed.entrySet()) {
+            if (entry.getValue().length == dimension && !removedUsers.contains(entry.getKey()))
+                changedLists.put(entry.getKey(), nearestCentroid(centroids, noLists, dimension, entry.getValue(), 0));
+        }
+        int[] counts = new int[noLists];
+        for (int l = 0; l < noLists; l++)
+            for (int m = listStarts[l]; m < listStarts[l + 1]; m++)
+                if (!changedLists.containsKey(members[m]) && !removedUsers.contains(members[m]))
+                    counts[l]++;
+        for (int list : changedLists.values())
+            counts[list]++;
+        int[] newStarts = new int[noLists + 1];
+        for (int l = 0; l < noLists; l++)
+            newStarts[l + 1] = newStarts[l] + counts[l];
+        int[] positions = Arrays.copyOf(newStarts, noLists);
+        String[] newMembers = new String[newStarts[noLists]];
+        for (int l = 0; l < noLists; l++)
+            for (int m = listStarts[l]; m < listStarts[l + 1]; m++)
+                if (!changedLists.containsKey(members[m]) && !removedUsers.contains(members[m]))
+                    newMembers[positions[l]++] = members[m];
+        for (Map.Entry<String, Integer> entry : changedLists.entrySet())
+            newMembers[positions[entry.getValue()]++] = entry.getKey();
+        return new VectorIndex(dimension, noLists, centroids, newStarts, newMembers);
+    }
+
+    private static int nearestCentroid(double[] centroids, int noLists, int dim, double[] vectors, int offset) {
+        int nearest = 0;
+        double nearestDist = Double.MAX_VALUE;
+        for (int l = 0; l < noLists; l++) {
+            double dist = VectorDistance.squaredEuclidean(vectors, offset, centroids, l * dim, dim);
+            if (dist < nearestDist) {
+                nearestDist = dist;
+                nearest = l;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Returns the lists ordered by the distance of their centroids to the given vector
+     *
+     * @param vectors Array containing the query vector
+     * @param offset Position of the query vector
+     * @return List indices, closest first
+     */
+    private int[] rankLists(double[] vectors, int offset) {
+        double[] dists = new double[noLists];
+        Integer[] order = new Integer[noLists];
+        for (int l = 0; l < noLists; l++) {
+            dists[l] = VectorDistance.squaredEuclidean(vectors, offset, centroids, l * dimension, dimension);
+            order[l] = l;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(dists[a], dists[b]));
+        int[] ranked = new int[noLists];
+        for (int l = 0; l < noLists; l++)
+            ranked[l] = order[l];
+        return ranked;
+    }
+
+    /**
+     * Returns the users of the given candidate set which lie in the lists closest to the given vector. Lists are
+     * searched until at least the given number of candidates is found or all lists were searched.
+     *
+     * @param vectors Array containing the query vector
+     * @param offset Position of the query vector
+     * @param candidates las2peer User Agent IDs of all candidates, or null to consider every indexed user
+     * @param minCandidates Number of candidates after which no further lists are searched
+     * @return las2peer User Agent IDs of candidates close to the query vector
+     */
+    public ArrayList<String> search(double[] vectors, int offset, Set<String> candidates, int minCandidates) {
+        ArrayList<String> result = new ArrayList<String>();
+        for (int list : rankLists(vectors, offset)) {
+            for (int m = listStarts[list]; m < listStarts[list + 1]; m++) {
+                if (candidates == null || candidates.contains(members[m]))
+                    result.add(members[m]);
+            }
+            if (result.size() >= minCandidates)
+                break;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the users stored in the given number of lists closest to the given vector
+     *
+     * @param vectors Array containing the query vector
+     * @param offset Position of the query vector
+     * @param noProbes Number of lists searched
+     * @return las2peer User Agent IDs of users close to the query vector
+     */
+    public ArrayList<String> probe(double[] vectors, int offset, int noProbes) {
+        ArrayList<String> result = new ArrayList<String>();
+        int[] ranked = rankLists(vectors, offset);
+        for (int p = 0; p < Math.min(noProbes, noLists); p++)
+            for (int m = listStarts[ranked[p]]; m < listStarts[ranked[p] + 1]; m++)
+                result.add(members[m]);
+        return result;
+    }
+
+    /**
+     * Checks whether the given user was part of the model the index was built over
+     *
+     * @param userId las2peer User Agent ID
+     * @return Whether the user is contained in one of the lists
+     */
+    public boolean contains(String userId) {
+        HashSet<String> users = memberSet;
+        if (users == null) {
+            users = new HashSet<String>(Arrays.asList(members));
+            memberSet = users;
+        }
+        return users.contains(userId);
+    }
+
+    public int getDimension() { return dimension; }
+
+    public int getNoLists() { return noLists; }
+
+    public int size() { return members.length; }
+}
@@ -0,0 +1,186 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * VectorIndexBenchmark
+ *
+ * This Class compares the nearest neighbours found with a VectorIndex to the ones found by an exhaustive scan over all
+ * user vectors, reporting the recall and latency for different numbers of searched lists. If the matrix factorization
+ * vectors are given, the recall of matches scored after pre-filtering with the index is reported as well.
+ *
+ */
+
+public class VectorIndexBenchmark {
+
+    // Alpha values for which the matches scored after pre-filtering are compared to the ones of an exhaustive scan
+    private static final double[] MATCH_ALPHAS = {0.0, 0.25, MatchScorer.MAX_INDEXED_ALPHA};
+
+    private final VectorModel model;
+    private final VectorIndex index;
+    private final VectorModel mfModel;
+
+    /**
+     * Constructor - Sets the model and the index built over it
+     *
+     * @param model User vectors
+     * @param index Index built over the given model
+     */
+    public VectorIndexBenchmark(VectorModel model, VectorIndex index) {
+        this(model, index, null);
+    }
+
+    /**
+     * Constructor - Sets the model, the index built over it and the matrix factorization vectors used for matching
+     *
+     * @param model Word2vec user vectors
+     * @param index Index built over the given model
+     * @param mfModel Matrix factorization user features, may be null
+     */
+    public VectorIndexBenchmark(VectorModel model, VectorIndex index, VectorModel mfModel) {
+        this.model = model;
+        this.index = index;
+        this.mfModel = mfModel;
+    }
+
+    /**
+     * Returns the k rows closest to the given query row among the given rows
+     */
+    private HashSet<String> nearestRows(int query, int[] rows, int noRows, int k) {
+        TopMatches topMatches = new TopMatches(k);
+        double[] vectors = model.getVectors();
+        int queryOffset = model.offset(query);
+        for (int i = 0; i < noRows; i++) {
+            if (rows[i] == query)
+                continue;
+            topMatches.offer(rows[i], -VectorDistance.squaredEuclidean(vectors, queryOffset, vectors,
+                    model.offset(rows[i]), model.getDimension()));
+        }
+        HashSet<String> nearest = new HashSet<String>();
+        for (int row : topMatches.drain())
+            nearest.add(model.getUserId(row));
+        return nearest;
+    }
+
+    /**
+     * Runs the benchmark for randomly chosen users of the model
+     *
+     * @param noQueries Number of users whose neighbours are searched
+     * @param k Number of neighbours searched per user
+     * @param seed Seed used to choose the queried users
+     * @return Recall and average latency of the exhaustive scan and of the index for increasing numbers of lists
+     */
+    public JsonObject run(int noQueries, int k, long seed) {
+        int n = model.size();
+        noQueries = Math.min(noQueries, n);
+        k = Math.min(k, n - 1);
+        JsonObject result = new JsonObject();
+        result.addProperty("users", n);
+        result.addProperty("lists", index.getNoLists());
+        result.addProperty("queries", noQueries);
+        result.addProperty("k", k);
+        if (noQueries < 1 || k < 1)
+            return result;
+
+        Random random = new Random(seed);
+        int[] queries = new int[noQueries];
+        for (int q = 0; q < noQueries; q++)
+            queries[q] = random.nextInt(n);
+        int[] allRows = new int[n];
+        for (int row = 0; row < n; row++)
+            allRows[row] = row;
+
+        // Exhaustive scan gives the exact neighbours
+        ArrayList<HashSet<String>> exact = new ArrayList<HashSet<String>>(noQueries);
+        long start = System.nanoTime();
+        for (int query : queries)
+            exact.add(nearestRows(query, allRows, n, k));
+        JsonObject exhaustive = new JsonObject();
+        exhaustive.addProperty("avgMicros", (System.nanoTime() - start) / 1000.0 / noQueries);
+        exhaustive.addProperty("recall", 1.0);
+        result.add("exhaustive", exhaustive);
+
+        JsonArray indexed = new JsonArray();
+        for (int noProbes = 1; ; noProbes *= 2) {
+            noProbes = Math.min(noProbes, index.getNoLists());
+            long found = 0;
+            long candidates = 0;
+            start = System.nanoTime();
+            for (int q = 0; q < noQueries; q++) {
+                ArrayList<String> probed = index.probe(model.getVectors(), model.offset(queries[q]), noProbes);
+                int[] rows = new int[probed.size()];
+                int noRows = 0;
+                for (String userId : probed) {
+                    int row = model.indexOf(userId);
+                    if (row >= 0)
+                        rows[noRows++] = row;
+                }
+                candidates += noRows;
+                for (String userId : nearestRows(queries[q], rows, noRows, k))
+                    if (exact.get(q).contains(userId))
+                        found++;
+            }
+            JsonObject probeResult = new JsonObject();
+            probeResult.addProperty("probes", noProbes);
+            probeResult.addProperty("avgMicros", (System.nanoTime() - start) / 1000.0 / noQueries);
+            probeResult.addProperty("avgCandidates", (double) candidates / noQueries);
+            probeResult.addProperty("recall", (double) found / ((long) noQueries * k));
+            indexed.add(probeResult);
+            if (noProbes == index.getNoLists())
+                break;
+        }
+        result.add("index", indexed);
+        if (mfModel != null)
+            result.add("matches", matchRecall(queries, k));
+        return result;
+    }
+
+    /**
+     * Compares the k best matches found after pre-filtering the candidates with the index to the ones found by
+     * scoring all users, for the alpha values up to which the index is used
+     */
+    private JsonArray matchRecall(int[] queries, int k) {
+        MatchScorer scorer = new MatchScorer(mfModel, model, index);
+        ArrayList<String> allIds = new ArrayList<String>(model.size());
+        for (int row = 0; row < model.size(); row++)
+            allIds.add(model.getUserId(row));
+        JsonArray matchResults = new JsonArray();
+        for (double alpha : MATCH_ALPHAS) {
+            long found = 0;
+            long expected = 0;
+            long exhaustiveNanos = 0;
+            long indexedNanos = 0;
+            for (int query : queries) {
+                String userId = model.getUserId(query);
+                long start = System.nanoTime();
+                ArrayList<UserMatch> exact = scorer.findTopMatches(userId, allIds, alpha, k, false);
+                exhaustiveNanos += System.nanoTime() - start;
+                start = System.nanoTime();
+                ArrayList<UserMatch> filtered = scorer.findTopMatches(userId, allIds, alpha, k, true);
+                indexedNanos += System.nanoTime() - start;
+                // Users without matrix factorization vector cannot be matched
+                if (exact == null || filtered == null)
+                    continue;
+                HashSet<String> exactIds = new HashSet<String>();
+                for (UserMatch match : exact)
+                    exactIds.add(match.getUserId());
+                for (UserMatch match : filtered)
+                    if (exactIds.contains(match.getUserId()))
+                        found++;
+                expected += exactIds.size();
+            }
+            JsonObject alphaResult = new JsonObject();
+            alphaResult.addProperty("alpha", alpha);
+            alphaResult.addProperty("exhaustiveAvgMicros", exhaustiveNanos / 1000.0 / queries.length);
+            alphaResult.addProperty("indexedAvgMicros", indexedNanos / 1000.0 / queries.length);
+            alphaResult.addProperty("recall", expected == 0 ? 1.0 : (double) found / expected);
+            matchResults.add(alphaResult);
+        }
+        return matchResults;
+    }
+}
@@ -0,0 +1,199 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import i5.las2peer.logging.L2pLogger;
+import i5.las2peer.services.hyeYouTubeRecommendations.YouTubeRecommendations;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * VectorModel
+ *
+ * This Class holds the user vectors of a machine learning model (matrix factorization features or word2vec centers)
+ * as one contiguous array of doubles, with a dense index mapping las2peer user IDs to rows.
+ *
+ */
+
+public class VectorModel {
+
+    private final String[] userIds;
+    private final HashMap<String, Integer> userIndex;
+    private final int dimension;
+    private final double[] vectors;
+
+    private static final L2pLogger log = L2pLogger.getInstance(YouTubeRecommendations.class.getName());
+
+    /**
+     * Constructor - Wraps the given row-major vector data
+     *
+     * @param userIds las2peer User Agent IDs, one per row
+     * @param dimension Number of values per user vector
+     * @param vectors Row-major vector data of length userIds.length * dimension
+     */
+    public VectorModel(String[] userIds, int dimension, double[] vectors) {
+        if (vectors.length != userIds.length * dimension)
+            throw new IllegalArgumentException("Expected " + userIds.length * dimension + " values, got " +
+                    vectors.length);
+        this.userIds = userIds;
+        this.dimension = dimension;
+        this.vectors = vectors;
+        this.userIndex = new HashMap<String, Integer>(userIds.length * 4 / 3 + 1);
+        for (int i = 0; i < userIds.length; i++)
+            userIndex.put(userIds[i], i);
+    }
+
+    /**
+     * Creates a model from the map representation stored in the las2peer network storage
+     *
+     * @param vectorMap Map with user IDs mapping to lists of double values
+     * @return The same vectors as a contiguous model, vectors of deviating size are left out
+     */
+    public static VectorModel fromMap(Map<String, ? extends List<? extends Number>> vectorMap) {
+        int dimension = 0;
+        for (List<? extends Number> vector : vectorMap.values()) {
+            if (vector != null && !vector.isEmpty()) {
+                dimension = vector.size();
+                break;
+            }
+        }
+        String[] userIds = new String[vectorMap.size()];
+        double[] vectors = new double[vectorMap.size() * dimension];
+        int rows = 0;
+        for (Map.Entry<String, ? extends List<? extends Number>> entry : vectorMap.entrySet()) {
+            List<? extends Number> vector = entry.getValue();
+            if (vector == null || vector.size() != dimension || dimension == 0) {
+                log.info("Leaving out vector of user " + entry.getKey() + " due to invalid size");
+                continue;
+            }
+            int offset = rows * dimension;
+            for (int i = 0; i < dimension; i++)
+                vectors[offset + i] = vector.get(i).doubleValue();
+            userIds[rows++] = entry.getKey();
+        }
+        if (rows < userIds.length) {
+            String[] trimmedIds = new String[rows];
+            System.arraycopy(userIds, 0, trimmedIds, 0, rows);
+            double[] trimmedVectors = new double[rows * dimension];
+            System.arraycopy(vectors, 0, trimmedVectors, 0, rows * dimension);
+            return new VectorModel(trimmedIds, dimension, trimmedVectors);
+        }
+        return new VectorModel(userIds, dimension, vectors);
+    }
+
+    /**
+     * Turns the model back into the map representation stored in the las2peer network storage
+     *
+     * @return Map with user IDs mapping to ArrayLists of double values
+     */
+    public HashMap<String, ArrayList<Double>> toMap() {
+        HashMap<String, ArrayList<Double>> vectorMap = new HashMap<String, ArrayList<Double>>(
+                userIds.length * 4 / 3 + 1);
+        for (int row = 0; row < userIds.length; row++) {
+            ArrayList<Double> vector = new ArrayList<Double>(dimension);
+            int offset = row * dimension;
+            for (int i = 0; i < dimension; i++)
+                vector.add(vectors[offset + i]);
+            vectorMap.put(userIds[row], vector);
+        }
+        return vectorMap;
+    }
+
+    /**
+     * Creates a copy of the model in which the vector of the given user is replaced, or added if the user has none
+     *
+     * @param userId las2peer User Agent ID
+     * @param vector New user vector of the model's dimension
+     * @return The updated copy
+     */
+    public VectorModel withVector(String userId, double[] vector) {
+        if (vector.length != dimension)
+            throw new IllegalArgumentException("Expected vector of size " + dimension + ", got " + vector.length);
+        int row = indexOf(userId);
+        String[] newUserIds = userIds;
+        double[] newVectors;
+        if (row < 0) {
+            row = userIds.length;
+            newUserIds = new String[userIds.length + 1];
+            System.arraycopy(userIds, 0, newUserIds, 0, userIds.length);
+            newUserIds[row] = userId;
+            newVectors = new double[vectors.length + dimension];
+        } else {
+            newVectors = new double[vectors.length];
+        }
+        System.arraycopy(vectors, 0, newVectors, 0, vectors.length);
+        System.arraycopy(vector, 0, newVectors, row * dimension, dimension);
+        return new VectorModel(newUserIds, dimension, newVectors);
+    }
+
+    /**
+     * Creates a copy of the model without the vector of the given user
+     *
+     * @param userId las2peer User Agent ID
+     * @return The updated copy, or this model if it contains no vector for the user
+     */
+    public VectorModel withoutVector(String userId) {
+        int row = indexOf(userId);
+        if (row < 0)
+            return this;
+        String[] newUserIds = new String[userIds.length - 1];
+        System.arraycopy(userIds, 0, newUserIds, 0, row);
+        System.arraycopy(userIds, row + 1, newUserIds, row, newUserIds.length - row);
+        double[] newVectors = new double[vectors.length - dimension];
+        System.arraycopy(vectors, 0, newVectors, 0, row * dimension);
+        System.arraycopy(vectors, (row + 1) * dimension, newVectors, row * dimension,
+                newVectors.length - row * dimension);
+        return new VectorModel(newUserIds, dimension, newVectors);
+    }
+
+    /**
+     * Returns the row of the given user
+     *
+     * @param userId las2peer User Agent ID
+     * @return Row index of the user's vector or -1 if no vector is stored for the user
+     */
+    public int indexOf(String userId) {
+        Integer index = userIndex.get(userId);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Returns the user stored in the given row
+     *
+     * @param index Row index
+     * @return las2peer User Agent ID
+     */
+    public String getUserId(int index) { return userIds[index]; }
+
+    /**
+     * Returns the position of the given row in the vector array
+     *
+     * @param index Row index
+     * @return Offset of the first value of the row in the array returned by getVectors()
+     */
+    public int offset(int index) { return index * dimension; }
+
+    /**
+     * Returns a copy of the vector stored in the given row
+     *
+     * @param index Row index
+     * @return User vector
+     */
+    public double[] getVector(int index) {
+        double[] vector = new double[dimension];
+        System.arraycopy(vectors, index * dimension, vector, 0, dimension);
+        return vector;
+    }
+
+    /**
+     * Returns the backing array, which must not be modified
+     *
+     * @return Row-major vector data
+     */
+    public double[] getVectors() { return vectors; }
+
+    public int getDimension() { return dimension; }
+
+    public int size() { return userIds.length; }
+}
@@ -0,0 +1,226 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import i5.las2peer.logging.L2pLogger;
+import i5.las2peer.services.hyeYouTubeRecommendations.YouTubeRecommendations;
+import i5.las2peer.services.hyeYouTubeRecommendations.util.DataBaseConnection;
+import i5.las2peer.services.hyeYouTubeRecommendations.util.VideoCenters;
+import i5.las2peer.services.hyeYouTubeRecommendations.youTubeData.YouTubeVideo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * VideoCenterPipeline
+ *
+ * This Class computes the word2vec centers of a set of videos in concurrent stages: stored centers are loaded with a
+ * single query, the text of videos without center is fetched and tokenized, the missing centers are computed in batches by the
+ * Word2Vec model and finally written back to the database. Each stage runs on an executor with a
+ * bounded queue, whose submitting thread runs the task itself while the queue is full, so that faster stages are
+ * slowed down to the pace of slower ones instead of piling up work.
+ *
+ */
+
+public class VideoCenterPipeline {
+
+    // Tasks queued per thread of a stage before submitting threads have to help out
+    private static final int QUEUE_SIZE_PER_THREAD = 4;
+
+    private final DataBaseConnection db;
+    private final WordEmbeddings w2v;
+    private final Function<YouTubeVideo, HashSet<String>> tokenizer;
+    private final int dbThreads;
+    private final int w2vThreads;
+
+    // Computed or stored center of each video
+    private final ConcurrentHashMap<String, double[]> videoVectors;
+    private final ConcurrentLinkedQueue<Future<?>> w2vTasks;
+    private final ConcurrentLinkedQueue<Future<?>> writeTasks;
+    // Tokenized videos waiting to be sent to the Word2Vec implementation
+    private LinkedHashMap<String, HashSet<String>> pendingBatch;
+    private volatile boolean modelLoadFailed;
+    private int noComputed;
+
+    private static final L2pLogger log = L2pLogger.getInstance(YouTubeRecommendations.class.getName());
+
+    /**
+     * Constructor - Sets up the stages
+     *
+     * @param db Database from which video data and stored centers are read and to which new centers are written
+     * @param w2v Word2Vec model, either the remote implementation or a local memory-mapped copy
+     * @param tokenizer Function returning the words of the given video
+     * @param dbThreads Number of concurrent database operations, should not exceed the size of the connection pool
+     * @param w2vThreads Number of concurrent requests sent to the Word2Vec implementation
+     */
+    public VideoCenterPipeline(DataBaseConnection db, WordEmbeddings w2v,
+                               Function<YouTubeVideo, HashSet<String>> tokenizer, int dbThreads, int w2vThreads) {
+        this.db = db;
+        this.w2v = w2v;
+        this.tokenizer = tokenizer;
+        this.dbThreads = Math.max(1, dbThreads);
+        this.w2vThreads = Math.max(1, w2vThreads);
+        this.videoVectors = new ConcurrentHashMap<String, double[]>();
+        this.w2vTasks = new ConcurrentLinkedQueue<Future<?>>();
+        this.writeTasks = new ConcurrentLinkedQueue<Future<?>>();
+        this.pendingBatch = new LinkedHashMap<String, HashSet<String>>();
+        this.modelLoadFailed = false;
+        this.noComputed = 0;
+    }
+
+    /**
+     * Creates an executor whose queue holds a limited number of tasks. Tasks submitted while it is full are run by
+     * the submitting thread.
+     *
+     * @param threads Number of threads
+     * @return The executor
+     */
+    private static ThreadPoolExecutor boundedExecutor(int threads) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * QUEUE_SIZE_PER_THREAD),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Looks up or computes the centers of the given videos
+     *
+     * @param videoIds Distinct YouTube video IDs
+     * @return Centers mapped to video IDs, videos whose center could not be computed are left out, or null if the
+     * Word2Vec model could not be loaded or the computation was interrupted
+     */
+    public Map<String, double[]> run(Collection<String> videoIds) {
+        ThreadPoolExecutor dbExecutor = boundedExecutor(dbThreads);
+        ThreadPoolExecutor w2vExecutor = boundedExecutor(w2vThreads);
+        try {
+            // Stored centers are looked up one by one if they cannot be loaded at once
+            VideoCenters storedCenters = db.loadVideoCenters(videoIds);
+            if (storedCenters != null)
+                for (int row = 0; row < storedCenters.size(); row++)
+                    videoVectors.put(storedCenters.getVideoId(row), storedCenters.getVector(row));
+            ArrayList<Future<?>> loadTasks = new ArrayList<Future<?>>(videoIds.size());
+            for (String videoId : videoIds) {
+                if (storedCenters == null)
+                    loadTasks.add(dbExecutor.submit(() -> load(videoId, w2vExecutor, dbExecutor)));
+                else if (storedCenters.rowOf(videoId) < 0)
+                    loadTasks.add(dbExecutor.submit(() -> tokenize(videoId, w2vExecutor, dbExecutor)));
+            }
+            // Batches are only submitted by load tasks, so all but the last one are submitted once these finished
+            awaitAll(loadTasks);
+            submitBatch(flushBatch(), w2vExecutor, dbExecutor);
+            awaitAll(w2vTasks);
+            awaitAll(writeTasks);
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            return null;
+        } finally {
+            dbExecutor.shutdownNow();
+            w2vExecutor.shutdownNow();
+        }
+        if (modelLoadFailed)
+            return null;
+        log.info("Looked up " + (videoVectors.size() - noComputed) + " and computed " + noComputed +
+                " of " + videoIds.size() + " video centers");
+        return videoVectors;
+    }
+
+    /**
+     * Waits for the given tasks to finish
+     *
+     * @param tasks Submitted tasks, which may still be added to while waiting
+     * @throws Exception If a task failed or waiting was interrupted
+     */
+    private static void awaitAll(Collection<Future<?>> tasks) throws Exception {
+        for (Future<?> task : tasks)
+            task.get();
+    }
+
+    /**
+     * First stage: looks up the stored center of the given video, or fetches and tokenizes its text if it has none
+     */
+    private void load(String videoId, ThreadPoolExecutor w2vExecutor, ThreadPoolExecutor dbExecutor) {
+        if (modelLoadFailed)
+            return;
+        ArrayList<Double> storedVector = db.getVideoCenter(videoId);
+        if (storedVector != null && !storedVector.isEmpty()) {
+            videoVectors.put(videoId, toArray(storedVector));
+            return;
+        }
+        tokenize(videoId, w2vExecutor, dbExecutor);
+    }
+
+    /**
+     * First stage for videos without stored center: fetches and tokenizes the text of the given video
+     */
+    private void tokenize(String videoId, ThreadPoolExecutor w2vExecutor, ThreadPoolExecutor dbExecutor) {
+        if (modelLoadFailed)
+            return;
+        YouTubeVideo videoData = db.getVideoById(videoId);
+        if (videoData == null)
+            return;
+        HashSet<String> bagOfWords;
+        try {
+            bagOfWords = tokenizer.apply(videoData);
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            return;
+        }
+        LinkedHashMap<String, HashSet<String>> batch = null;
+        synchronized (this) {
+            pendingBatch.put(videoId, bagOfWords);
+            if (pendingBatch.size() >= Word2VecWrapper.BATCH_SIZE)
+                batch = flushBatch();
+        }
+        submitBatch(batch, w2vExecutor, dbExecutor);
+    }
+
+    /**
+     * @return The tokenized videos collected so far, which are removed from the pending batch
+     */
+    private synchronized LinkedHashMap<String, HashSet<String>> flushBatch() {
+        LinkedHashMap<String, HashSet<String>> batch = pendingBatch;
+        pendingBatch = new LinkedHashMap<String, HashSet<String>>();
+        return batch;
+    }
+
+    private void submitBatch(LinkedHashMap<String, HashSet<String>> batch, ThreadPoolExecutor w2vExecutor,
+                             ThreadPoolExecutor dbExecutor) {
+        if (batch != null && !batch.isEmpty())
+            w2vTasks.add(w2vExecutor.submit(() -> compute(batch, dbExecutor)));
+    }
+
+    /**
+     * Second stage: computes the centers of a batch of videos and passes them on to be stored
+     */
+    private void compute(LinkedHashMap<String, HashSet<String>> batch, ThreadPoolExecutor dbExecutor) {
+        synchronized (w2v) {
+            if (modelLoadFailed || !(w2v.isModelLoaded() || w2v.loadModel())) {
+                modelLoadFailed = true;
+                return;
+            }
+        }
+        log.info("Computing centers of " + batch.size() + " videos");
+        for (Map.Entry<String, ArrayList<Double>> center : w2v.computeWordCenters(batch).entrySet()) {
+            videoVectors.put(center.getKey(), toArray(center.getValue()));
+            // Third stage: stores the center, so that it does not have to be computed again
+            writeTasks.add(dbExecutor.submit(() -> db.addVideoCenter(center.getKey(), center.getValue())));
+            synchronized (this) {
+                noComputed++;
+            }
+        }
+    }
+
+    private static double[] toArray(ArrayList<Double> vector) {
+        double[] values = new double[vector.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = vector.get(i);
+        return values;
+    }
+}
@@ -4,10 +4,16 @@ import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import i5.las2peer.logging.L2pLogger;
 import i5.las2peer.services.hyeYouTubeRecommendations.YouTubeRecommendations;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
@@ -17,7 +23,11 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
 
 /**
  * Word2VecWrapper
@@ -27,10 +37,22 @@ import java.util.LinkedHashMap;
  *
  */
 
-public class Word2VecWrapper {
+public class Word2VecWrapper implements WordEmbeddings {
+
+    // Maximum number of word sets sent in one batch request
+    static final int BATCH_SIZE = 500;
+    // Maximum number of words whose vectors are requested at once
+    private static final int WORD_BATCH_SIZE = 5000;
+    private static final int BUFFER_SIZE = 1 << 16;
 
     private URL w2vUrl;
-    private boolean modelLoaded;
+    private volatile boolean modelLoaded;
+    // Set once the remote implementation turned out not to offer the batch endpoint
+    private volatile boolean batchUnsupported;
+    // Vectors of previously requested words, null if centers are computed remotely
+    private WordVectorCache vectorCache;
+    // Set once the remote implementation turned out not to offer the word vector endpoint
+    private volatile boolean vectorsUnsupported;
     private static final L2pLogger log = L2pLogger.getInstance(YouTubeRecommendations.class.getName());
 
     /**
@@ -41,6 +63,8 @@ public class Word2VecWrapper {
     public Word2VecWrapper(URL w2vUrl) {
         this.w2vUrl = w2vUrl;
         this.modelLoaded = false;
+        this.batchUnsupported = false;
+        this.vectorsUnsupported = false;
     }
 
     /**
@@ -61,6 +85,18 @@ public class Word2VecWrapper {
         return this;
     }
 
+    /**
+     * Sets the cache of word vectors. If set, only the vectors of words not cached yet are requested from the remote
+     * Word2Vec implementation and centers are computed locally.
+     *
+     * @param vectorCache Cache shared by all instances or null to compute centers remotely
+     * @return Updated class instance
+     */
+    public Word2VecWrapper setVectorCache(WordVectorCache vectorCache) {
+        this.vectorCache = vectorCache;
+        return this;
+    }
+
     /**
      * Takes a Set of words and turns it into a Json array
      *
@@ -149,6 +185,11 @@ public class Word2VecWrapper {
      * @return Average of the Word2Vec representation of the given words as a Json array
      */
     public ArrayList<Double> computeWordCenter(HashSet<String> wordList) {
+        if (vectorCache != null && !vectorsUnsupported) {
+            HashMap<String, ArrayList<Double>> centers = computeCachedCenters(Collections.singletonMap("", wordList));
+            if (centers != null)
+                return centers.get("");
+        }
         try {
             // Send request to generate new model
             HttpURLConnection con = (HttpURLConnection) new URL(w2vUrl.toString() + "word2vec").openConnection();
@@ -168,22 +209,259 @@ public class Word2VecWrapper {
             con.connect();
 
             // Read response
-            JsonObject response = new JsonObject();
-            response.addProperty("status", con.getResponseCode());
             if (con.getResponseCode() == 200) {
                 // Read response body
-                BufferedReader br = new BufferedReader(new InputStreamReader((con.getInputStream())));
                 StringBuilder sb = new StringBuilder();
-                String payload;
-                while ((payload = br.readLine()) != null) {
-                    sb.append(payload);
+                try (BufferedReader br = new BufferedReader(new InputStreamReader(con.getInputStream(),
+                        StandardCharsets.UTF_8))) {
+                    String payload;
+                    while ((payload = br.readLine()) != null) {
+                        sb.append(payload);
+                    }
                 }
                 return parseWordVector(sb.toString());
             }
+            discardErrorStream(con);
             return null;
         } catch (Exception e) {
             log.printStackTrace(e);
             return null;
         }
     }
+
+    /**
+     * Computes the centers of many word sets, sending up to BATCH_SIZE sets per request to the batch endpoint of the
+     * Word2Vec implementation. Falls back to one request per set if the remote implementation has no batch endpoint.
+     *
+     * @param wordLists Sets of words mapped to the ID of the YouTube video they are associated with
+     * @return Centers mapped to video IDs, videos whose center could not be computed are left out
+     */
+    public HashMap<String, ArrayList<Double>> computeWordCenters(Map<String, HashSet<String>> wordLists) {
+        if (vectorCache != null && !vectorsUnsupported) {
+            HashMap<String, ArrayList<Double>> centers = computeCachedCenters(wordLists);
+            if (centers != null)
+                return centers;
+        }
+        HashMap<String, ArrayList<Double>> centers = new HashMap<String, ArrayList<Double>>();
+        Iterator<Map.Entry<String, HashSet<String>>> it = wordLists.entrySet().iterator();
+        while (it.hasNext()) {
+            LinkedHashMap<String, HashSet<String>> batch = new LinkedHashMap<String, HashSet<String>>();
+            while (it.hasNext() && batch.size() < BATCH_SIZE) {
+                Map.Entry<String, HashSet<String>> entry = it.next();
+                batch.put(entry.getKey(), entry.getValue());
+            }
+            if (!batchUnsupported && computeBatch(batch, centers))
+                continue;
+            for (Map.Entry<String, HashSet<String>> entry : batch.entrySet()) {
+                ArrayList<Double> center = computeWordCenter(entry.getValue());
+                if (center != null)
+                    centers.put(entry.getKey(), center);
+            }
+        }
+        return centers;
+    }
+
+    /**
+     * Computes the centers of many word sets from cached word vectors, requesting the vectors of words not cached yet
+     * from the Word2Vec implementation. Words not part of the model are left out, like the remote implementation does.
+     *
+     * @param wordLists Sets of words mapped to the ID of the YouTube video they are associated with
+     * @return Centers mapped to video IDs, videos whose center could not be computed are left out, or null if the
+     * missing vectors could not be requested
+     */
+    private HashMap<String, ArrayList<Double>> computeCachedCenters(Map<String, HashSet<String>> wordLists) {
+        // Vectors are copied, so that words evicted by other threads are still available for these centers
+        HashMap<String, float[]> vectors = new HashMap<String, float[]>();
+        LinkedHashSet<String> missingWords = new LinkedHashSet<String>();
+        for (HashSet<String> wordList : wordLists.values()) {
+            for (String word : wordList) {
+                if (word == null || vectors.containsKey(word) || missingWords.contains(word))
+                    continue;
+                float[] vector = vectorCache.get(word);
+                if (vector == null)
+                    missingWords.add(word);
+                else
+                    vectors.put(word, vector);
+            }
+        }
+        Iterator<String> it = missingWords.iterator();
+        while (it.hasNext()) {
+            ArrayList<String> batch = new ArrayList<String>(Math.min(WORD_BATCH_SIZE, missingWords.size()));
+            while (it.hasNext() && batch.size() < WORD_BATCH_SIZE)
+                batch.add(it.next());
+            if (!requestWordVectors(batch, vectors))
+                return null;
+        }
+        if (!missingWords.isEmpty())
+            log.info("Requested vectors of " + missingWords.size() + " words, " +
+                    (vectors.size() - missingWords.size()) + " were cached");
+
+        HashMap<String, ArrayList<Double>> centers = new HashMap<String, ArrayList<Double>>();
+        for (Map.Entry<String, HashSet<String>> entry : wordLists.entrySet()) {
+            double[] sum = null;
+            int noWords = 0;
+            for (String word : entry.getValue()) {
+                float[] vector = word == null ? null : vectors.get(word);
+                if (vector == null || vector.length == 0 || sum != null && vector.length != sum.length)
+                    continue;
+                if (sum == null)
+                    sum = new double[vector.length];
+                for (int i = 0; i < vector.length; i++)
+                    sum[i] += vector[i];
+                noWords++;
+            }
+            if (sum == null)
+                continue;
+            ArrayList<Double> center = new ArrayList<Double>(sum.length);
+            for (double value : sum)
+                center.add(value / noWords);
+            centers.put(entry.getKey(), center);
+        }
+        return centers;
+    }
+
+    /**
+     * Requests the vectors of the given words from the word vector endpoint, as Json array of words. The response
+     * maps each word to its vector (or null if the word is not part of the model). All vectors are added to the cache.
+     *
+     * @param words Words not cached yet
+     * @param vectors Map to which the vectors are added, words not part of the model are mapped to an empty vector
+     * @return False if the request failed and the centers should be computed remotely
+     */
+    private boolean requestWordVectors(ArrayList<String> words, HashMap<String, float[]> vectors) {
+        HttpURLConnection con = null;
+        try {
+            con = (HttpURLConnection) new URL(w2vUrl.toString() + "word2vec/vectors").openConnection();
+            con.setRequestMethod("POST");
+            con.setChunkedStreamingMode(BUFFER_SIZE);
+            con.setDoOutput(true);
+            try (JsonWriter writer = new JsonWriter(new BufferedWriter(
+                    new OutputStreamWriter(con.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE))) {
+                writer.beginArray();
+                for (String word : words)
+                    writer.value(word);
+                writer.endArray();
+            }
+
+            int status = con.getResponseCode();
+            if (status != 200) {
+                discardErrorStream(con);
+                if (status == 404 || status == 405) {
+                    log.info("Word2Vec implementation has no word vector endpoint, computing centers remotely");
+                    vectorsUnsupported = true;
+                }
+                return false;
+            }
+            try (JsonReader reader = new JsonReader(new BufferedReader(
+                    new InputStreamReader(con.getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE))) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String word = reader.nextName();
+                    float[] vector = null;
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                    } else {
+                        ArrayList<Float> values = new ArrayList<Float>();
+                        reader.beginArray();
+                        while (reader.hasNext())
+                            values.add((float) reader.nextDouble());
+                        reader.endArray();
+                        vector = new float[values.size()];
+                        for (int i = 0; i < vector.length; i++)
+                            vector[i] = values.get(i);
+                    }
+                    vectorCache.put(word, vector);
+                    vectors.put(word, vector == null ? WordVectorCache.UNKNOWN : vector);
+                }
+                reader.endObject();
+            }
+            // Words missing from the response are treated as not part of the model
+            for (String word : words)
+                vectors.putIfAbsent(word, WordVectorCache.UNKNOWN);
+            return true;
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            if (con != null)
+                con.disconnect();
+            return false;
+        }
+    }
+
+    /**
+     * Sends one batch of word sets to the batch endpoint, as Json object mapping video IDs to word arrays. The
+     * response maps the same IDs to the centers (or null if no word of a set is known to the model).
+     *
+     * @param batch Sets of words mapped to video IDs
+     * @param centers Map to which the computed centers are added
+     * @return False if the request failed and the centers should be computed one by one
+     */
+    private boolean computeBatch(Map<String, HashSet<String>> batch, HashMap<String, ArrayList<Double>> centers) {
+        HttpURLConnection con = null;
+        try {
+            con = (HttpURLConnection) new URL(w2vUrl.toString() + "word2vec/batch").openConnection();
+            con.setRequestMethod("POST");
+            con.setChunkedStreamingMode(BUFFER_SIZE);
+            con.setDoOutput(true);
+            try (JsonWriter writer = new JsonWriter(new BufferedWriter(
+                    new OutputStreamWriter(con.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE))) {
+                writer.beginObject();
+                for (Map.Entry<String, HashSet<String>> entry : batch.entrySet()) {
+                    writer.name(entry.getKey()).beginArray();
+                    for (String word : entry.getValue())
+                        writer.value(word);
+                    writer.endArray();
+                }
+                writer.endObject();
+            }
+
+            int status = con.getResponseCode();
+            if (status != 200) {
+                discardErrorStream(con);
+                // Older implementations only offer the single set endpoint
+                if (status == 404 || status == 405) {
+                    log.info("Word2Vec implementation has no batch endpoint, computing centers one by one");
+                    batchUnsupported = true;
+                }
+                return false;
+            }
+            try (JsonReader reader = new JsonReader(new BufferedReader(
+                    new InputStreamReader(con.getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE))) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String videoId = reader.nextName();
+                    if (reader.peek() == JsonToken.NULL) {
+                        reader.nextNull();
+                        continue;
+                    }
+                    ArrayList<Double> center = new ArrayList<Double>();
+                    reader.beginArray();
+                    while (reader.hasNext())
+                        center.add(reader.nextDouble());
+                    reader.endArray();
+                    centers.put(videoId, center);
+                }
+                reader.endObject();
+            }
+            return true;
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            if (con != null)
+                con.disconnect();
+            return false;
+        }
+    }
+
+    /**
+     * Reads and closes the body of an unsuccessful response, so that the connection can be reused (keep-alive)
+     *
+     * @param con Connection whose response was not successful
+     */
+    private void discardErrorStream(HttpURLConnection con) {
+        try (InputStream es = con.getErrorStream()) {
+            if (es != null)
+                es.readAllBytes();
+        } catch (IOException e) {
+            log.printStackTrace(e);
+        }
+    }
 }
@@ -0,0 +1,54 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * WordEmbeddings
+ *
+ * This Interface is implemented by the providers of the word2vec model used to compute the semantic centers of the
+ * textual data of YouTube videos
+ *
+ */
+
+public interface WordEmbeddings {
+
+    /**
+     * Check whether model is currently loaded
+     *
+     * @return True if model is loaded, false otherwise
+     */
+    boolean isModelLoaded();
+
+    /**
+     * Makes the word2vec model available for computing centers
+     *
+     * @return Whether model was loaded successfully
+     */
+    boolean loadModel();
+
+    /**
+     * Releases the word2vec model once no more centers are computed
+     *
+     * @return Whether model was freed successfully
+     */
+    boolean freeModel();
+
+    /**
+     * Computes the center of the given words
+     *
+     * @param wordList Set of words associated to a YouTube video
+     * @return Average of the Word2Vec representation of the given words or null if it could not be computed
+     */
+    ArrayList<Double> computeWordCenter(HashSet<String> wordList);
+
+    /**
+     * Computes the centers of many word sets
+     *
+     * @param wordLists Sets of words mapped to the ID of the YouTube video they are associated with
+     * @return Centers mapped to video IDs, videos whose center could not be computed are left out
+     */
+    HashMap<String, ArrayList<Double>> computeWordCenters(Map<String, HashSet<String>> wordLists);
+}
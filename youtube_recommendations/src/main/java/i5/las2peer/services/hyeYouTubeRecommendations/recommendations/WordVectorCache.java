@@ -0,0 +1,132 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * WordVectorCache
+ *
+ * This Class keeps the word2vec vectors of recently used words in memory, so that the remote Word2Vec implementation
+ * only has to be asked for words that were not seen before. Vectors are stored as rows of one float array instead of
+ * one object per word, words unknown to the model are remembered without taking up a row, and the least recently
+ * used words are dropped once the cache is full.
+ *
+ */
+
+public class WordVectorCache {
+
+    // Returned for words known not to be part of the model
+    static final float[] UNKNOWN = new float[0];
+    private static final int NO_ROW = -1;
+    private static final int INITIAL_ROWS = 1024;
+
+    private final int capacity;
+    // Row of each cached word in the slab (NO_ROW for unknown words), in order of last access
+    private final LinkedHashMap<String, Integer> rows;
+    private float[] slab;
+    private int[] freeRows;
+    private int noFreeRows;
+    private int noUsedRows;
+    private int dimension;
+
+    /**
+     * Constructor - Creates an empty cache, memory for the vectors is allocated as words are added
+     *
+     * @param capacity Maximum number of words kept
+     */
+    public WordVectorCache(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.rows = new LinkedHashMap<String, Integer>(16, 0.75f, true);
+        clear();
+    }
+
+    /**
+     * Returns a copy of the vector of the given word
+     *
+     * @param word The word
+     * @return The vector, UNKNOWN if the word is not part of the model or null if the word is not cached
+     */
+    public synchronized float[] get(String word) {
+        Integer row = rows.get(word);
+        if (row == null)
+            return null;
+        if (row == NO_ROW)
+            return UNKNOWN;
+        return Arrays.copyOfRange(slab, row * dimension, (row + 1) * dimension);
+    }
+
+    /**
+     * Adds the vector of the given word. All cached vectors are dropped if the dimension differs from theirs, since
+     * that means that the model was replaced.
+     *
+     * @param word The word
+     * @param vector The vector or null if the word is not part of the model
+     */
+    public synchronized void put(String word, float[] vector) {
+        if (vector != null && vector.length != dimension) {
+            if (dimension > 0)
+                clear();
+            dimension = vector.length;
+        }
+        Integer previous = rows.remove(word);
+        if (previous != null)
+            release(previous);
+        while (rows.size() >= capacity)
+            evictEldest();
+        if (vector == null) {
+            rows.put(word, NO_ROW);
+            return;
+        }
+        int row = allocate();
+        System.arraycopy(vector, 0, slab, row * dimension, dimension);
+        rows.put(word, row);
+    }
+
+    private int allocate() {
+        if (noFreeRows > 0)
+            return freeRows[--noFreeRows];
+        int row = noUsedRows++;
+        if ((long) noUsedRows * dimension > slab.length)
+            slab = Arrays.copyOf(slab, (int) Math.min((long) capacity * dimension,
+                    Math.max((long) INITIAL_ROWS * dimension, slab.length * 2L)));
+        return row;
+    }
+
+    private void release(int row) {
+        if (row == NO_ROW)
+            return;
+        if (noFreeRows == freeRows.length)
+            freeRows = Arrays.copyOf(freeRows, Math.max(16, noFreeRows * 2));
+        freeRows[noFreeRows++] = row;
+    }
+
+    private void evictEldest() {
+        Iterator<Map.Entry<String, Integer>> it = rows.entrySet().iterator();
+        release(it.next().getValue());
+        it.remove();
+    }
+
+    /**
+     * Removes all words from the cache and frees the memory of their vectors
+     */
+    public synchronized void clear() {
+        rows.clear();
+        slab = new float[0];
+        freeRows = new int[0];
+        noFreeRows = 0;
+        noUsedRows = 0;
+        dimension = 0;
+    }
+
+    /**
+     * @return Number of cached words, including words not part of the model
+     */
+    public synchronized int size() { return rows.size(); }
+
+    /**
+     * @return Number of rows taken from the slab so far, rows freed by evicted words are reused before new ones
+     */
+    synchronized int getNoAllocatedRows() { return noUsedRows; }
+}
@@ -0,0 +1,107 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * AlphaCache
+ *
+ * This Class keeps the alpha values of recently active users in memory, so that they do not have to be requested from
+ * the las2peer network storage on every match. Entries expire after a fixed time, since alpha values might be changed
+ * on other nodes, and the least recently used entries are dropped once the cache is full.
+ *
+ */
+
+public class AlphaCache {
+
+    private final int capacity;
+    private final long timeToLive;
+    private final LinkedHashMap<String, Entry> entries;
+    // Incremented on every change of an entry, so that loads can tell whether the entry was written meanwhile
+    private long sequence;
+
+    private static class Entry {
+        // Null if no alpha value is stored for the user
+        private final Double alpha;
+        private final long expires;
+        private final long version;
+
+        private Entry(Double alpha, long expires, long version) {
+            this.alpha = alpha;
+            this.expires = expires;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Constructor - Creates an empty cache
+     *
+     * @param capacity Maximum number of users whose alpha value is kept
+     * @param timeToLive Time in milliseconds after which an entry has to be loaded again
+     */
+    public AlphaCache(int capacity, long timeToLive) {
+        this.capacity = capacity;
+        this.timeToLive = timeToLive;
+        this.sequence = 0;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > AlphaCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the alpha value of the given user, loading it with the given loader if it is not cached or expired. If
+     * the user's entry is written while loading, the written value is kept and returned instead of the loaded one.
+     *
+     * @param userId las2peer User Agent ID
+     * @param loader Function loading the alpha value from the network storage, returns null if none is stored
+     * @return The alpha value or null if none is stored for the user
+     * @throws Exception If the loader fails, failures are not cached
+     */
+    public Double get(String userId, Callable<Double> loader) throws Exception {
+        long now = System.currentTimeMillis();
+        long loadVersion;
+        synchronized (entries) {
+            Entry entry = entries.get(userId);
+            if (entry != null && entry.expires > now)
+                return entry.alpha;
+            loadVersion = sequence;
+        }
+        // Load outside of lock, so that other users are not blocked by the network storage
+        Double alpha = loader.call();
+        synchronized (entries) {
+            Entry entry = entries.get(userId);
+            if (entry != null && entry.version > loadVersion)
+                return entry.expires > System.currentTimeMillis() ? entry.alpha : alpha;
+            entries.put(userId, new Entry(alpha, System.currentTimeMillis() + timeToLive, ++sequence));
+        }
+        return alpha;
+    }
+
+    /**
+     * Stores the given alpha value for the given user (write through after the value was stored in the network)
+     *
+     * @param userId las2peer User Agent ID
+     * @param alpha New alpha value or null if none is stored for the user
+     */
+    public void put(String userId, Double alpha) {
+        synchronized (entries) {
+            entries.put(userId, new Entry(alpha, System.currentTimeMillis() + timeToLive, ++sequence));
+        }
+    }
+
+    /**
+     * Removes the given user from the cache. An expired entry is kept in its place, so that values loaded before are
+     * not inserted again.
+     *
+     * @param userId las2peer User Agent ID
+     */
+    public void invalidate(String userId) {
+        synchronized (entries) {
+            entries.put(userId, new Entry(null, 0, ++sequence));
+        }
+    }
+}
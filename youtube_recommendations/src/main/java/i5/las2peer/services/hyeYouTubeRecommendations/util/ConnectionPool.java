@@ -0,0 +1,146 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.util;
+
+import i5.las2peer.logging.L2pLogger;
+import i5.las2peer.services.hyeYouTubeRecommendations.YouTubeRecommendations;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ConnectionPool
+ *
+ * This Class manages a bounded set of MySQL connections which are borrowed by the DataBaseConnection for the duration
+ * of a single operation. Connections that were idle for a while are validated before they are handed out and closed
+ * once they were not used for a longer time.
+ *
+ */
+
+public class ConnectionPool {
+
+    private static final L2pLogger log = L2pLogger.getInstance(YouTubeRecommendations.class.getName());
+    private static final long BORROW_TIMEOUT_IN_MILLISECONDS = 1000 * 30;
+    private static final long VALIDATION_INTERVAL_IN_MILLISECONDS = 1000 * 30;
+    private static final int VALIDATION_TIMEOUT_IN_SECONDS = 2;
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final long maxIdleTime;
+    // One permit per connection that may be open at the same time
+    private final Semaphore permits;
+    // Most recently used connections are at the front
+    private final LinkedBlockingDeque<PooledConnection> idle;
+
+    /**
+     * Constructor, no connection is opened before the first one is borrowed
+     *
+     * @param url JDBC URL of the database
+     * @param username Name of database user
+     * @param password Password for given user
+     * @param maxSize Maximum number of connections opened at the same time
+     * @param maxIdleTime Time in milliseconds after which unused connections are closed
+     */
+    public ConnectionPool(String url, String username, String password, int maxSize, long maxIdleTime) {
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maxIdleTime = maxIdleTime;
+        this.permits = new Semaphore(Math.max(1, maxSize), true);
+        this.idle = new LinkedBlockingDeque<PooledConnection>();
+    }
+
+    /**
+     * Borrows a connection, which has to be closed to return it to the pool
+     *
+     * @return An open connection
+     * @throws SQLException If no connection could be opened or all connections stayed in use for too long
+     */
+    public PooledConnection borrow() throws SQLException {
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT_IN_MILLISECONDS, TimeUnit.MILLISECONDS))
+                throw new SQLTransientConnectionException("Timed out waiting for a database connection");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLTransientConnectionException("Interrupted while waiting for a database connection");
+        }
+        try {
+            PooledConnection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                if (isUsable(connection))
+                    return connection;
+                connection.closeQuietly();
+            }
+            return new PooledConnection(DriverManager.getConnection(url, username, password), this);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks a connection before handing it out, connections used recently are assumed to still be open
+     */
+    private boolean isUsable(PooledConnection connection) {
+        long idleTime = System.currentTimeMillis() - connection.getLastUsed();
+        if (idleTime > maxIdleTime)
+            return false;
+        if (idleTime < VALIDATION_INTERVAL_IN_MILLISECONDS)
+            return true;
+        try {
+            return connection.getConnection().isValid(VALIDATION_TIMEOUT_IN_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns a borrowed connection to the pool, called when the connection is closed
+     *
+     * @param connection The borrowed connection
+     */
+    void release(PooledConnection connection) {
+        try {
+            if (connection.isBroken() || connection.getConnection().isClosed()) {
+                connection.closeQuietly();
+            } else {
+                connection.reset();
+                idle.offerFirst(connection);
+            }
+        } catch (SQLException e) {
+            log.info("Discarding database connection: " + e.getMessage());
+            connection.closeQuietly();
+        } finally {
+            permits.release();
+        }
+        evictIdle();
+    }
+
+    /**
+     * Closes connections which were not used for longer than the maximum idle time
+     */
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext()) {
+            PooledConnection connection = it.next();
+            if (now - connection.getLastUsed() <= maxIdleTime)
+                break;
+            if (idle.removeLastOccurrence(connection))
+                connection.closeQuietly();
+        }
+    }
+
+    /**
+     * Closes all idle connections, connections currently in use are closed once they are returned
+     */
+    public void clear() {
+        PooledConnection connection;
+        while ((connection = idle.pollFirst()) != null)
+            connection.closeQuietly();
+    }
+}
@@ -13,10 +13,15 @@ import rice.p2p.util.tuples.Tuple;
 import java.io.FileReader;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 
 import static org.apache.commons.lang3.StringUtils.split;
 
@@ -29,13 +34,59 @@ import static org.apache.commons.lang3.StringUtils.split;
 
 public class DataBaseConnection {
 
+    // Version of the integer IDs assigned to users and videos, to be increased whenever existing IDs are reassigned,
+    // so that features stored by integer ID are not applied to different videos
+    public static final int ID_MAPPING_VERSION = 1;
     private static final L2pLogger log = L2pLogger.getInstance(YouTubeRecommendations.class.getName());
-    private Connection connection;
-    private String host;
-    private String database;
-    private String username;
-    private String password;
-    boolean healthy;
+    private static final long MAX_IDLE_TIME_IN_MILLISECONDS = 1000 * 60 * 5;
+    // Time to wait for the database to answer when checking a newly opened connection
+    private static final int VALIDATION_TIMEOUT_IN_SECONDS = 5;
+    // Number of rows sent to the database at once by the bulk insertion functions
+    private static final int BATCH_SIZE = 1000;
+    // Number of rows fetched at once when streaming the ratings table
+    private static final int FETCH_SIZE = 1000;
+    // Number of video IDs resolved to integer IDs per query
+    private static final int LOOKUP_SIZE = 100;
+    // SQL state of transactions rolled back due to a deadlock, which can be retried
+    private static final String DEADLOCK_STATE = "40001";
+    private static final int MAX_DEADLOCK_RETRIES = 3;
+    // Ratings referencing users and videos by their string IDs are moved here when the schema is migrated
+    private static final String LEGACY_RATINGS_TABLE = "ytRatingsLegacy";
+    // Only used for videos not found by SELECT_VIDEO_INT_IDS, since inserting existing rows uses up integer IDs. The
+    // update clause covers videos added concurrently in between.
+    private static final String INSERT_VIDEO = "insert into ytVideos " +
+            "(id, channelId, title, description, thumbnailUrl, categoryId, uploadDate) values (?, ?, ?, ?, ?, ?, ?) " +
+            "on duplicate key update channelId = ?, title = ?, description = ?, thumbnailUrl = ?, categoryId = ?, " +
+            "uploadDate = ?";
+    private static final String UPDATE_VIDEO = "update ytVideos set channelId = ?, title = ?, description = ?, " +
+            "thumbnailUrl = ?, categoryId = ?, uploadDate = ? where id = ?";
+    private static final String INSERT_TAG = "insert ignore into ytTags values (?)";
+    private static final String INSERT_TAG_RELATION = "insert into tagRelations (videoId, tag) values (?, ?)";
+    // Only used for users not found by SELECT_USER, for the same reason as INSERT_VIDEO
+    private static final String INSERT_USER = "insert ignore into ytUsers (userId) values (?)";
+    private static final String SELECT_USER = "select id from ytUsers where userId = ?";
+    private static final String SELECT_VIDEO_INT_IDS = "select id, intId from ytVideos where id in (" +
+            String.join(", ", Collections.nCopies(LOOKUP_SIZE, "?")) + ")";
+    private static final String INSERT_RATING = "insert ignore into ytRatings (userIntId, videoIntId, rating) " +
+            "values (?, ?, ?)";
+    private static final String SELECT_RATINGS = "select u.id as userIntId, u.userId, v.intId as videoIntId, " +
+            "v.id as videoId, r.rating from ytRatings r join ytUsers u on u.id = r.userIntId " +
+            "join ytVideos v on v.intId = r.videoIntId";
+    private static final String SELECT_VIDEO_CENTERS = "select vector from videoVectors where videoId in (" +
+            String.join(", ", Collections.nCopies(LOOKUP_SIZE, "?")) + ")";
+    private static final String SELECT_RATED_VIDEOS = "select distinct videoIntId from ytRatings where userIntId = ?";
+    // Ordered, so that concurrent transactions lock the users' centers in the same order and cannot deadlock each other
+    private static final String SELECT_RATING_USERS = "select distinct r.userIntId from ytRatings r " +
+            "join ytVideos v on v.intId = r.videoIntId where v.id = ? order by r.userIntId";
+    private static final String INSERT_USER_CENTER = "insert ignore into userCenters (userIntId) values (?)";
+    private static final String SELECT_USER_CENTER = "select sum, noVideos from userCenters where userIntId = ? " +
+            "for update";
+    private static final String UPDATE_USER_CENTER = "update userCenters set sum = ?, noVideos = ?, " +
+            "revision = revision + 1 where userIntId = ?";
+    private static final String SELECT_USER_CENTERS = "select u.userId, c.userIntId, c.sum, c.noVideos, c.revision " +
+            "from userCenters c join ytUsers u on u.id = c.userIntId";
+    private final ConnectionPool pool;
+    volatile boolean healthy;
 
     /**
      * Constructor, establishes connection
@@ -44,18 +95,20 @@ public class DataBaseConnection {
      * @param database Name of the database where data is stored
      * @param username Name of database user
      * @param password Password for given user
+     * @param poolSize Maximum number of connections opened at the same time
      */
-    public DataBaseConnection(String host, String database, String username, String password) {
+    public DataBaseConnection(String host, String database, String username, String password, int poolSize) {
         // TODO add variable for DB port, I suppose
-        this.host = host;
-        this.database = database;
-        this.username = username;
-        this.password = password;
-        try {
-            connection = DriverManager.getConnection("jdbc:mysql://" + host + '/' + database +
-                    "?useSSL=false", username, password);
-            healthy = true;
-            log.info("Successfully connected to MySQL database");
+        pool = new ConnectionPool("jdbc:mysql://" + host + '/' + database +
+                "?useSSL=false&rewriteBatchedStatements=true&useCursorFetch=true", username, password,
+                poolSize, MAX_IDLE_TIME_IN_MILLISECONDS);
+        // Open first connection to check whether the database is available
+        try (PooledConnection con = pool.borrow()) {
+            healthy = con.getConnection().isValid(VALIDATION_TIMEOUT_IN_SECONDS);
+            if (healthy)
+                log.info("Successfully connected to MySQL database");
+            else
+                log.warning("MySQL database did not answer");
         } catch (Exception e) {
             log.printStackTrace(e);
             healthy = false;
@@ -72,16 +125,18 @@ public class DataBaseConnection {
     }
 
     /**
-     * Function to recreate database connection
+     * Function to recreate database connections, idle connections which might have timed out are closed
      *
      * @return Whether connection establishment was successful
      */
     public boolean refreshConnection() {
-        try {
-            connection = DriverManager.getConnection("jdbc:mysql://" + host + '/' + database +
-                    "?useSSL=false", username, password);
-            healthy = true;
-            log.info("Successfully re-established MySQL connection");
+        pool.clear();
+        try (PooledConnection con = pool.borrow()) {
+            healthy = con.getConnection().isValid(VALIDATION_TIMEOUT_IN_SECONDS);
+            if (healthy)
+                log.info("Successfully re-established MySQL connection");
+            else
+                log.warning("MySQL database did not answer");
         } catch (Exception e) {
             log.printStackTrace(e);
             healthy = false;
@@ -92,12 +147,13 @@ public class DataBaseConnection {
     /**
      * Helper function to execute the given statement
      *
-     * @param statement The SQL statement to execute
+     * @param statement The SQL statement to execute given as String
      * @return Whether query execution was successful
      */
-    private boolean executeStatement(PreparedStatement statement) {
-        try {
-            statement.execute();
+    private boolean executeStatement(String statement) {
+        try (PooledConnection con = pool.borrow();
+             Statement call = con.getConnection().createStatement()) {
+            call.execute(statement);
             return true;
         } catch (Exception e) {
             log.printStackTrace(e);
@@ -106,53 +162,194 @@ public class DataBaseConnection {
     }
 
     /**
-     * Helper function to execute the given statement
+     * Helper function to check whether the given table has the given column
      *
-     * @param statement The SQL statement to execute given as String
-     * @return Whether query execution was successful
+     * @param table Name of the table
+     * @param column Name of the column
+     * @return Whether the table exists and has the column
      */
-    private boolean executeStatement(String statement) {
-        try {
-            connection.prepareCall(statement).execute();
+    private boolean hasColumn(String table, String column) {
+        return getColumnType(table, column) != null;
+    }
+
+    /**
+     * Helper function to look up the type of the given column
+     *
+     * @param table Name of the table
+     * @param column Name of the column
+     * @return Name of the column's SQL type (e.g., TEXT) or null if the table or column does not exist
+     */
+    private String getColumnType(String table, String column) {
+        try (PooledConnection con = pool.borrow();
+             ResultSet columns = con.getConnection().getMetaData().getColumns(
+                     con.getConnection().getCatalog(), null, table, column)) {
+            return columns.next() ? columns.getString("TYPE_NAME") : null;
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            return null;
+        }
+    }
+
+    /**
+     * Helper function to convert a column of vectors stored as text into the binary format. The text column is
+     * renamed and converted in batches before it is dropped, so that an interrupted migration is resumed on the next
+     * start. Vectors which cannot be parsed are set to null, or their rows are deleted if the column is not nullable.
+     *
+     * @param table Name of the table
+     * @param keyColumn Name of the primary key column
+     * @param column Name of the vector column
+     * @param doublePrecision Whether vectors are stored as 64 bit instead of 32 bit floating point numbers
+     * @param notNull Whether the column must not be null
+     * @return Whether the column is stored in the binary format
+     */
+    private boolean migrateVectorColumn(String table, String keyColumn, String column, boolean doublePrecision,
+                                        boolean notNull) {
+        String textColumn = column + "Text";
+        String type = getColumnType(table, column);
+        if (type != null && type.toUpperCase().contains("TEXT") && !executeStatement("alter table " + table +
+                " change column " + column + ' ' + textColumn + " mediumtext, add column " + column + " blob"))
+            return false;
+        if (!hasColumn(table, textColumn))
             return true;
+
+        log.info("Converting column " + column + " of table " + table + " to binary vectors");
+        int noVectors = 0;
+        int noInvalid = 0;
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement select = con.prepare("select " + keyColumn + ", " + textColumn + " from " + table +
+                    " where " + textColumn + " is not null limit " + BATCH_SIZE);
+            PreparedStatement update = con.prepare("update " + table + " set " + column + " = ?, " + textColumn +
+                    " = null where " + keyColumn + " = ?");
+            int noRows;
+            do {
+                noRows = 0;
+                try (ResultSet resultSet = select.executeQuery()) {
+                    while (resultSet.next()) {
+                        byte[] data = null;
+                        try {
+                            double[] vector = VectorBlob.parseText(resultSet.getString(textColumn));
+                            if (vector.length > 0)
+                                data = doublePrecision ? VectorBlob.encodeDoubles(vector) :
+                                        VectorBlob.encodeFloats(vector);
+                        } catch (NumberFormatException e) {
+                            data = null;
+                        }
+                        if (data == null)
+                            noInvalid++;
+                        update.setBytes(1, data);
+                        update.setObject(2, resultSet.getObject(keyColumn));
+                        update.addBatch();
+                        noRows++;
+                    }
+                }
+                update.executeBatch();
+                noVectors += noRows;
+            } while (noRows > 0);
         } catch (Exception e) {
             log.printStackTrace(e);
             return false;
         }
+        if (noInvalid > 0)
+            log.warning(noInvalid + " vectors in table " + table + " could not be parsed");
+        log.info("Converted " + noVectors + " vectors in table " + table);
+        if (notNull && !(executeStatement("delete from " + table + " where " + column + " is null") &&
+                executeStatement("alter table " + table + " modify " + column + " blob not null")))
+            return false;
+        return executeStatement("alter table " + table + " drop column " + textColumn);
     }
 
     /**
-     * Helper function to transform float array into String for easier storage
+     * Helper function to look up the integer ID of the given user, which is created if it does not exist, yet
      *
-     * @param vector A vector of float values
-     * @return The same vector as a JSON type string
+     * @param con Borrowed database connection
+     * @param userId las2peer User Agent ID
+     * @return Integer ID assigned to the user by the database
+     * @throws SQLException If the user could not be added
      */
-    private String vectorToString(ArrayList<Double> vector) {
-        StringBuilder strBuild = new StringBuilder();
-        strBuild.append('[');
-        for (Double val : vector)
-            strBuild.append(String.valueOf(val) + ',');
-        strBuild.insert(strBuild.length()-1, ']');
-        return strBuild.toString();
+    private int getUserIntId(PooledConnection con, String userId) throws SQLException {
+        int userIntId = selectUserIntId(con, userId);
+        if (userIntId != -1)
+            return userIntId;
+        PreparedStatement statement = con.prepare(INSERT_USER);
+        statement.setString(1, userId);
+        statement.execute();
+        userIntId = selectUserIntId(con, userId);
+        if (userIntId == -1)
+            throw new SQLException("No integer ID stored for user " + userId);
+        return userIntId;
     }
 
     /**
-     * Helper function to transform String into float array
+     * Helper function to look up the integer ID of the given user
      *
-     * @param vectorString A vector as a JSON type string
-     * @return The same vector as float values
+     * @param con Borrowed database connection
+     * @param userId las2peer User Agent ID
+     * @return Integer ID assigned to the user by the database or -1 if the user is not stored
+     * @throws SQLException If the lookup failed
      */
-    private ArrayList<Double> stringToVector(String vectorString) {
-        ArrayList<Double> vector = new ArrayList<Double>();
-        try {
-            String withoutBrackets = vectorString.substring(1, vectorString.length() - 2);
-            for (String val : withoutBrackets.split(","))
-                vector.add(Double.valueOf(val));
-        } catch (Exception e) {
-            log.printStackTrace(e);
-            return null;
+    private int selectUserIntId(PooledConnection con, String userId) throws SQLException {
+        PreparedStatement statement = con.prepare(SELECT_USER);
+        statement.setString(1, userId);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next() ? resultSet.getInt("id") : -1;
         }
-        return vector;
+    }
+
+    /**
+     * Helper function to set the parameters of INSERT_VIDEO or UPDATE_VIDEO to the data of the given video
+     *
+     * @param statement Prepared INSERT_VIDEO or UPDATE_VIDEO statement
+     * @param video YouTube video data information
+     * @param insert Whether the statement is INSERT_VIDEO
+     * @throws SQLException If a parameter could not be set
+     */
+    private static void setVideoParameters(PreparedStatement statement, YouTubeVideo video, boolean insert)
+            throws SQLException {
+        int offset = 0;
+        if (insert) {
+            statement.setString(1, video.getVideoId());
+            offset = 1;
+        }
+        for (int i = 0; i < (insert ? 2 : 1); i++) {
+            statement.setString(offset + 1, video.getChannelId());
+            statement.setString(offset + 2, video.getTitle());
+            statement.setString(offset + 3, video.getDescription());
+            statement.setString(offset + 4, video.getThumbnailUrl());
+            statement.setInt(offset + 5, video.getCategoryId());
+            statement.setString(offset + 6, video.getUploadDate());
+            offset += 6;
+        }
+        if (!insert)
+            statement.setString(7, video.getVideoId());
+    }
+
+    /**
+     * Helper function to look up the integer IDs of the given videos
+     *
+     * @param con Borrowed database connection
+     * @param videoIds YouTube video IDs
+     * @return Map of the video IDs to their integer IDs, videos not stored in the database are missing
+     * @throws SQLException If the lookup failed
+     */
+    private HashMap<String, Integer> getVideoIntIds(PooledConnection con, Collection<String> videoIds)
+            throws SQLException {
+        HashMap<String, Integer> videoIntIds = new HashMap<String, Integer>();
+        PreparedStatement statement = con.prepare(SELECT_VIDEO_INT_IDS);
+        Iterator<String> it = videoIds.iterator();
+        while (it.hasNext()) {
+            // Always bind all parameters, so that the same statement can be used for the last (smaller) lookup
+            String videoId = null;
+            for (int i = 1; i <= LOOKUP_SIZE; i++) {
+                if (it.hasNext())
+                    videoId = it.next();
+                statement.setString(i, videoId);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    videoIntIds.put(resultSet.getString("id"), resultSet.getInt("intId"));
+            }
+        }
+        return videoIntIds;
     }
 
     /**
@@ -167,6 +364,7 @@ public class DataBaseConnection {
         // Try to create tables
         if (!executeStatement("create table ytVideos (" +
                 "id varchar(20) not null primary key," +
+                "intId int not null auto_increment unique," +
                 "channelId varchar(40)," +
                 "title varchar(100)," +
                 "description text," +
@@ -174,6 +372,14 @@ public class DataBaseConnection {
                 "categoryId int," +
                 "uploadDate char(20))"))
             log.warning("Failed to create table ytVideos");
+        // Tables created before integer IDs were introduced
+        if (!hasColumn("ytVideos", "intId") &&
+                !executeStatement("alter table ytVideos add column intId int not null auto_increment unique"))
+            log.warning("Failed to add integer IDs to table ytVideos");
+        if (!executeStatement("create table ytUsers (" +
+                "id int not null primary key auto_increment," +
+                "userId char(128) not null unique)"))
+            log.warning("Failed to create table ytUsers");
         if (!executeStatement("create table ytComments (" +
                 "id varchar(40) not null primary key," +
                 "videoId varchar(20) references ytVideos(id)," +
@@ -182,11 +388,30 @@ public class DataBaseConnection {
                 "publishDate char(20)," +
                 "likeCount int)"))
             log.warning("Failed to create table ytComments");
+        // Ratings used to reference users and videos by their string IDs
+        boolean migrateRatings = hasColumn("ytRatings", "userId");
+        if (migrateRatings && !executeStatement("rename table ytRatings to " + LEGACY_RATINGS_TABLE)) {
+            log.warning("Failed to rename table ytRatings to " + LEGACY_RATINGS_TABLE);
+            migrateRatings = false;
+        }
         if (!executeStatement("create table ytRatings (" +
-                "videoId varchar(20) not null references ytVideos(id)," +
-                "userId char(128) not null," +
-                "rating varchar(20) not null)"))
+                "userIntId int not null references ytUsers(id)," +
+                "videoIntId int not null references ytVideos(intId)," +
+                "rating varchar(20) not null," +
+                "primary key (userIntId, videoIntId, rating)," +
+                "index (videoIntId))"))
             log.warning("Failed to create table ytRatings");
+        if (migrateRatings) {
+            // The legacy table is kept, ratings of videos missing in ytVideos cannot be migrated
+            if (executeStatement("insert ignore into ytUsers (userId) select distinct userId from " +
+                    LEGACY_RATINGS_TABLE) &&
+                    executeStatement("insert ignore into ytRatings (userIntId, videoIntId, rating) " +
+                            "select u.id, v.intId, r.rating from " + LEGACY_RATINGS_TABLE + " r " +
+                            "join ytUsers u on u.userId = r.userId join ytVideos v on v.id = r.videoId"))
+                log.info("Migrated ratings from " + LEGACY_RATINGS_TABLE + " to ytRatings");
+            else
+                log.warning("Failed to migrate ratings from " + LEGACY_RATINGS_TABLE);
+        }
         if (!executeStatement("create table ytTags (tag varchar (64) not null primary key)"))
             log.warning("Failed to create table ytTags");
         if (!executeStatement("create table tagRelations (" +
@@ -196,8 +421,21 @@ public class DataBaseConnection {
             log.warning("Failed to create table tagRelations");
         if (!executeStatement("create table videoVectors (" +
                 "videoId varchar(20) not null primary key references ytVideos(id)," +
-                "vector text not null)"))
+                "vector blob not null)"))
             log.warning("Failed to create table videoVectors");
+        // Vectors used to be stored as text, centers which could not be converted are computed again
+        if (!migrateVectorColumn("videoVectors", "videoId", "vector", false, true))
+            log.warning("Failed to convert table videoVectors to binary vectors");
+        // Filled by the first full word2vec computation and kept up to date as ratings and video centers are added
+        if (!executeStatement("create table userCenters (" +
+                "userIntId int not null primary key references ytUsers(id)," +
+                "sum blob," +
+                "noVideos int not null default 0," +
+                "revision int not null default 0," +
+                "publishedRevision int not null default 0)"))
+            log.warning("Failed to create table userCenters");
+        if (!migrateVectorColumn("userCenters", "userIntId", "sum", true, false))
+            log.warning("Failed to convert table userCenters to binary vectors");
         if (!executeStatement("create table userDbUpdates (" +
                 "id int not null primary key auto_increment," +
                 "userId char(128) not null," +
@@ -226,25 +464,33 @@ public class DataBaseConnection {
     public boolean addVideo(YouTubeVideo video) {
         if (!healthy)
             return false;
-        try {
+        try (PooledConnection con = pool.borrow()) {
             // Add video data ...
-            PreparedStatement statement = connection.prepareStatement(
-                    "insert into ytVideos values (?, ?, ?, ?, ?, ?, ?) on duplicate key update channelId = ?, " +
-                    " title = ?, description = ?, thumbnailUrl = ?, categoryId = ?, uploadDate = ?");
-            statement.setString(1, video.getVideoId());
-            statement.setString(2, video.getChannelId());
-            statement.setString(3, video.getTitle());
-            statement.setString(4, video.getDescription());
-            statement.setString(5, video.getThumbnailUrl());
-            statement.setInt(6, video.getCategoryId());
-            statement.setString(7, video.getUploadDate());
-            statement.setString(8, video.getChannelId());
-            statement.setString(9, video.getTitle());
-            statement.setString(10, video.getDescription());
-            statement.setString(11, video.getThumbnailUrl());
-            statement.setInt(12, video.getCategoryId());
-            statement.setString(13, video.getUploadDate());
+            boolean stored = !getVideoIntIds(con, Collections.singletonList(video.getVideoId())).isEmpty();
+            PreparedStatement statement = con.prepare(stored ? UPDATE_VIDEO : INSERT_VIDEO);
+            setVideoParameters(statement, video, !stored);
             statement.execute();
+
+            // ... and tags if there are any
+            String[] tags = video.getTags();
+            if (tags == null || tags.length == 0)
+                return true;
+            for (int i = 0; i < tags.length; ++i) {
+                try {
+                    statement = con.prepare(INSERT_TAG);
+                    statement.setString(1, tags[i]);
+                    statement.execute();
+
+                    statement = con.prepare(INSERT_TAG_RELATION);
+                    statement.setString(1, video.getVideoId());
+                    statement.setString(2, tags[i]);
+                    statement.execute();
+                } catch (java.sql.SQLNonTransientConnectionException e) {
+                    throw e;
+                } catch (Exception e) {
+                    log.printStackTrace(e);
+                }
+            }
         } catch (java.sql.SQLNonTransientConnectionException e) {
             log.info("Connection timed out, trying to reconnect");
             if (refreshConnection())
@@ -254,24 +500,6 @@ public class DataBaseConnection {
             log.printStackTrace(e);
             return false;
         }
-        // ... and tags if there are any
-        String[] tags = video.getTags();
-        if (tags == null || tags.length == 0)
-            return true;
-        for (int i = 0; i < tags.length; ++i) {
-            try {
-                PreparedStatement statement = connection.prepareStatement("insert ignore into ytTags values (?)");
-                statement.setString(1, tags[i]);
-                statement.execute();
-
-                statement = connection.prepareStatement("insert into tagRelations (videoId, tag) values (?, ?)");
-                statement.setString(1, video.getVideoId());
-                statement.setString(2, tags[i]);
-                statement.execute();
-            } catch (Exception e) {
-                log.printStackTrace(e);
-            }
-        }
         // Incomplete set of tags might be added without caller learning about it TODO somehow address this
         return true;
     }
@@ -281,18 +509,21 @@ public class DataBaseConnection {
      *
      * @param videoId YouTube video ID of rated video
      * @param userId las2peer ID of rating User Agent
-     * @return Whether insertion was successful
+     * @return Whether a new rating was inserted
      */
     public boolean addRating(String videoId, String userId, String rating) {
         if (!healthy)
             return false;
-        try {
-            PreparedStatement statement = connection.prepareStatement("insert into ytRatings values (?, ?, ?)");
-            statement.setString(1, videoId);
-            statement.setString(2, userId);
-            statement.setString(3, rating);
-            statement.execute();
-            return true;
+        try (PooledConnection con = pool.borrow()) {
+            int userIntId = getUserIntId(con, userId);
+            PreparedStatement statement = con.prepare(
+                    "insert ignore into ytRatings (userIntId, videoIntId, rating) " +
+                    "select ?, intId, ? from ytVideos where id = ?");
+            statement.setInt(1, userIntId);
+            statement.setString(2, rating);
+            statement.setString(3, videoId);
+            // Nothing is inserted if the video is not stored in the database or the rating already exists
+            return statement.executeUpdate() > 0;
         } catch (java.sql.SQLNonTransientConnectionException e) {
             log.info("Connection timed out, trying to reconnect");
             if (refreshConnection())
@@ -304,6 +535,285 @@ public class DataBaseConnection {
         }
     }
 
+    /**
+     * Add data of several YouTube videos to MySQL database in a single transaction
+     *
+     * @param videos YouTube video data information
+     * @return Whether insertion was successful
+     */
+    public boolean addVideos(Collection<YouTubeVideo> videos) {
+        if (!healthy)
+            return false;
+        try (PooledConnection con = pool.borrow()) {
+            con.getConnection().setAutoCommit(false);
+            insertVideos(con, videos);
+            con.getConnection().commit();
+            return true;
+        } catch (java.sql.SQLNonTransientConnectionException e) {
+            log.info("Connection timed out, trying to reconnect");
+            if (refreshConnection())
+                return addVideos(videos);
+            return false;
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            return false;
+        }
+    }
+
+    /**
+     * Add relations between several YouTube videos and a las2peer user to MySQL database in a single transaction
+     *
+     * @param userId las2peer ID of rating User Agent
+     * @param ratings Map of ratings to the YouTube video IDs rated that way (a video can be rated in multiple ways)
+     * @return Whether insertion was successful
+     */
+    public boolean addRatings(String userId, Map<String, ? extends Collection<String>> ratings) {
+        if (!healthy)
+            return false;
+        try (PooledConnection con = pool.borrow()) {
+            con.getConnection().setAutoCommit(false);
+            insertRatings(con, userId, ratings);
+            con.getConnection().commit();
+            return true;
+        } catch (java.sql.SQLNonTransientConnectionException e) {
+            log.info("Connection timed out, trying to reconnect");
+            if (refreshConnection())
+                return addRatings(userId, ratings);
+            return false;
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            return false;
+        }
+    }
+
+    /**
+     * Add the YouTube watch data obtained for a las2peer user to MySQL database in a single transaction
+     *
+     * @param userId las2peer ID of rating User Agent
+     * @param videoData Map of ratings to the YouTube videos rated that way, as obtained from the YouTube API
+     * @return Number of ratings added or -1 on failure
+     */
+    public int addWatchData(String userId, Map<String, ? extends Collection<YouTubeVideo>> videoData) {
+        if (!healthy)
+            return -1;
+
+        // Videos can be rated in multiple ways, but only have to be stored once
+        LinkedHashMap<String, YouTubeVideo> videos = new LinkedHashMap<String, YouTubeVideo>();
+        HashMap<String, ArrayList<String>> ratings = new HashMap<String, ArrayList<String>>();
+        int noRatings = 0;
+        for (String rating : videoData.keySet()) {
+            if (videoData.get(rating) == null)
+                continue;
+            ArrayList<String> videoIds = new ArrayList<String>();
+            for (YouTubeVideo video : videoData.get(rating)) {
+                videos.put(video.getVideoId(), video);
+                videoIds.add(video.getVideoId());
+            }
+            ratings.put(rating, videoIds);
+            noRatings += videoIds.size();
+        }
+
+        try (PooledConnection con = pool.borrow()) {
+            con.getConnection().setAutoCommit(false);
+            insertVideos(con, videos.values());
+            insertRatings(con, userId, ratings);
+            con.getConnection().commit();
+            return noRatings;
+        } catch (java.sql.SQLNonTransientConnectionException e) {
+            log.info("Connection timed out, trying to reconnect");
+            if (refreshConnection())
+                return addWatchData(userId, videoData);
+            return -1;
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            return -1;
+        }
+    }
+
+    /**
+     * Helper function to add the given videos and their tags as batches on the given connection. Videos which are
+     * already stored are updated instead, so that no integer IDs are used up.
+     *
+     * @param con Borrowed database connection, the caller is responsible for committing
+     * @param videos YouTube video data information
+     * @throws SQLException If any of the insertions failed
+     */
+    private void insertVideos(PooledConnection con, Collection<YouTubeVideo> videos) throws SQLException {
+        ArrayList<String> videoIds = new ArrayList<String>(videos.size());
+        for (YouTubeVideo video : videos)
+            videoIds.add(video.getVideoId());
+        Set<String> storedVideos = getVideoIntIds(con, videoIds).keySet();
+        PreparedStatement insertStatement = con.prepare(INSERT_VIDEO);
+        PreparedStatement updateStatement = con.prepare(UPDATE_VIDEO);
+        PreparedStatement tagStatement = con.prepare(INSERT_TAG);
+        PreparedStatement relationStatement = con.prepare(INSERT_TAG_RELATION);
+        int noInserted = 0;
+        int noUpdated = 0;
+        int noTags = 0;
+        for (YouTubeVideo video : videos) {
+            if (storedVideos.contains(video.getVideoId())) {
+                setVideoParameters(updateStatement, video, false);
+                updateStatement.addBatch();
+                if (++noUpdated % BATCH_SIZE == 0)
+                    updateStatement.executeBatch();
+            } else {
+                setVideoParameters(insertStatement, video, true);
+                insertStatement.addBatch();
+                if (++noInserted % BATCH_SIZE == 0)
+                    insertStatement.executeBatch();
+            }
+
+            String[] tags = video.getTags();
+            if (tags == null)
+                continue;
+            for (String tag : tags) {
+                tagStatement.setString(1, tag);
+                tagStatement.addBatch();
+                relationStatement.setString(1, video.getVideoId());
+                relationStatement.setString(2, tag);
+                relationStatement.addBatch();
+                if (++noTags % BATCH_SIZE == 0) {
+                    tagStatement.executeBatch();
+                    relationStatement.executeBatch();
+                }
+            }
+        }
+        insertStatement.executeBatch();
+        updateStatement.executeBatch();
+        tagStatement.executeBatch();
+        relationStatement.executeBatch();
+    }
+
+    /**
+     * Helper function to add the given ratings as a batch on the given connection
+     *
+     * @param con Borrowed database connection, the caller is responsible for committing
+     * @param userId las2peer ID of rating User Agent
+     * @param ratings Map of ratings to the YouTube video IDs rated that way
+     * @throws SQLException If any of the insertions failed
+     */
+    private void insertRatings(PooledConnection con, String userId, Map<String, ? extends Collection<String>> ratings)
+            throws SQLException {
+        int userIntId = getUserIntId(con, userId);
+        HashSet<String> videoIds = new HashSet<String>();
+        for (Collection<String> ratedVideos : ratings.values())
+            if (ratedVideos != null)
+                videoIds.addAll(ratedVideos);
+        HashMap<String, Integer> videoIntIds = getVideoIntIds(con, videoIds);
+        // Videos the user did not rate before are added to the user's word2vec center
+        HashSet<Integer> ratedVideos = new HashSet<Integer>();
+        PreparedStatement ratedStatement = con.prepare(SELECT_RATED_VIDEOS);
+        ratedStatement.setInt(1, userIntId);
+        try (ResultSet resultSet = ratedStatement.executeQuery()) {
+            while (resultSet.next())
+                ratedVideos.add(resultSet.getInt("videoIntId"));
+        }
+        ArrayList<String> newVideoIds = new ArrayList<String>();
+        for (Map.Entry<String, Integer> video : videoIntIds.entrySet())
+            if (!ratedVideos.contains(video.getValue()))
+                newVideoIds.add(video.getKey());
+
+        PreparedStatement statement = con.prepare(INSERT_RATING);
+        int noRatings = 0;
+        for (String rating : ratings.keySet()) {
+            if (ratings.get(rating) == null)
+                continue;
+            for (String videoId : ratings.get(rating)) {
+                Integer videoIntId = videoIntIds.get(videoId);
+                if (videoIntId == null) {
+                    log.warning("Video " + videoId + " is not stored, skipping " + rating + " rating");
+                    continue;
+                }
+                statement.setInt(1, userIntId);
+                statement.setInt(2, videoIntId);
+                statement.setString(3, rating);
+                statement.addBatch();
+                if (++noRatings % BATCH_SIZE == 0)
+                    statement.executeBatch();
+            }
+        }
+        statement.executeBatch();
+        if (!newVideoIds.isEmpty())
+            addToUserCenter(con, userIntId, getVideoCenters(con, newVideoIds));
+    }
+
+    /**
+     * Helper function to look up the stored word2vec centers of the given videos
+     *
+     * @param con Borrowed database connection
+     * @param videoIds YouTube video IDs
+     * @return Centers of the videos which have one
+     * @throws SQLException If the lookup failed
+     */
+    private ArrayList<double[]> getVideoCenters(PooledConnection con, Collection<String> videoIds)
+            throws SQLException {
+        ArrayList<double[]> videoVectors = new ArrayList<double[]>();
+        PreparedStatement statement = con.prepare(SELECT_VIDEO_CENTERS);
+        Iterator<String> it = videoIds.iterator();
+        while (it.hasNext()) {
+            // Always bind all parameters, so that the same statement can be used for the last (smaller) lookup
+            String videoId = null;
+            for (int i = 1; i <= LOOKUP_SIZE; i++) {
+                if (it.hasNext())
+                    videoId = it.next();
+                statement.setString(i, videoId);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    videoVectors.add(VectorBlob.decode(resultSet.getBytes("vector")));
+            }
+        }
+        return videoVectors;
+    }
+
+    /**
+     * Helper function to add the given video centers to the running sum of the given user and mark the user as
+     * changed. The user's row is locked until the caller commits.
+     *
+     * @param con Borrowed database connection in a transaction, the caller is responsible for committing
+     * @param userIntId Integer ID assigned to the user by the database
+     * @param videoVectors Word2Vec centers of videos the user newly rated, may be empty
+     * @throws SQLException If the update failed
+     */
+    private void addToUserCenter(PooledConnection con, int userIntId, Collection<double[]> videoVectors)
+            throws SQLException {
+        PreparedStatement statement = con.prepare(INSERT_USER_CENTER);
+        statement.setInt(1, userIntId);
+        statement.executeUpdate();
+        statement = con.prepare(SELECT_USER_CENTER);
+        statement.setInt(1, userIntId);
+        double[] sum = null;
+        int noVideos = 0;
+        try (ResultSet resultSet = statement.executeQuery()) {
+            if (resultSet.next() && resultSet.getBytes("sum") != null) {
+                sum = VectorBlob.decode(resultSet.getBytes("sum"));
+                noVideos = resultSet.getInt("noVideos");
+            }
+        }
+        for (double[] videoVector : videoVectors) {
+            if (sum == null || noVideos == 0) {
+                sum = videoVector.clone();
+                noVideos = 1;
+                continue;
+            }
+            if (videoVector.length != sum.length) {
+                log.warning("Invalid vector size (" + videoVector.length + ") for center of user " + userIntId);
+                continue;
+            }
+            for (int i = 0; i < sum.length; i++)
+                sum[i] += videoVector[i];
+            noVideos++;
+        }
+        statement = con.prepare(UPDATE_USER_CENTER);
+        if (sum == null)
+            statement.setNull(1, Types.VARBINARY);
+        else
+            statement.setBytes(1, VectorBlob.encodeDoubles(sum));
+        statement.setInt(2, noVideos);
+        statement.setInt(3, userIntId);
+        statement.executeUpdate();
+    }
+
     /**
      * Add YouTubeComment to MySQL database
      *
@@ -313,8 +823,8 @@ public class DataBaseConnection {
     public boolean addComment(YouTubeComment comment) {
         if (!healthy)
             return false;
-        try {
-            PreparedStatement statement = connection.prepareStatement(
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare(
                     "insert into ytComments values (?, ?, ?, ?, ?, ?)");
             statement.setString(1, comment.getCommentId());
             statement.setString(2, comment.getVideoId());
@@ -343,19 +853,54 @@ public class DataBaseConnection {
      * @return Whether insertion was successful
      */
     public boolean addVideoCenter(String videoId, ArrayList<Double> videoVector) {
+        return addVideoCenter(videoId, videoVector, 0);
+    }
+
+    /**
+     * Adds the given video center like addVideoCenter(videoId, videoVector), retrying if the transaction was rolled
+     * back due to a deadlock
+     *
+     * @param videoId YouTube video ID
+     * @param videoVector Computed Word2Vec center for textual YouTube video data
+     * @param attempt Number of previous attempts rolled back due to a deadlock
+     * @return Whether insertion was successful
+     */
+    private boolean addVideoCenter(String videoId, ArrayList<Double> videoVector, int attempt) {
         if (!healthy)
             return false;
-        try {
-            PreparedStatement statement = connection.prepareStatement(
+        try (PooledConnection con = pool.borrow()) {
+            con.getConnection().setAutoCommit(false);
+            PreparedStatement statement = con.prepare(
                     "insert into videoVectors values (?, ?)");
+            byte[] data = VectorBlob.encodeFloats(videoVector);
             statement.setString(1, videoId);
-            statement.setString(2, vectorToString(videoVector));
+            statement.setBytes(2, data);
             statement.execute();
+            // Users who rated the video before its center was known
+            ArrayList<Integer> userIntIds = new ArrayList<Integer>();
+            statement = con.prepare(SELECT_RATING_USERS);
+            statement.setString(1, videoId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    userIntIds.add(resultSet.getInt("userIntId"));
+            }
+            // Add the stored (rounded) values, like a full computation reading the center back would
+            for (int userIntId : userIntIds)
+                addToUserCenter(con, userIntId, Collections.singletonList(VectorBlob.decode(data)));
+            con.getConnection().commit();
             return true;
         } catch (java.sql.SQLNonTransientConnectionException e) {
             log.info("Connection timed out, trying to reconnect");
             if (refreshConnection())
-                return addVideoCenter(videoId, videoVector);
+                return addVideoCenter(videoId, videoVector, attempt);
+            return false;
+        } catch (SQLException e) {
+            // The transaction was rolled back when the connection was returned
+            if (DEADLOCK_STATE.equals(e.getSQLState()) && attempt < MAX_DEADLOCK_RETRIES) {
+                log.info("Deadlock while adding center of video " + videoId + ", retrying");
+                return addVideoCenter(videoId, videoVector, attempt + 1);
+            }
+            log.printStackTrace(e);
             return false;
         } catch (Exception e) {
             log.printStackTrace(e);
@@ -372,15 +917,16 @@ public class DataBaseConnection {
     public int addDbUpdate(String userId) {
         if (!healthy)
             return -1;
-        try {
-            PreparedStatement statement = connection.prepareStatement("insert into userDbUpdates (userId) values (?)");
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare("insert into userDbUpdates (userId) values (?)");
             statement.setString(1, userId);
             statement.execute();
-            // Get latest entry
-            statement = connection.prepareStatement("select max(id) as 'MaxId' from userDbUpdates");
-            ResultSet resultSet = statement.executeQuery();
-            resultSet.next();
-            return resultSet.getInt("MaxId");
+            // Get entry inserted on this connection
+            statement = con.prepare("select last_insert_id() as 'MaxId'");
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getInt("MaxId");
+            }
         } catch (java.sql.SQLNonTransientConnectionException e) {
             log.info("Connection timed out, trying to reconnect");
             if (refreshConnection())
@@ -402,8 +948,8 @@ public class DataBaseConnection {
     public boolean updateDbUpdate(int id, String status) {
         if (!healthy)
             return false;
-        try {
-            PreparedStatement statement = connection.prepareStatement(
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare(
                     "update userDbUpdates set status = ? where id = ?");
             statement.setString(1, status);
             statement.setInt(2, id);
@@ -432,8 +978,8 @@ public class DataBaseConnection {
     public boolean addOneTimeCode(String id, double alpha, double cf, double w2v) {
         if (!healthy)
             return false;
-        try {
-            PreparedStatement statement = connection.prepareStatement(
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare(
                     "insert into oneTimeCodes (id, alpha, cf, w2v) values (?,?,?,?)");
             statement.setString(1, id);
             statement.setDouble(2, alpha);
@@ -463,8 +1009,8 @@ public class DataBaseConnection {
     public boolean updateObservationData(String id, int noVideos, int noHelpful) {
         if (!healthy)
             return false;
-        try {
-            PreparedStatement statement = connection.prepareStatement(
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare(
                     "insert into oneTimeCodes (id, noVideos, noHelpful) values (?, ?, ?) " +
                     " on duplicate key update noVideos = ?, noHelpful = ?");
             statement.setString(1, id);
@@ -503,28 +1049,29 @@ public class DataBaseConnection {
         String uploadDate = null;
         ArrayList<String> tags = new ArrayList<String>();
 
-        ResultSet resultSet;
-        try {
+        try (PooledConnection con = pool.borrow()) {
             // Get video information
-            PreparedStatement statement = connection.prepareStatement(
+            PreparedStatement statement = con.prepare(
                     "select * from ytVideos where id = ?");
             statement.setString(1, videoId);
-            resultSet = statement.executeQuery();
-            resultSet.next();
-            channelId = resultSet.getString("channelId");
-            title = resultSet.getString("title");
-            description = resultSet.getString("description");
-            thumbnailUrl = resultSet.getString("thumbnailUrl");
-            categoryId = resultSet.getInt("categoryId");
-            uploadDate = resultSet.getString("uploadDate");
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                channelId = resultSet.getString("channelId");
+                title = resultSet.getString("title");
+                description = resultSet.getString("description");
+                thumbnailUrl = resultSet.getString("thumbnailUrl");
+                categoryId = resultSet.getInt("categoryId");
+                uploadDate = resultSet.getString("uploadDate");
+            }
 
             // Get video tags
-            statement = connection.prepareStatement(
+            statement = con.prepare(
                     "select * from tagRelations where videoId = ?");
             statement.setString(1, videoId);
-            resultSet = statement.executeQuery();
-            while (resultSet.next())
-                tags.add(resultSet.getString("tag"));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    tags.add(resultSet.getString("tag"));
+            }
         } catch (java.sql.SQLNonTransientConnectionException e) {
             log.info("Connection timed out, trying to reconnect");
             if (refreshConnection())
@@ -550,12 +1097,13 @@ public class DataBaseConnection {
             return null;
 
         HashMap<String, String> videoRatings = new HashMap<String, String>();
-        try {
-            PreparedStatement statement = connection.prepareStatement("select * from ytRatings where videoId = ?");
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare(SELECT_RATINGS + " where v.id = ?");
             statement.setString(1, videoId);
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next())
-                videoRatings.put(resultSet.getString("userId"), resultSet.getString("rating"));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    videoRatings.put(resultSet.getString("userId"), resultSet.getString("rating"));
+            }
         } catch (java.sql.SQLNonTransientConnectionException e) {
             log.info("Connection timed out, trying to reconnect");
             if (refreshConnection())
@@ -580,13 +1128,13 @@ public class DataBaseConnection {
             return null;
 
         HashMap<String, String> userRatings = new HashMap<String, String>();
-        try {
-            PreparedStatement statement = connection.prepareStatement(
-                    "select * from ytRatings where userId = ?");
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare(SELECT_RATINGS + " where u.userId = ?");
             statement.setString(1, userId);
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next())
-                userRatings.put(resultSet.getString("videoId"), resultSet.getString("rating"));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    userRatings.put(resultSet.getString("videoId"), resultSet.getString("rating"));
+            }
         } catch (java.sql.SQLNonTransientConnectionException e) {
             log.info("Connection timed out, trying to reconnect");
             if (refreshConnection())
@@ -600,6 +1148,41 @@ public class DataBaseConnection {
         return userRatings;
     }
 
+    /**
+     * Retrieve all stored ratings for specified user ID together with the integer IDs assigned by the database
+     *
+     * @param userId las2peer User Agent ID
+     * @return The user's ratings (empty if there are none, in which case the user integer ID is -1) or null on failure
+     */
+    public UserRatings getUserRatings(String userId) {
+        if (!healthy)
+            return null;
+
+        UserRatings userRatings = null;
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare(SELECT_RATINGS + " where u.userId = ?");
+            statement.setString(1, userId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    if (userRatings == null)
+                        userRatings = new UserRatings(userId, resultSet.getInt("userIntId"));
+                    userRatings.add(resultSet.getString("videoId"), resultSet.getInt("videoIntId"),
+                            resultSet.getString("rating"));
+                }
+            }
+        } catch (java.sql.SQLNonTransientConnectionException e) {
+            log.info("Connection timed out, trying to reconnect");
+            if (refreshConnection())
+                return getUserRatings(userId);
+            return null;
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            return null;
+        }
+
+        return userRatings == null ? new UserRatings(userId, -1) : userRatings;
+    }
+
     /**
      * Retrieve all YouTube comments for specified video ID
      *
@@ -611,18 +1194,19 @@ public class DataBaseConnection {
             return null;
 
         ArrayList<YouTubeComment> result = new ArrayList<YouTubeComment>();
-        try {
-            PreparedStatement statement = connection.prepareStatement("select * from ytComments where videoId = ?");
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare("select * from ytComments where videoId = ?");
             statement.setString(1, videoId);
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next())
-                result.add(new YouTubeComment(
-                        resultSet.getString("id"),
-                        videoId,
-                        resultSet.getString("content"),
-                        resultSet.getString("channelId"),
-                        resultSet.getString("publishDate"),
-                        resultSet.getInt("likeCount")));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    result.add(new YouTubeComment(
+                            resultSet.getString("id"),
+                            videoId,
+                            resultSet.getString("content"),
+                            resultSet.getString("channelId"),
+                            resultSet.getString("publishDate"),
+                            resultSet.getInt("likeCount")));
+            }
         } catch (java.sql.SQLNonTransientConnectionException e) {
             log.info("Connection timed out, trying to reconnect");
             if (refreshConnection())
@@ -647,20 +1231,20 @@ public class DataBaseConnection {
             return null;
 
         HashMap<String, HashMap<String, String>> ratings = new HashMap<String, HashMap<String, String>>();
-        try {
-            PreparedStatement statement = connection.prepareStatement(
-                    "select * from ytRatings");
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next()) {
-                String userId = resultSet.getString("userId");
-                String videoId = resultSet.getString("videoId");
-                String rating = resultSet.getString("rating");
-                if (ratings.containsKey(userId)) {
-                    ratings.get(userId).put(videoId, rating);
-                } else {
-                    HashMap<String, String> userRatings = new HashMap<String, String>();
-                    userRatings.put(videoId, rating);
-                    ratings.put(userId, userRatings);
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare(SELECT_RATINGS);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String userId = resultSet.getString("userId");
+                    String videoId = resultSet.getString("videoId");
+                    String rating = resultSet.getString("rating");
+                    if (ratings.containsKey(userId)) {
+                        ratings.get(userId).put(videoId, rating);
+                    } else {
+                        HashMap<String, String> userRatings = new HashMap<String, String>();
+                        userRatings.put(videoId, rating);
+                        ratings.put(userId, userRatings);
+                    }
                 }
             }
         } catch (java.sql.SQLNonTransientConnectionException e) {
@@ -676,6 +1260,82 @@ public class DataBaseConnection {
         return ratings;
     }
 
+    /**
+     * Checks whether any ratings are stored in MySQL database
+     *
+     * @return Whether ratings are stored or null on failure
+     */
+    public Boolean hasRatings() {
+        if (!healthy)
+            return null;
+
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare("select exists (select * from ytRatings) as 'HasRatings'");
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getBoolean("HasRatings");
+            }
+        } catch (java.sql.SQLNonTransientConnectionException e) {
+            log.info("Connection timed out, trying to reconnect");
+            if (refreshConnection())
+                return hasRatings();
+            return null;
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            return null;
+        }
+    }
+
+    /**
+     * Streams all stored ratings from MySQL database to the given consumer, one user at a time. Rows are read through
+     * a server-side cursor, so only the ratings of the current user are kept in memory. The consumer may use this
+     * DataBaseConnection itself, which borrows another connection from the pool.
+     *
+     * @param consumer Function called with the ratings of each user
+     * @return Number of users passed to the consumer or -1 on failure or if the consumer stopped early
+     */
+    public int streamRatings(UserRatingsConsumer consumer) {
+        if (!healthy)
+            return -1;
+
+        int noUsers = 0;
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare(SELECT_RATINGS + " order by r.userIntId");
+            statement.setFetchSize(FETCH_SIZE);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                UserRatings userRatings = null;
+                while (resultSet.next()) {
+                    int userIntId = resultSet.getInt("userIntId");
+                    if (userRatings == null || userRatings.getUserIntId() != userIntId) {
+                        if (userRatings != null) {
+                            noUsers++;
+                            if (!consumer.accept(userRatings))
+                                return -1;
+                        }
+                        userRatings = new UserRatings(resultSet.getString("userId"), userIntId);
+                    }
+                    userRatings.add(resultSet.getString("videoId"), resultSet.getInt("videoIntId"),
+                            resultSet.getString("rating"));
+                }
+                if (userRatings != null) {
+                    noUsers++;
+                    if (!consumer.accept(userRatings))
+                        return -1;
+                }
+            }
+        } catch (java.sql.SQLNonTransientConnectionException e) {
+            log.info("Connection timed out, trying to reconnect");
+            // Only retry if no user was passed to the consumer yet, since they would be streamed twice otherwise
+            if (refreshConnection() && noUsers == 0)
+                return streamRatings(consumer);
+            return -1;
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            return -1;
+        }
+        return noUsers;
+    }
+
     /**
      * Retrieve all user IDs stored in MySQL database
      *
@@ -686,12 +1346,13 @@ public class DataBaseConnection {
             return null;
 
         HashSet<String> userIds = new HashSet<String>();
-        try {
-            PreparedStatement statement = connection.prepareStatement(
-                    "select * from ytRatings");
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next()) {
-                userIds.add(resultSet.getString("userId"));
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare("select userId from ytUsers u " +
+                    "where exists (select * from ytRatings r where r.userIntId = u.id)");
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    userIds.add(resultSet.getString("userId"));
+                }
             }
         } catch (java.sql.SQLNonTransientConnectionException e) {
             log.info("Connection timed out, trying to reconnect");
@@ -715,15 +1376,16 @@ public class DataBaseConnection {
         if (!healthy || videoId == null)
             return null;
 
-        try {
-            PreparedStatement statement = connection.prepareStatement(
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare(
                     "select * from videoVectors where videoId = ?");
             statement.setString(1, videoId);
-            ResultSet resultSet = statement.executeQuery();
-            if (!resultSet.next()) {
-                return new ArrayList<Double>();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return new ArrayList<Double>();
+                }
+                return VectorBlob.decodeList(resultSet.getBytes("vector"));
             }
-            return stringToVector(resultSet.getString("vector"));
         } catch (java.sql.SQLNonTransientConnectionException e) {
             log.info("Connection timed out, trying to reconnect");
             if (refreshConnection())
@@ -735,6 +1397,197 @@ public class DataBaseConnection {
         }
     }
 
+    /**
+     * Retrieve the semantic centers of the given videos with a single query. All stored centers are streamed through a
+     * server-side cursor and decoded into one float array, so no object is created per value.
+     *
+     * @param videoIds YouTube video IDs whose centers are needed or null if all centers are needed
+     * @return Centers of the videos which have one or null on failure
+     */
+    public VideoCenters loadVideoCenters(Collection<String> videoIds) {
+        if (!healthy)
+            return null;
+
+        VideoCenters videoCenters = new VideoCenters();
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare("select videoId, vector from videoVectors");
+            statement.setFetchSize(FETCH_SIZE);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String videoId = resultSet.getString("videoId");
+                    if (videoIds != null && !videoIds.contains(videoId))
+                        continue;
+                    if (!videoCenters.add(videoId, resultSet.getBytes("vector")))
+                        log.warning("Invalid vector size for center of video " + videoId);
+                }
+            }
+        } catch (java.sql.SQLNonTransientConnectionException e) {
+            log.info("Connection timed out, trying to reconnect");
+            if (refreshConnection())
+                return loadVideoCenters(videoIds);
+            return null;
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            return null;
+        }
+        return videoCenters;
+    }
+
+    /**
+     * Retrieve the running sums of the word2vec centers of all users
+     *
+     * @param changedOnly Whether only users changed since their center was last published are retrieved
+     * @return Running sums mapped to las2peer User Agent IDs or null on failure
+     */
+    public HashMap<String, UserCenter> getUserCenters(boolean changedOnly) {
+        if (!healthy)
+            return null;
+
+        HashMap<String, UserCenter> userCenters = new HashMap<String, UserCenter>();
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare(SELECT_USER_CENTERS +
+                    (changedOnly ? " where c.revision > c.publishedRevision" : ""));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    byte[] sumData = resultSet.getBytes("sum");
+                    double[] sum = sumData == null ? null : VectorBlob.decode(sumData);
+                    String userId = resultSet.getString("userId");
+                    userCenters.put(userId, new UserCenter(userId, resultSet.getInt("userIntId"), sum,
+                            sum == null ? 0 : resultSet.getInt("noVideos"), resultSet.getInt("revision")));
+                }
+            }
+        } catch (java.sql.SQLNonTransientConnectionException e) {
+            log.info("Connection timed out, trying to reconnect");
+            if (refreshConnection())
+                return getUserCenters(changedOnly);
+            return null;
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            return null;
+        }
+        return userCenters;
+    }
+
+    /**
+     * Retrieve the videos rated by users changed since their center was last published which have no word2vec center
+     *
+     * @return YouTube video IDs or null on failure
+     */
+    public HashSet<String> getChangedUsersVideosWithoutCenter() {
+        if (!healthy)
+            return null;
+
+        HashSet<String> videoIds = new HashSet<String>();
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare("select distinct v.id from userCenters c " +
+                    "join ytRatings r on r.userIntId = c.userIntId join ytVideos v on v.intId = r.videoIntId " +
+                    "left join videoVectors vv on vv.videoId = v.id " +
+                    "where c.revision > c.publishedRevision and vv.videoId is null");
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next())
+                    videoIds.add(resultSet.getString("id"));
+            }
+        } catch (java.sql.SQLNonTransientConnectionException e) {
+            log.info("Connection timed out, trying to reconnect");
+            if (refreshConnection())
+                return getChangedUsersVideosWithoutCenter();
+            return null;
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            return null;
+        }
+        return videoIds;
+    }
+
+    /**
+     * Marks the centers of the given users as published, unless they were changed after they were read
+     *
+     * @param userCenters Running sums as read with getUserCenters()
+     * @return Whether the update was successful
+     */
+    public boolean markUserCentersPublished(Collection<UserCenter> userCenters) {
+        if (!healthy)
+            return false;
+
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare(
+                    "update userCenters set publishedRevision = ? where userIntId = ?");
+            int noUpdates = 0;
+            for (UserCenter userCenter : userCenters) {
+                statement.setInt(1, userCenter.getRevision());
+                statement.setInt(2, userCenter.getUserIntId());
+                statement.addBatch();
+                if (++noUpdates % BATCH_SIZE == 0)
+                    statement.executeBatch();
+            }
+            statement.executeBatch();
+        } catch (java.sql.SQLNonTransientConnectionException e) {
+            log.info("Connection timed out, trying to reconnect");
+            if (refreshConnection())
+                return markUserCentersPublished(userCenters);
+            return false;
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the running sums of the given users by ones computed from scratch and marks them as published. Sums
+     * which were changed after they were read are kept, since the changes would be lost otherwise, and are published
+     * by the next incremental update.
+     *
+     * @param userCenters Running sums of all users, created with UserCenter.withSum() for users which had a running
+     *                    sum when the computation started
+     * @return Whether the update was successful
+     */
+    public boolean replaceUserCenters(Collection<UserCenter> userCenters) {
+        if (!healthy)
+            return false;
+
+        try (PooledConnection con = pool.borrow()) {
+            con.getConnection().setAutoCommit(false);
+            PreparedStatement update = con.prepare("update userCenters set sum = ?, noVideos = ?, " +
+                    "revision = revision + 1, publishedRevision = revision where userIntId = ? and revision = ?");
+            PreparedStatement insert = con.prepare("insert ignore into userCenters (userIntId, sum, noVideos) " +
+                    "select id, ?, ? from ytUsers where userId = ?");
+            int noUpdates = 0;
+            int noInserts = 0;
+            for (UserCenter userCenter : userCenters) {
+                boolean stored = userCenter.getUserIntId() >= 0;
+                PreparedStatement statement = stored ? update : insert;
+                double[] sum = userCenter.getSum();
+                if (sum == null)
+                    statement.setNull(1, Types.VARBINARY);
+                else
+                    statement.setBytes(1, VectorBlob.encodeDoubles(sum));
+                statement.setInt(2, userCenter.getNoVideos());
+                if (stored) {
+                    statement.setInt(3, userCenter.getUserIntId());
+                    statement.setInt(4, userCenter.getRevision());
+                } else {
+                    statement.setString(3, userCenter.getUserId());
+                }
+                statement.addBatch();
+                if (stored ? ++noUpdates % BATCH_SIZE == 0 : ++noInserts % BATCH_SIZE == 0)
+                    statement.executeBatch();
+            }
+            update.executeBatch();
+            insert.executeBatch();
+            con.getConnection().commit();
+        } catch (java.sql.SQLNonTransientConnectionException e) {
+            log.info("Connection timed out, trying to reconnect");
+            if (refreshConnection())
+                return replaceUserCenters(userCenters);
+            return false;
+        } catch (Exception e) {
+            log.printStackTrace(e);
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Retrieve last time given user updated their YouTube watch data
      *
@@ -745,21 +1598,22 @@ public class DataBaseConnection {
         if (!healthy || userId == null)
             return null;
 
-        try {
-            PreparedStatement statement = connection.prepareStatement(
+        try (PooledConnection con = pool.borrow()) {
+            PreparedStatement statement = con.prepare(
                     "select * from userDbUpdates where userId = ?");
             statement.setString(1, userId);
-            ResultSet resultSet = statement.executeQuery();
             Long timeSinceLastUpdate = -1L;
             String status = "";
             Long now = new Date().getTime();
-            while(resultSet.next()) {
-                status = resultSet.getString("status");
-                if (status.equals("fail"))
-                    continue;
-                Long timeSinceUpdate = now - resultSet.getDate("lastUpdate").getTime();
-                if (timeSinceLastUpdate == -1L || timeSinceUpdate < timeSinceLastUpdate)
-                    timeSinceLastUpdate = timeSinceUpdate;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while(resultSet.next()) {
+                    status = resultSet.getString("status");
+                    if (status.equals("fail"))
+                        continue;
+                    Long timeSinceUpdate = now - resultSet.getDate("lastUpdate").getTime();
+                    if (timeSinceLastUpdate == -1L || timeSinceUpdate < timeSinceLastUpdate)
+                        timeSinceLastUpdate = timeSinceUpdate;
+                }
             }
             if (status.equals("ongoing"))
                 return 0L;
@@ -779,17 +1633,19 @@ public class DataBaseConnection {
         if (!healthy)
             return null;
         ArrayList<YouTubeVideo> incompleteVideos = new ArrayList<YouTubeVideo>();
-        try {
+        try (PooledConnection con = pool.borrow()) {
             // TODO we do not detect missing tags this way
-            PreparedStatement statement = connection.prepareStatement(
+            PreparedStatement statement = con.prepare(
                     "select * from ytVideos where channelId is null or title is null or description is null or " +
                             "thumbnailUrl is null or categoryId = -1 or uploadDate is null");
-            ResultSet resultSet = statement.executeQuery();
-            while (resultSet.next()) {
-                // Get video information
-                incompleteVideos.add(new YouTubeVideo(resultSet.getString("id"), resultSet.getString("channelId"),
-                        resultSet.getString("title"), resultSet.getString("description"), resultSet.getString("thumbnailUrl"),
-                        null, resultSet.getInt("categoryId"), resultSet.getString("uploadDate")));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    // Get video information
+                    incompleteVideos.add(new YouTubeVideo(resultSet.getString("id"), resultSet.getString("channelId"),
+                            resultSet.getString("title"), resultSet.getString("description"),
+                            resultSet.getString("thumbnailUrl"), null, resultSet.getInt("categoryId"),
+                            resultSet.getString("uploadDate")));
+                }
             }
         } catch (java.sql.SQLNonTransientConnectionException e) {
             log.info("Connection timed out, trying to reconnect");
@@ -813,11 +1669,17 @@ public class DataBaseConnection {
         if (!healthy)
             return false;
 
-        try {
-            PreparedStatement statement = connection.prepareStatement(
-                    "delete from ytRatings where userId = ?");
+        try (PooledConnection con = pool.borrow()) {
+            con.getConnection().setAutoCommit(false);
+            PreparedStatement statement = con.prepare(
+                    "delete r from ytRatings r join ytUsers u on u.id = r.userIntId where u.userId = ?");
             statement.setString(1, userId);
-            ResultSet resultSet = statement.executeQuery();
+            statement.execute();
+            statement = con.prepare("update userCenters c join ytUsers u on u.id = c.userIntId " +
+                    "set c.sum = null, c.noVideos = 0, c.revision = c.revision + 1 where u.userId = ?");
+            statement.setString(1, userId);
+            statement.execute();
+            con.getConnection().commit();
         } catch (java.sql.SQLNonTransientConnectionException e) {
             log.info("Connection timed out, trying to reconnect");
             if (refreshConnection())
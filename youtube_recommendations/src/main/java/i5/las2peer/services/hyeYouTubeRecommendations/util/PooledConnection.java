@@ -0,0 +1,98 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+
+/**
+ * PooledConnection
+ *
+ * This Class wraps a MySQL connection borrowed from the ConnectionPool. It is only used by one thread at a time and
+ * keeps the statements prepared on it, so that they can be reused the next time the connection is borrowed.
+ * Closing it returns the connection to the pool.
+ *
+ */
+
+public class PooledConnection implements AutoCloseable {
+
+    private final Connection connection;
+    private final ConnectionPool pool;
+    private final HashMap<String, PreparedStatement> statements;
+    private long lastUsed;
+    private boolean broken;
+
+    PooledConnection(Connection connection, ConnectionPool pool) {
+        this.connection = connection;
+        this.pool = pool;
+        this.statements = new HashMap<String, PreparedStatement>();
+        this.lastUsed = System.currentTimeMillis();
+        this.broken = false;
+    }
+
+    /**
+     * Returns a prepared statement for the given SQL, which is only created the first time it is requested on this
+     * connection
+     *
+     * @param sql SQL statement with ? placeholders
+     * @return Prepared statement, which must not be closed by the caller
+     * @throws SQLException If the statement could not be prepared
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null || statement.isClosed()) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Returns the underlying connection, which must not be closed by the caller
+     *
+     * @return JDBC connection
+     */
+    public Connection getConnection() { return connection; }
+
+    /**
+     * Marks the connection as broken, so that it is closed instead of returned to the pool
+     */
+    public void invalidate() { broken = true; }
+
+    boolean isBroken() { return broken; }
+
+    long getLastUsed() { return lastUsed; }
+
+    /**
+     * Rolls back unfinished transactions and batches before the connection is handed out again
+     */
+    void reset() throws SQLException {
+        for (PreparedStatement statement : statements.values())
+            statement.clearBatch();
+        if (!connection.getAutoCommit()) {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+        lastUsed = System.currentTimeMillis();
+    }
+
+    /**
+     * Closes the underlying connection including all prepared statements
+     */
+    void closeQuietly() {
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // Connection is discarded anyway
+        }
+    }
+
+    /**
+     * Returns the connection to the pool
+     */
+    @Override
+    public void close() {
+        pool.release(this);
+    }
+}
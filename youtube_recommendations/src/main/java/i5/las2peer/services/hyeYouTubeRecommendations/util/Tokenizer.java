@@ -0,0 +1,135 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tokenizer
+ *
+ * This Class splits the textual data of YouTube videos into words in a single pass without regular expressions.
+ * Words are separated by (Unicode) whitespace, punctuation and symbols such as "+" or "|", so "foo-bar" and "a/b"
+ * become two words each, as do words joined by dashes or full stops of other scripts. Apostrophes are removed without
+ * splitting words (so "don't" becomes "dont", like the regular expressions previously used did) and control and
+ * formatting characters are dropped. The class of each character is looked up in a table computed once, instances
+ * are thread-safe once configured.
+ *
+ */
+
+public class Tokenizer {
+
+    private static final byte WORD = 0;
+    private static final byte SEPARATOR = 1;
+    private static final byte DROPPED = 2;
+    // Apostrophes (including the typographic and fullwidth ones), which are part of words such as "don't"
+    private static final String APOSTROPHES = "'\u2019\u02BC\uFF07";
+    // Character class of each UTF-16 code unit, surrogates are part of words so that emojis are kept
+    private static final byte[] CLASSES = new byte[Character.MAX_VALUE + 1];
+
+    static {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (APOSTROPHES.indexOf(c) >= 0) {
+                CLASSES[c] = DROPPED;
+                continue;
+            }
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c)) {
+                CLASSES[c] = SEPARATOR;
+                continue;
+            }
+            switch (Character.getType(c)) {
+                case Character.CONNECTOR_PUNCTUATION:
+                case Character.DASH_PUNCTUATION:
+                case Character.START_PUNCTUATION:
+                case Character.END_PUNCTUATION:
+                case Character.INITIAL_QUOTE_PUNCTUATION:
+                case Character.FINAL_QUOTE_PUNCTUATION:
+                case Character.OTHER_PUNCTUATION:
+                    CLASSES[c] = SEPARATOR;
+                    break;
+                case Character.CONTROL:
+                case Character.FORMAT:
+                    CLASSES[c] = DROPPED;
+                    break;
+                default:
+                    // ASCII symbols matched by \p{Punct}
+                    CLASSES[c] = c < 128 && "$+<=>^`|~".indexOf(c) >= 0 ? SEPARATOR : WORD;
+            }
+        }
+    }
+
+    private boolean lowerCase;
+    private Set<String> stopWords;
+
+    /**
+     * Constructor - Creates a tokenizer keeping the case of all words and filtering no words
+     */
+    public Tokenizer() {
+        this.lowerCase = false;
+        this.stopWords = Collections.emptySet();
+    }
+
+    /**
+     * Sets whether words are converted to lower case (independent of the locale)
+     *
+     * @param lowerCase Whether words are converted to lower case
+     * @return Updated class instance
+     */
+    public Tokenizer setLowerCase(boolean lowerCase) {
+        this.lowerCase = lowerCase;
+        return this;
+    }
+
+    /**
+     * Sets the words left out of the result, which are compared after the conversion to lower case
+     *
+     * @param stopWords Words to leave out
+     * @return Updated class instance
+     */
+    public Tokenizer setStopWords(Collection<String> stopWords) {
+        this.stopWords = stopWords == null ? Collections.<String>emptySet() : new HashSet<String>(stopWords);
+        return this;
+    }
+
+    /**
+     * Adds the words of the given text to the given collection, passing a set removes duplicates
+     *
+     * @param text The text to split, might be null
+     * @param words Collection to which the words are added
+     * @return The given collection
+     */
+    public <T extends Collection<String>> T tokenize(String text, T words) {
+        if (text == null)
+            return words;
+        int length = text.length();
+        char[] chars = new char[length];
+        text.getChars(0, length, chars, 0);
+        // Kept characters are moved to the front, so each word ends up in one contiguous range
+        int start = 0;
+        int end = 0;
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            switch (CLASSES[c]) {
+                case WORD:
+                    chars[end++] = lowerCase ? Character.toLowerCase(c) : c;
+                    break;
+                case SEPARATOR:
+                    addWord(chars, start, end, words);
+                    start = end;
+                    break;
+                default:
+                    break;
+            }
+        }
+        addWord(chars, start, end, words);
+        return words;
+    }
+
+    private void addWord(char[] chars, int start, int end, Collection<String> words) {
+        if (end == start)
+            return;
+        String word = new String(chars, start, end - start);
+        if (!stopWords.contains(word))
+            words.add(word);
+    }
+}
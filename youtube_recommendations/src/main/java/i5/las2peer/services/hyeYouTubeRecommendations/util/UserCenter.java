@@ -0,0 +1,108 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.util;
+
+/**
+ * UserCenter
+ *
+ * This Class holds the running sum of the word2vec centers of all videos rated by a user, as kept in the MySQL
+ * database, so that the user's center can be computed without summing up the centers of their videos again. The
+ * revision is increased with every change and compared to the last published revision to find changed users.
+ *
+ */
+
+public class UserCenter {
+
+    // Maximum difference between the values of two centers considered equal (sums differ in rounding)
+    private static final double TOLERANCE = 1e-6;
+
+    private final String userId;
+    private final int userIntId;
+    private final double[] sum;
+    private final int noVideos;
+    private final int revision;
+
+    /**
+     * Constructor - Creates a running sum computed outside the database
+     *
+     * @param userId las2peer User Agent ID
+     * @param sum Sum of the centers of the videos rated by the user, null if none of them has a center
+     * @param noVideos Number of videos whose centers are part of the sum
+     */
+    public UserCenter(String userId, double[] sum, int noVideos) {
+        this(userId, -1, sum, noVideos, 0);
+    }
+
+    UserCenter(String userId, int userIntId, double[] sum, int noVideos, int revision) {
+        this.userId = userId;
+        this.userIntId = userIntId;
+        this.sum = sum;
+        this.noVideos = noVideos;
+        this.revision = revision;
+    }
+
+    /**
+     * Creates a running sum of the same user computed from scratch, which keeps the revision this sum was read with
+     *
+     * @param sum Sum of the centers of the videos rated by the user, null if none of them has a center
+     * @param noVideos Number of videos whose centers are part of the sum
+     * @return The new running sum
+     */
+    public UserCenter withSum(double[] sum, int noVideos) {
+        return new UserCenter(userId, userIntId, sum, noVideos, revision);
+    }
+
+    /**
+     * @return Average of the centers of the videos rated by the user or null if none of them has a center
+     */
+    public double[] getCenter() {
+        if (sum == null || noVideos == 0)
+            return null;
+        double[] center = new double[sum.length];
+        for (int i = 0; i < sum.length; i++)
+            center[i] = sum[i] / noVideos;
+        return center;
+    }
+
+    /**
+     * Compares the centers resulting from this and the given sum
+     *
+     * @param other Running sum of the same user
+     * @return Whether both sums result in the same center
+     */
+    public boolean hasSameCenter(UserCenter other) {
+        double[] center = getCenter();
+        double[] otherCenter = other.getCenter();
+        if (center == null || otherCenter == null)
+            return center == otherCenter;
+        if (center.length != otherCenter.length)
+            return false;
+        for (int i = 0; i < center.length; i++)
+            if (Math.abs(center[i] - otherCenter[i]) > TOLERANCE)
+                return false;
+        return true;
+    }
+
+    /**
+     * @return las2peer User Agent ID
+     */
+    public String getUserId() { return userId; }
+
+    /**
+     * @return Integer ID assigned to the user by the database
+     */
+    public int getUserIntId() { return userIntId; }
+
+    /**
+     * @return Sum of the centers of the videos rated by the user, null if none of them has a center
+     */
+    public double[] getSum() { return sum; }
+
+    /**
+     * @return Number of videos whose centers are part of the sum
+     */
+    public int getNoVideos() { return noVideos; }
+
+    /**
+     * @return Number of changes of the sum when it was read
+     */
+    public int getRevision() { return revision; }
+}
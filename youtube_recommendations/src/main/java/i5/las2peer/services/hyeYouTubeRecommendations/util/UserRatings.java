@@ -0,0 +1,80 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * UserRatings
+ *
+ * This Class holds the ratings of a single user as read from the MySQL database, together with the integer IDs the
+ * database assigned to the user and the rated videos. Each video is only contained once, if a video was rated in
+ * multiple ways the last rating read is kept.
+ *
+ */
+
+public class UserRatings {
+
+    private final String userId;
+    private final int userIntId;
+    private final ArrayList<String> videoIds;
+    private final ArrayList<String> ratings;
+    private final HashMap<String, Integer> positions;
+    private int[] videoIntIds;
+
+    UserRatings(String userId, int userIntId) {
+        this.userId = userId;
+        this.userIntId = userIntId;
+        this.videoIds = new ArrayList<String>();
+        this.ratings = new ArrayList<String>();
+        this.positions = new HashMap<String, Integer>();
+        this.videoIntIds = new int[16];
+    }
+
+    void add(String videoId, int videoIntId, String rating) {
+        Integer position = positions.get(videoId);
+        if (position != null) {
+            ratings.set(position, rating);
+            return;
+        }
+        if (videoIds.size() == videoIntIds.length)
+            videoIntIds = Arrays.copyOf(videoIntIds, videoIntIds.length * 2);
+        positions.put(videoId, videoIds.size());
+        videoIntIds[videoIds.size()] = videoIntId;
+        videoIds.add(videoId);
+        ratings.add(rating);
+    }
+
+    /**
+     * @return las2peer User Agent ID
+     */
+    public String getUserId() { return userId; }
+
+    /**
+     * @return Integer ID assigned to the user by the database
+     */
+    public int getUserIntId() { return userIntId; }
+
+    /**
+     * @return Number of rated videos
+     */
+    public int size() { return videoIds.size(); }
+
+    /**
+     * @param i Position of the rating
+     * @return YouTube video ID of the rated video
+     */
+    public String getVideoId(int i) { return videoIds.get(i); }
+
+    /**
+     * @param i Position of the rating
+     * @return Integer ID assigned to the rated video by the database
+     */
+    public int getVideoIntId(int i) { return videoIntIds[i]; }
+
+    /**
+     * @param i Position of the rating
+     * @return Rating given to the video
+     */
+    public String getRating(int i) { return ratings.get(i); }
+}
@@ -0,0 +1,19 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.util;
+
+/**
+ * UserRatingsConsumer
+ *
+ * This Interface is implemented by functions processing the ratings stored in the MySQL database one user at a time
+ *
+ */
+
+public interface UserRatingsConsumer {
+
+    /**
+     * Processes all ratings of a single user
+     *
+     * @param ratings The user's ratings including the integer IDs assigned by the database
+     * @return Whether the remaining users should be processed as well
+     */
+    boolean accept(UserRatings ratings);
+}
@@ -0,0 +1,145 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * VectorBlob
+ *
+ * This Class converts vectors to and from the binary format stored in the MySQL database: one byte denoting the
+ * format, followed by the values as little-endian 32 bit (video centers) or 64 bit (running sums, which would
+ * otherwise accumulate rounding errors) floating point numbers.
+ *
+ */
+
+final class VectorBlob {
+
+    static final byte FLOAT_VECTOR = 1;
+    static final byte DOUBLE_VECTOR = 2;
+
+    private VectorBlob() {
+    }
+
+    /**
+     * @param vector Vector of double values
+     * @return The vector stored as 32 bit floating point numbers
+     */
+    static byte[] encodeFloats(List<Double> vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + vector.size() * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(FLOAT_VECTOR);
+        for (Double value : vector)
+            buffer.putFloat(value.floatValue());
+        return buffer.array();
+    }
+
+    /**
+     * @param vector Vector of double values
+     * @return The vector stored as 32 bit floating point numbers
+     */
+    static byte[] encodeFloats(double[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + vector.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(FLOAT_VECTOR);
+        for (double value : vector)
+            buffer.putFloat((float) value);
+        return buffer.array();
+    }
+
+    /**
+     * @param vector Vector of double values
+     * @return The vector stored as 64 bit floating point numbers
+     */
+    static byte[] encodeDoubles(double[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + vector.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(DOUBLE_VECTOR);
+        for (double value : vector)
+            buffer.putDouble(value);
+        return buffer.array();
+    }
+
+    /**
+     * @param data Stored vector
+     * @return Number of values of the stored vector
+     * @throws IllegalArgumentException If the format is unknown
+     */
+    static int dimension(byte[] data) {
+        if (data.length > 0 && data[0] == FLOAT_VECTOR && (data.length - 1) % 4 == 0)
+            return (data.length - 1) / 4;
+        if (data.length > 0 && data[0] == DOUBLE_VECTOR && (data.length - 1) % 8 == 0)
+            return (data.length - 1) / 8;
+        throw new IllegalArgumentException("Unknown vector format");
+    }
+
+    /**
+     * Reads the values of a stored vector into the given array
+     *
+     * @param data Stored vector
+     * @param target Array to which the values are written
+     * @param offset Position of the first value in the target array
+     * @throws IllegalArgumentException If the format is unknown
+     */
+    static void decodeInto(byte[] data, float[] target, int offset) {
+        int dimension = dimension(data);
+        ByteBuffer buffer = ByteBuffer.wrap(data, 1, data.length - 1).order(ByteOrder.LITTLE_ENDIAN);
+        if (data[0] == FLOAT_VECTOR) {
+            buffer.asFloatBuffer().get(target, offset, dimension);
+        } else {
+            for (int i = 0; i < dimension; i++)
+                target[offset + i] = (float) buffer.getDouble();
+        }
+    }
+
+    /**
+     * @param data Stored vector
+     * @return The values of the stored vector
+     * @throws IllegalArgumentException If the format is unknown
+     */
+    static double[] decode(byte[] data) {
+        int dimension = dimension(data);
+        ByteBuffer buffer = ByteBuffer.wrap(data, 1, data.length - 1).order(ByteOrder.LITTLE_ENDIAN);
+        double[] vector = new double[dimension];
+        for (int i = 0; i < dimension; i++)
+            vector[i] = data[0] == FLOAT_VECTOR ? buffer.getFloat() : buffer.getDouble();
+        return vector;
+    }
+
+    /**
+     * @param data Stored vector
+     * @return The values of the stored vector as list
+     * @throws IllegalArgumentException If the format is unknown
+     */
+    static ArrayList<Double> decodeList(byte[] data) {
+        double[] values = decode(data);
+        ArrayList<Double> vector = new ArrayList<Double>(values.length);
+        for (double value : values)
+            vector.add(value);
+        return vector;
+    }
+
+    /**
+     * Parses vectors stored as text before the binary format was introduced. They were written as "[a,b]," (with a
+     * trailing comma), but JSON arrays without the comma are accepted as well.
+     *
+     * @param vectorString The vector as text
+     * @return The values of the vector
+     * @throws NumberFormatException If a value is not a number
+     */
+    static double[] parseText(String vectorString) {
+        int start = 0;
+        int end = vectorString.length();
+        while (start < end && (vectorString.charAt(start) == '[' ||
+                Character.isWhitespace(vectorString.charAt(start))))
+            start++;
+        while (end > start && (vectorString.charAt(end - 1) == ']' || vectorString.charAt(end - 1) == ',' ||
+                Character.isWhitespace(vectorString.charAt(end - 1))))
+            end--;
+        if (start == end)
+            return new double[0];
+        String[] values = vectorString.substring(start, end).split(",");
+        double[] vector = new double[values.length];
+        for (int i = 0; i < values.length; i++)
+            vector[i] = Double.parseDouble(values[i].trim());
+        return vector;
+    }
+}
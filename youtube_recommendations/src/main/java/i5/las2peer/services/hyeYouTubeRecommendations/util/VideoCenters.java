@@ -0,0 +1,86 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * VideoCenters
+ *
+ * This Class holds the word2vec centers of many videos as read from the MySQL database. The centers are stored as
+ * rows of one float array, so that loading them allocates no object per value or video vector.
+ *
+ */
+
+public class VideoCenters {
+
+    private final ArrayList<String> videoIds;
+    private final HashMap<String, Integer> rows;
+    private float[] values;
+    private int dimension;
+
+    VideoCenters() {
+        this.videoIds = new ArrayList<String>();
+        this.rows = new HashMap<String, Integer>();
+        this.values = new float[0];
+        this.dimension = 0;
+    }
+
+    /**
+     * Adds the stored center of the given video, centers whose size differs from the first one are skipped
+     *
+     * @param videoId YouTube video ID
+     * @param data Center in the stored binary format
+     * @return Whether the center was added
+     */
+    boolean add(String videoId, byte[] data) {
+        int size = VectorBlob.dimension(data);
+        if (dimension == 0)
+            dimension = size;
+        if (size != dimension || size == 0 || rows.containsKey(videoId))
+            return false;
+        int row = videoIds.size();
+        if ((row + 1) * dimension > values.length)
+            values = Arrays.copyOf(values, Math.max(dimension * 64, values.length * 2));
+        VectorBlob.decodeInto(data, values, row * dimension);
+        rows.put(videoId, row);
+        videoIds.add(videoId);
+        return true;
+    }
+
+    /**
+     * @param videoId YouTube video ID
+     * @return Row of the given video's center or -1 if it has none
+     */
+    public int rowOf(String videoId) {
+        Integer row = rows.get(videoId);
+        return row == null ? -1 : row;
+    }
+
+    /**
+     * @param row Row index
+     * @return Copy of the center stored in the given row
+     */
+    public double[] getVector(int row) {
+        double[] vector = new double[dimension];
+        for (int i = 0; i < dimension; i++)
+            vector[i] = values[row * dimension + i];
+        return vector;
+    }
+
+    /**
+     * @param row Row index
+     * @return ID of the video whose center is stored in the given row
+     */
+    public String getVideoId(int row) { return videoIds.get(row); }
+
+    /**
+     * @return Number of values per center, 0 if no center is stored
+     */
+    public int getDimension() { return dimension; }
+
+    /**
+     * @return Number of stored centers
+     */
+    public int size() { return videoIds.size(); }
+}
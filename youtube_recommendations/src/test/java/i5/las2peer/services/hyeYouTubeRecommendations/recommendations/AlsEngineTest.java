@@ -0,0 +1,116 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the local ALS implementation.
+ *
+ */
+public class AlsEngineTest {
+
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    public void testCholeskySolve() {
+        // Only the lower triangle is read
+        double[] a = { 4, 0, 0, 2, 5, 0, -2, 1, 6 };
+        double[] b = { 2, 9, 11 };
+        Assert.assertTrue(AlsEngine.choleskySolve(a, b, 3));
+        // Solution of [[4, 2, -2], [2, 5, 1], [-2, 1, 6]] * x = b
+        Assert.assertArrayEquals(new double[] { 1, 1, 2 }, b, EPSILON);
+    }
+
+    @Test
+    public void testCholeskySolveRejectsIndefiniteMatrix() {
+        double[] a = { 1, 0, 2, 1 };
+        double[] b = { 1, 1 };
+        Assert.assertFalse(AlsEngine.choleskySolve(a, b, 2));
+    }
+
+    @Test
+    public void testSolveRow() {
+        // Features of three items, the row rated items 0 and 2
+        double[] fixed = { 1, 0, 0, 1, 1, 1 };
+        int[] idx = { 0, 2 };
+        float[] values = { 2, 5 };
+        double lambda = 0.5;
+        double[] out = new double[4];
+        AlsEngine.solveRow(fixed, 2, idx, values, 0, 2, lambda, new double[4], new double[2], out, 2);
+        // (Y^T * Y + lambda * n * I) * x = Y^T * r with Y = [[1, 0], [1, 1]] and r = [2, 5]
+        double[] expected = solve2x2(1 + 1 + 1, 1, 1, 1 + 1, 2 + 5, 5);
+        Assert.assertEquals(0, out[0], EPSILON);
+        Assert.assertEquals(0, out[1], EPSILON);
+        Assert.assertEquals(expected[0], out[2], EPSILON);
+        Assert.assertEquals(expected[1], out[3], EPSILON);
+    }
+
+    @Test
+    public void testSolveRowWithoutRatings() {
+        double[] out = { 7, 7 };
+        AlsEngine.solveRow(new double[] { 1, 1 }, 2, new int[0], new float[0], 0, 0, 0.1, new double[4],
+                new double[2], out, 0);
+        Assert.assertArrayEquals(new double[] { 0, 0 }, out, EPSILON);
+    }
+
+    @Test
+    public void testTrainingConvergesToLowRankMatrix() {
+        int noUsers = 30;
+        int noItems = 20;
+        int rank = 2;
+        Random random = new Random(1);
+        double[] users = new double[noUsers * rank];
+        double[] items = new double[noItems * rank];
+        for (int i = 0; i < users.length; i++)
+            users[i] = random.nextDouble();
+        for (int i = 0; i < items.length; i++)
+            items[i] = random.nextDouble();
+        String[] userIds = new String[noUsers];
+        int[] userIntIds = new int[noUsers];
+        int[] itemIntIds = new int[noItems];
+        int[] userPtr = new int[noUsers + 1];
+        int[] userItems = new int[noUsers * noItems];
+        float[] userValues = new float[noUsers * noItems];
+        for (int i = 0; i < noItems; i++)
+            itemIntIds[i] = 1000 + i;
+        for (int u = 0; u < noUsers; u++) {
+            userIds[u] = "user" + u;
+            userIntIds[u] = u + 1;
+            userPtr[u + 1] = userPtr[u] + noItems;
+            for (int i = 0; i < noItems; i++) {
+                userItems[u * noItems + i] = i;
+                userValues[u * noItems + i] = (float) (users[u * rank] * items[i * rank] +
+                        users[u * rank + 1] * items[i * rank + 1]);
+            }
+        }
+        SparseRatings ratings = new SparseRatings(userIds, userIntIds, itemIntIds, userPtr, userItems, userValues);
+
+        AlsEngine engine = new AlsEngine(new HashMap<String, Double>()).setRank(rank).setIterations(50)
+                .setLambda(1e-6);
+        VectorModel userFeatures = engine.train(ratings);
+        Assert.assertNotNull(userFeatures);
+        Assert.assertEquals(200, engine.getResponseStatus());
+        ItemFeatures itemFeatures = engine.getItemFeatures();
+        double squaredError = 0;
+        for (int u = 0; u < noUsers; u++) {
+            double[] userVector = userFeatures.getVector(userFeatures.indexOf(userIds[u]));
+            for (int i = 0; i < noItems; i++) {
+                int row = itemFeatures.indexOf(itemIntIds[i]);
+                double predicted = 0;
+                for (int k = 0; k < rank; k++)
+                    predicted += userVector[k] * itemFeatures.getFeatures()[row * rank + k];
+                double error = predicted - userValues[u * noItems + i];
+                squaredError += error * error;
+            }
+        }
+        Assert.assertTrue("RMSE too large", Math.sqrt(squaredError / (noUsers * noItems)) < 1e-3);
+    }
+
+    private static double[] solve2x2(double a11, double a12, double a21, double a22, double b1, double b2) {
+        double det = a11 * a22 - a12 * a21;
+        return new double[] { (b1 * a22 - a12 * b2) / det, (a11 * b2 - a21 * b1) / det };
+    }
+}
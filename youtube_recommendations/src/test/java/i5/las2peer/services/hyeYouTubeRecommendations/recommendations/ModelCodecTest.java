@@ -0,0 +1,165 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the binary form in which user vectors and matrix factorization models are stored.
+ *
+ */
+public class ModelCodecTest {
+
+    private static final String[] USER_IDS = { "alice", "bob", "\u00E4\u00F6\u00FC" };
+    private static final double[] VECTORS = { 0.1, -2.5, 3, 1e-3, 0, -0.3333, 7.25, 1e6, -1e-6 };
+
+    private static VectorModel model() {
+        return new VectorModel(USER_IDS.clone(), 3, VECTORS.clone());
+    }
+
+    private static double[] toFloats(double[] values) {
+        double[] rounded = new double[values.length];
+        for (int i = 0; i < values.length; i++)
+            rounded[i] = (float) values[i];
+        return rounded;
+    }
+
+    private static void assertModel(VectorModel model, double[] expectedVectors) {
+        Assert.assertEquals(USER_IDS.length, model.size());
+        Assert.assertEquals(3, model.getDimension());
+        for (int row = 0; row < USER_IDS.length; row++)
+            Assert.assertEquals(USER_IDS[row], model.getUserId(row));
+        Assert.assertArrayEquals(expectedVectors, model.getVectors(), 0);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        assertModel(ModelCodec.decode(ModelCodec.encode(model(), false, false)), VECTORS);
+        assertModel(ModelCodec.decode(ModelCodec.encode(model(), false, true)), VECTORS);
+        assertModel(ModelCodec.decode(ModelCodec.encode(model(), true, false)), toFloats(VECTORS));
+        assertModel(ModelCodec.decode(ModelCodec.encode(model(), true, true)), toFloats(VECTORS));
+    }
+
+    @Test
+    public void testSinglePrecisionHalvesValues() throws IOException {
+        int doubleSize = ModelCodec.encode(model(), false, false).length;
+        int floatSize = ModelCodec.encode(model(), true, false).length;
+        Assert.assertEquals(VECTORS.length * 4, doubleSize - floatSize);
+    }
+
+    @Test
+    public void testEmptyModel() throws IOException {
+        VectorModel empty = new VectorModel(new String[0], 5, new double[0]);
+        VectorModel decoded = ModelCodec.decode(ModelCodec.encode(empty, true, true));
+        Assert.assertEquals(0, decoded.size());
+        Assert.assertEquals(5, decoded.getDimension());
+    }
+
+    @Test
+    public void testTruncatedDataIsDetected() throws IOException {
+        for (boolean compress : new boolean[] { false, true }) {
+            byte[] bytes = ModelCodec.encode(model(), false, compress);
+            for (int length = 0; length < bytes.length; length++) {
+                try {
+                    ModelCodec.decode(Arrays.copyOf(bytes, length));
+                    Assert.fail("Model truncated to " + length + " bytes was decoded");
+                } catch (IOException e) {
+                    // Expected
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownFormatIsRejected() throws IOException {
+        byte[] bytes = ModelCodec.encode(model(), false, false);
+        bytes[0] = 'X';
+        try {
+            ModelCodec.decode(bytes);
+            Assert.fail("Data with unknown magic was decoded");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static MfModel mfModel() {
+        ItemFeatures items = new ItemFeatures(new int[] { 42, 7 }, 3, 0.05, new double[] { 1, 2, 3, -4, -5, -6.5 });
+        return new MfModel(model(), items, 0.05, 12, 1234567890123L, 2);
+    }
+
+    private static void assertMfModel(MfModel model, boolean singlePrecision) {
+        assertModel(model.getUserFeatures(), singlePrecision ? toFloats(VECTORS) : VECTORS);
+        Assert.assertEquals(0.05, model.getLambda(), 0);
+        Assert.assertEquals(12, model.getIterations());
+        Assert.assertEquals(1234567890123L, model.getTrainedAt());
+        Assert.assertEquals(2, model.getIdMappingVersion());
+        ItemFeatures items = model.getItemFeatures();
+        Assert.assertNotNull(items);
+        Assert.assertArrayEquals(new int[] { 7, 42 }, items.getItemIntIds());
+        Assert.assertArrayEquals(new double[] { -4, -5, -6.5, 1, 2, 3 }, items.getFeatures(), 0);
+    }
+
+    @Test
+    public void testMfModelRoundTrip() throws IOException {
+        for (boolean singlePrecision : new boolean[] { false, true })
+            for (boolean compress : new boolean[] { false, true })
+                assertMfModel(MfModel.fromBytes(mfModel().toBytes(singlePrecision, compress)), singlePrecision);
+    }
+
+    @Test
+    public void testMfModelWithoutItemFeatures() throws IOException {
+        MfModel decoded = MfModel.fromBytes(MfModel.fromUserFeatures(model()).toBytes(true, false));
+        Assert.assertNull(decoded.getItemFeatures());
+        assertModel(decoded.getUserFeatures(), toFloats(VECTORS));
+    }
+
+    @Test
+    public void testTruncatedMfModelIsDetected() throws IOException {
+        byte[] bytes = mfModel().toBytes(false, false);
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                MfModel.fromBytes(Arrays.copyOf(bytes, length));
+                Assert.fail("Model truncated to " + length + " bytes was decoded");
+            } catch (IOException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testLegacyMfModel() throws IOException {
+        // First format version: all values big-endian one by one, user IDs in modified UTF-8
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(new byte[] { 'H', 'y', 'M', 'F', 1 });
+            out.writeInt(2);
+            out.writeLong(1234567890123L);
+            out.writeInt(3);
+            out.writeDouble(0.05);
+            out.writeInt(12);
+            out.writeInt(USER_IDS.length);
+            for (String userId : USER_IDS)
+                out.writeUTF(userId);
+            for (double value : VECTORS)
+                out.writeDouble(value);
+            out.writeInt(2);
+            out.writeInt(42);
+            out.writeInt(7);
+            for (double value : new double[] { 1, 2, 3, -4, -5, -6.5 })
+                out.writeDouble(value);
+        }
+        assertMfModel(MfModel.fromBytes(bytes.toByteArray()), false);
+
+        byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 1);
+        try {
+            MfModel.fromBytes(truncated);
+            Assert.fail("Truncated legacy model was decoded");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the sparse rating matrix and the map of integer video IDs to item indices used to build it.
+ *
+ */
+public class SparseRatingsTest {
+
+    @Test
+    public void testTransposition() {
+        // User 0 rated items 1 and 0, user 1 rated item 2, user 2 rated items 0 and 2
+        SparseRatings ratings = new SparseRatings(new String[] { "a", "b", "c" }, new int[] { 10, 11, 12 },
+                new int[] { 500, 3, 70000 }, new int[] { 0, 2, 3, 5 }, new int[] { 1, 0, 2, 0, 2 },
+                new float[] { 1, 2, 3, 4, 5 });
+        Assert.assertEquals(3, ratings.getNoItems());
+        Assert.assertEquals(5, ratings.getNoRatings());
+        Assert.assertArrayEquals(new int[] { 0, 2, 3, 5 }, ratings.getItemPtr());
+        Assert.assertArrayEquals(new int[] { 0, 2, 0, 1, 2 }, ratings.getItemUsers());
+        Assert.assertArrayEquals(new float[] { 2, 4, 1, 3, 5 }, ratings.getItemValues(), 0);
+    }
+
+    @Test
+    public void testIntIndexMap() {
+        IntIndexMap map = new IntIndexMap(4);
+        // Large and far apart IDs do not increase the memory used
+        for (int i = 0; i < 10000; i++)
+            map.put(Integer.MAX_VALUE - i * 7919, i);
+        Assert.assertEquals(10000, map.size());
+        for (int i = 0; i < 10000; i++)
+            Assert.assertEquals(i, map.get(Integer.MAX_VALUE - i * 7919));
+        Assert.assertEquals(-1, map.get(0));
+        map.put(Integer.MAX_VALUE, 42);
+        Assert.assertEquals(10000, map.size());
+        Assert.assertEquals(42, map.get(Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,84 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Tests the bounded heap keeping the best scored candidates.
+ *
+ */
+public class TopMatchesTest {
+
+    @Test
+    public void testDrainOrdersBestFirst() {
+        Random random = new Random(7);
+        double[] values = new double[1000];
+        TopMatches topMatches = new TopMatches(10);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextDouble() * 2 - 1;
+            topMatches.offer(i, values[i]);
+        }
+        Assert.assertEquals(10, topMatches.size());
+
+        Integer[] expected = new Integer[values.length];
+        for (int i = 0; i < expected.length; i++)
+            expected[i] = i;
+        Arrays.sort(expected, Comparator.comparingDouble(i -> -values[i]));
+        int[] drained = topMatches.drain();
+        Assert.assertEquals(10, drained.length);
+        for (int i = 0; i < drained.length; i++)
+            Assert.assertEquals((int) expected[i], drained[i]);
+        Assert.assertEquals(0, topMatches.size());
+    }
+
+    @Test
+    public void testFewerCandidatesThanK() {
+        TopMatches topMatches = new TopMatches(5);
+        topMatches.offer(0, -1);
+        topMatches.offer(1, 3);
+        topMatches.offer(2, 2);
+        Assert.assertArrayEquals(new int[] { 1, 2, 0 }, topMatches.drain());
+        Assert.assertArrayEquals(new int[0], new TopMatches(5).drain());
+    }
+
+    @Test
+    public void testTiesKeepFirstOffered() {
+        TopMatches topMatches = new TopMatches(3);
+        for (int i = 0; i < 6; i++)
+            topMatches.offer(i, 1.0);
+        // Equal values do not replace kept candidates
+        int[] drained = topMatches.drain();
+        Arrays.sort(drained);
+        Assert.assertArrayEquals(new int[] { 0, 1, 2 }, drained);
+
+        topMatches.offer(0, 1.0);
+        topMatches.offer(1, 1.0);
+        topMatches.offer(2, 0.5);
+        topMatches.offer(3, 2.0);
+        drained = topMatches.drain();
+        Assert.assertEquals(3, drained[0]);
+        Arrays.sort(drained, 1, 3);
+        Assert.assertArrayEquals(new int[] { 3, 0, 1 }, drained);
+    }
+
+    @Test
+    public void testMergeOfPartitions() {
+        TopMatches first = new TopMatches(3);
+        TopMatches second = new TopMatches(3);
+        for (int i = 0; i < 10; i++) {
+            first.offer(i, i);
+            second.offer(10 + i, i + 0.5);
+        }
+        first.merge(second);
+        Assert.assertArrayEquals(new int[] { 19, 9, 18 }, first.drain());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidK() {
+        new TopMatches(0);
+    }
+}
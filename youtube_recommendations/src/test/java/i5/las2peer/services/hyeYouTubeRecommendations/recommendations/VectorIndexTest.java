@@ -0,0 +1,148 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+/**
+ * Tests the IVF-flat index over user vectors on small, well separated clusters.
+ *
+ */
+public class VectorIndexTest {
+
+    private static final double[][] CLUSTER_CENTERS = { { 0, 0 }, { 100, 0 }, { 0, 100 }, { 100, 100 } };
+    private static final int USERS_PER_CLUSTER = 25;
+
+    /**
+     * Returns 2-dimensional vectors scattered closely around the cluster centers, user c-i belongs to cluster c
+     */
+    private static VectorModel clusteredModel() {
+        Random random = new Random(3);
+        String[] userIds = new String[CLUSTER_CENTERS.length * USERS_PER_CLUSTER];
+        double[] vectors = new double[userIds.length * 2];
+        for (int c = 0; c < CLUSTER_CENTERS.length; c++) {
+            for (int i = 0; i < USERS_PER_CLUSTER; i++) {
+                int row = c * USERS_PER_CLUSTER + i;
+                userIds[row] = c + "-" + i;
+                vectors[2 * row] = CLUSTER_CENTERS[c][0] + random.nextGaussian();
+                vectors[2 * row + 1] = CLUSTER_CENTERS[c][1] + random.nextGaussian();
+            }
+        }
+        return new VectorModel(userIds, 2, vectors);
+    }
+
+    private static ArrayList<String> probeAt(VectorIndex index, double[] vector) {
+        return index.probe(vector, 0, 1);
+    }
+
+    @Test
+    public void testSearchFindsClosestCluster() {
+        VectorModel model = clusteredModel();
+        VectorIndex index = VectorIndex.build(model, CLUSTER_CENTERS.length, 1);
+        Assert.assertEquals(CLUSTER_CENTERS.length, index.getNoLists());
+        Assert.assertEquals(model.size(), index.size());
+
+        for (int c = 0; c < CLUSTER_CENTERS.length; c++) {
+            ArrayList<String> found = index.search(CLUSTER_CENTERS[c], 0, null, 10);
+            // The closest list holds exactly the users of the cluster
+            Assert.assertEquals(USERS_PER_CLUSTER, found.size());
+            for (String userId : found)
+                Assert.assertTrue(userId, userId.startsWith(c + "-"));
+        }
+        // Searching continues with further lists until enough candidates are found
+        Assert.assertEquals(2 * USERS_PER_CLUSTER, index.search(CLUSTER_CENTERS[0], 0, null,
+                USERS_PER_CLUSTER + 1).size());
+        // Only the given candidates are returned
+        HashSet<String> candidates = new HashSet<String>();
+        candidates.add("1-3");
+        candidates.add("2-4");
+        Assert.assertEquals(Collections.singletonList("1-3"), index.search(CLUSTER_CENTERS[1], 0, candidates, 1));
+    }
+
+    @Test
+    public void testSearchRecall() {
+        VectorModel model = clusteredModel();
+        VectorIndex index = VectorIndex.build(model, 1);
+        Random random = new Random(5);
+        int k = 5;
+        int found = 0;
+        int noQueries = 20;
+        for (int q = 0; q < noQueries; q++) {
+            int query = random.nextInt(model.size());
+            // Exact neighbours by exhaustive scan
+            TopMatches exact = new TopMatches(k);
+            for (int row = 0; row < model.size(); row++)
+                if (row != query)
+                    exact.offer(row, -VectorDistance.squaredEuclidean(model.getVectors(), model.offset(query),
+                            model.getVectors(), model.offset(row), 2));
+            HashSet<String> searched = new HashSet<String>(index.search(model.getVectors(), model.offset(query),
+                    null, 2 * k));
+            for (int row : exact.drain())
+                if (searched.contains(model.getUserId(row)))
+                    found++;
+        }
+        Assert.assertTrue("Recall " + (double) found / (noQueries * k), found >= 0.95 * noQueries * k);
+    }
+
+    @Test
+    public void testWithAssignments() {
+        VectorModel model = clusteredModel();
+        VectorIndex index = VectorIndex.build(model, CLUSTER_CENTERS.length, 1);
+
+        HashMap<String, double[]> changed = new HashMap<String, double[]>();
+        // Moved from cluster 0 to cluster 3
+        changed.put("0-0", new double[] { 99, 101 });
+        // Not indexed before
+        changed.put("new", new double[] { 1, 99 });
+        // Vectors of a different dimension are ignored
+        changed.put("0-2", new double[] { 100, 0, 0 });
+        VectorIndex updated = index.withAssignments(changed, Collections.singleton("1-0"));
+
+        Assert.assertEquals(model.size(), updated.size());
+        Assert.assertEquals(index.getNoLists(), updated.getNoLists());
+        Assert.assertTrue(probeAt(updated, CLUSTER_CENTERS[3]).contains("0-0"));
+        Assert.assertFalse(probeAt(updated, CLUSTER_CENTERS[0]).contains("0-0"));
+        Assert.assertTrue(probeAt(updated, CLUSTER_CENTERS[2]).contains("new"));
+        Assert.assertTrue(probeAt(updated, CLUSTER_CENTERS[0]).contains("0-2"));
+        Assert.assertFalse(updated.contains("1-0"));
+        Assert.assertEquals(USERS_PER_CLUSTER - 1, probeAt(updated, CLUSTER_CENTERS[1]).size());
+        Assert.assertTrue(updated.contains("new"));
+
+        // The original index is left unchanged
+        Assert.assertTrue(probeAt(index, CLUSTER_CENTERS[0]).contains("0-0"));
+        Assert.assertTrue(index.contains("1-0"));
+        Assert.assertFalse(index.contains("new"));
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        VectorIndex index = VectorIndex.build(clusteredModel(), CLUSTER_CENTERS.length, 1);
+        Assert.assertTrue(index.contains("2-7"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(index);
+        }
+        VectorIndex read;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            read = (VectorIndex) in.readObject();
+        }
+        // The member set is not stored and built again on first use
+        Assert.assertTrue(read.contains("2-7"));
+        Assert.assertFalse(read.contains("unknown"));
+        Assert.assertEquals(probeAt(index, CLUSTER_CENTERS[2]), probeAt(read, CLUSTER_CENTERS[2]));
+    }
+
+    @Test
+    public void testEmptyModel() {
+        Assert.assertNull(VectorIndex.build(new VectorModel(new String[0], 2, new double[0]), 1));
+    }
+}
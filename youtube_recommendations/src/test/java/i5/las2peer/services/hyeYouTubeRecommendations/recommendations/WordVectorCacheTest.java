@@ -0,0 +1,97 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.recommendations;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests the LRU cache of word vectors stored as rows of one float array.
+ *
+ */
+public class WordVectorCacheTest {
+
+    @Test
+    public void testGetReturnsCopies() {
+        WordVectorCache cache = new WordVectorCache(10);
+        Assert.assertNull(cache.get("video"));
+        float[] vector = { 1, 2, 3 };
+        cache.put("video", vector);
+        vector[0] = 9;
+        float[] cached = cache.get("video");
+        Assert.assertArrayEquals(new float[] { 1, 2, 3 }, cached, 0);
+        cached[1] = 9;
+        Assert.assertArrayEquals(new float[] { 1, 2, 3 }, cache.get("video"), 0);
+
+        // Replacing a word keeps its single entry
+        cache.put("video", new float[] { 4, 5, 6 });
+        Assert.assertArrayEquals(new float[] { 4, 5, 6 }, cache.get("video"), 0);
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testUnknownWordsTakeNoRow() {
+        WordVectorCache cache = new WordVectorCache(10);
+        cache.put("qwertz", null);
+        Assert.assertSame(WordVectorCache.UNKNOWN, cache.get("qwertz"));
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(0, cache.getNoAllocatedRows());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        WordVectorCache cache = new WordVectorCache(3);
+        cache.put("a", new float[] { 1, 1 });
+        cache.put("b", new float[] { 2, 2 });
+        cache.put("c", new float[] { 3, 3 });
+        // Accessing a makes b the least recently used word
+        Assert.assertNotNull(cache.get("a"));
+        cache.put("d", new float[] { 4, 4 });
+        Assert.assertEquals(3, cache.size());
+        Assert.assertNull(cache.get("b"));
+        Assert.assertArrayEquals(new float[] { 1, 1 }, cache.get("a"), 0);
+        Assert.assertArrayEquals(new float[] { 3, 3 }, cache.get("c"), 0);
+        Assert.assertArrayEquals(new float[] { 4, 4 }, cache.get("d"), 0);
+    }
+
+    @Test
+    public void testEvictedRowsAreReused() {
+        WordVectorCache cache = new WordVectorCache(4);
+        for (int i = 0; i < 100; i++)
+            cache.put("word" + i, new float[] { i, -i, 2 * i });
+        // Every word added after the cache was full took the row of the evicted word
+        Assert.assertEquals(4, cache.getNoAllocatedRows());
+        for (int i = 0; i < 96; i++)
+            Assert.assertNull(cache.get("word" + i));
+        for (int i = 96; i < 100; i++)
+            Assert.assertArrayEquals(new float[] { i, -i, 2 * i }, cache.get("word" + i), 0);
+
+        // Rows freed for unknown words are kept for later vectors
+        cache.put("x", null);
+        cache.put("y", null);
+        cache.put("z", new float[] { 7, 7, 7 });
+        Assert.assertEquals(4, cache.getNoAllocatedRows());
+        Assert.assertArrayEquals(new float[] { 7, 7, 7 }, cache.get("z"), 0);
+        Assert.assertArrayEquals(new float[] { 99, -99, 198 }, cache.get("word99"), 0);
+    }
+
+    @Test
+    public void testDimensionChangeClearsCache() {
+        WordVectorCache cache = new WordVectorCache(10);
+        cache.put("a", new float[] { 1, 2 });
+        cache.put("unknown", null);
+        cache.put("b", new float[] { 3, 4 });
+        // Vectors of another dimension mean that the model was replaced
+        cache.put("c", new float[] { 5, 6, 7 });
+        Assert.assertEquals(1, cache.size());
+        Assert.assertNull(cache.get("a"));
+        Assert.assertNull(cache.get("unknown"));
+        Assert.assertEquals(1, cache.getNoAllocatedRows());
+        Assert.assertArrayEquals(new float[] { 5, 6, 7 }, cache.get("c"), 0);
+        cache.put("d", new float[] { 8, 9, 10 });
+        Assert.assertArrayEquals(new float[] { 5, 6, 7 }, cache.get("c"), 0);
+        Assert.assertArrayEquals(new float[] { 8, 9, 10 }, cache.get("d"), 0);
+
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getNoAllocatedRows());
+    }
+}
@@ -0,0 +1,106 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests the cache of alpha values, in particular values written while a load is in flight.
+ *
+ */
+public class AlphaCacheTest {
+
+    private static final long ONE_MINUTE = 1000 * 60;
+
+    @Test
+    public void testLoadedValuesAreCached() throws Exception {
+        AlphaCache cache = new AlphaCache(10, ONE_MINUTE);
+        AtomicInteger loads = new AtomicInteger();
+        Assert.assertEquals(0.3, cache.get("a", () -> {
+            loads.incrementAndGet();
+            return 0.3;
+        }), 0);
+        Assert.assertEquals(0.3, cache.get("a", () -> {
+            loads.incrementAndGet();
+            return 0.9;
+        }), 0);
+        Assert.assertEquals(1, loads.get());
+
+        // Users without stored value are cached as well
+        Assert.assertNull(cache.get("b", () -> null));
+        Assert.assertNull(cache.get("b", () -> 0.9));
+    }
+
+    @Test
+    public void testFailedLoadsAreNotCached() throws Exception {
+        AlphaCache cache = new AlphaCache(10, ONE_MINUTE);
+        try {
+            cache.get("a", () -> {
+                throw new IllegalStateException("storage not available");
+            });
+            Assert.fail("Exception of loader expected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        Assert.assertEquals(0.4, cache.get("a", () -> 0.4), 0);
+    }
+
+    @Test
+    public void testEntriesExpire() throws Exception {
+        AlphaCache cache = new AlphaCache(10, 50);
+        cache.put("a", 0.2);
+        Assert.assertEquals(0.2, cache.get("a", () -> 0.7), 0);
+        Thread.sleep(100);
+        Assert.assertEquals(0.7, cache.get("a", () -> 0.7), 0);
+    }
+
+    @Test
+    public void testPutDuringLoadWins() throws Exception {
+        AlphaCache cache = new AlphaCache(10, ONE_MINUTE);
+        // The user changes their alpha value while a match loads the previously stored one
+        Double alpha = cache.get("a", () -> {
+            cache.put("a", 0.8);
+            return 0.5;
+        });
+        Assert.assertEquals(0.8, alpha, 0);
+        Assert.assertEquals(0.8, cache.get("a", () -> 0.5), 0);
+
+        // Entries of other users written during the load do not keep the loaded value from being cached
+        Assert.assertEquals(0.1, cache.get("b", () -> {
+            cache.put("c", 0.6);
+            return 0.1;
+        }), 0);
+        Assert.assertEquals(0.1, cache.get("b", () -> 0.9), 0);
+        Assert.assertEquals(0.6, cache.get("c", () -> 0.9), 0);
+    }
+
+    @Test
+    public void testInvalidateDuringLoad() throws Exception {
+        AlphaCache cache = new AlphaCache(10, ONE_MINUTE);
+        cache.put("a", 0.2);
+        cache.invalidate("a");
+        Assert.assertEquals(0.3, cache.get("a", () -> 0.3), 0);
+
+        // A value loaded before the invalidation is returned, but not cached
+        Assert.assertEquals(0.4, cache.get("b", () -> {
+            cache.invalidate("b");
+            return 0.4;
+        }), 0);
+        Assert.assertEquals(0.5, cache.get("b", () -> 0.5), 0);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() throws Exception {
+        AlphaCache cache = new AlphaCache(2, ONE_MINUTE);
+        cache.put("a", 0.1);
+        cache.put("b", 0.2);
+        // Accessing a makes b the least recently used user
+        Assert.assertEquals(0.1, cache.get("a", () -> 0.9), 0);
+        cache.put("c", 0.3);
+        Assert.assertEquals(0.9, cache.get("b", () -> 0.9), 0);
+        // Loading b again evicted a
+        Assert.assertEquals(0.3, cache.get("c", () -> 0.8), 0);
+        Assert.assertEquals(0.7, cache.get("a", () -> 0.7), 0);
+    }
+}
@@ -0,0 +1,75 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests splitting the textual data of videos into words.
+ *
+ */
+public class TokenizerTest {
+
+    private static ArrayList<String> tokenize(Tokenizer tokenizer, String text) {
+        return tokenizer.tokenize(text, new ArrayList<String>());
+    }
+
+    private static ArrayList<String> words(String... words) {
+        return new ArrayList<String>(Arrays.asList(words));
+    }
+
+    @Test
+    public void testWhitespace() {
+        Tokenizer tokenizer = new Tokenizer();
+        Assert.assertEquals(words("Hello", "World", "again"), tokenize(tokenizer, "  Hello\tWorld\n\u00A0again "));
+        Assert.assertEquals(words(), tokenize(tokenizer, " \t\n"));
+        Assert.assertEquals(words(), tokenize(tokenizer, null));
+    }
+
+    @Test
+    public void testApostrophesAreRemovedWithinWords() {
+        Tokenizer tokenizer = new Tokenizer();
+        Assert.assertEquals(words("dont", "its", "Im"), tokenize(tokenizer, "don't it\u2019s I\u02BCm"));
+    }
+
+    @Test
+    public void testPunctuationSeparatesWords() {
+        Tokenizer tokenizer = new Tokenizer();
+        Assert.assertEquals(words("foo", "bar"), tokenize(tokenizer, "foo\u2014bar"));
+        Assert.assertEquals(words("a", "b"), tokenize(tokenizer, "a\uFF0Fb"));
+        Assert.assertEquals(words("\u6771\u4EAC", "\u5927\u962A"),
+                tokenize(tokenizer, "\u6771\u4EAC\u3002\u5927\u962A"));
+        Assert.assertEquals(words("well", "known", "C", "Hello", "world"),
+                tokenize(tokenizer, "well-known C++ (\"Hello, world!\")"));
+        Assert.assertEquals(words("a", "b", "c"), tokenize(tokenizer, "a|b~c"));
+    }
+
+    @Test
+    public void testControlAndFormatCharactersAreDropped() {
+        Tokenizer tokenizer = new Tokenizer();
+        Assert.assertEquals(words("zerowidth", "bell"), tokenize(tokenizer, "zero\u200Bwidth be\u0007ll"));
+    }
+
+    @Test
+    public void testEmojisAreKept() {
+        Tokenizer tokenizer = new Tokenizer();
+        Assert.assertEquals(words("\uD83D\uDE00", "smile"), tokenize(tokenizer, "\uD83D\uDE00 smile"));
+    }
+
+    @Test
+    public void testLowerCaseAndStopWords() {
+        Tokenizer tokenizer = new Tokenizer().setLowerCase(true).setStopWords(Arrays.asList("the", "a"));
+        Assert.assertEquals(words("cat", "on", "mat"), tokenize(tokenizer, "The cat on a MAT"));
+        // Case is kept by default
+        Assert.assertEquals(words("The", "MAT"), tokenize(new Tokenizer(), "The MAT"));
+    }
+
+    @Test
+    public void testSetRemovesDuplicates() {
+        HashSet<String> words = new Tokenizer().tokenize("a b a", new HashSet<String>());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("a", "b")), words);
+    }
+}
@@ -0,0 +1,83 @@
+package i5.las2peer.services.hyeYouTubeRecommendations.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Tests the binary format of vectors stored in the database and the parsing of vectors stored as text before.
+ *
+ */
+public class VectorBlobTest {
+
+    private static final double[] VECTOR = { 0.5, -1.25, 3e-7, 123456.789 };
+
+    @Test
+    public void testDoubleRoundTrip() {
+        byte[] data = VectorBlob.encodeDoubles(VECTOR);
+        Assert.assertEquals(VectorBlob.DOUBLE_VECTOR, data[0]);
+        Assert.assertEquals(1 + 8 * VECTOR.length, data.length);
+        Assert.assertEquals(VECTOR.length, VectorBlob.dimension(data));
+        Assert.assertArrayEquals(VECTOR, VectorBlob.decode(data), 0);
+        Assert.assertEquals(Arrays.asList(0.5, -1.25, 3e-7, 123456.789), VectorBlob.decodeList(data));
+    }
+
+    @Test
+    public void testFloatRoundTrip() {
+        byte[] data = VectorBlob.encodeFloats(VECTOR);
+        Assert.assertEquals(VectorBlob.FLOAT_VECTOR, data[0]);
+        Assert.assertEquals(1 + 4 * VECTOR.length, data.length);
+        Assert.assertArrayEquals(data, VectorBlob.encodeFloats(Arrays.asList(0.5, -1.25, 3e-7, 123456.789)));
+        double[] decoded = VectorBlob.decode(data);
+        for (int i = 0; i < VECTOR.length; i++)
+            Assert.assertEquals((float) VECTOR[i], decoded[i], 0);
+    }
+
+    @Test
+    public void testDecodeInto() {
+        float[] target = new float[2 + 2 * VECTOR.length];
+        VectorBlob.decodeInto(VectorBlob.encodeFloats(VECTOR), target, 2);
+        VectorBlob.decodeInto(VectorBlob.encodeDoubles(VECTOR), target, 2 + VECTOR.length);
+        Assert.assertEquals(0, target[0], 0);
+        Assert.assertEquals(0, target[1], 0);
+        for (int i = 0; i < VECTOR.length; i++) {
+            Assert.assertEquals((float) VECTOR[i], target[2 + i], 0);
+            Assert.assertEquals((float) VECTOR[i], target[2 + VECTOR.length + i], 0);
+        }
+    }
+
+    @Test
+    public void testEmptyVector() {
+        Assert.assertEquals(0, VectorBlob.decode(VectorBlob.encodeDoubles(new double[0])).length);
+        Assert.assertEquals(0, VectorBlob.decode(VectorBlob.encodeFloats(new double[0])).length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownFormat() {
+        VectorBlob.decode(new byte[] { 7, 0, 0, 0, 0 });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncatedVector() {
+        byte[] data = VectorBlob.encodeDoubles(VECTOR);
+        VectorBlob.decode(Arrays.copyOf(data, data.length - 3));
+    }
+
+    @Test
+    public void testParseLegacyText() {
+        // Written with a trailing comma, the last digit of the last value must not be cut off
+        Assert.assertArrayEquals(new double[] { 0.5, -1.25, 2.75 }, VectorBlob.parseText("[0.5,-1.25,2.75],"), 0);
+        Assert.assertArrayEquals(new double[] { 0.5, -1.25, 2.75 }, VectorBlob.parseText("[0.5,-1.25,2.75]"), 0);
+        Assert.assertArrayEquals(new double[] { 1, 2 }, VectorBlob.parseText(" [ 1, 2 ] ,\n"), 0);
+        Assert.assertArrayEquals(new double[] { 12 }, VectorBlob.parseText("[12],"), 0);
+        Assert.assertArrayEquals(new double[] { 1e-5 }, VectorBlob.parseText("[1.0E-5],"), 0);
+        Assert.assertEquals(0, VectorBlob.parseText("[],").length);
+        Assert.assertEquals(0, VectorBlob.parseText("").length);
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParseInvalidText() {
+        VectorBlob.parseText("[1,abc],");
+    }
+}